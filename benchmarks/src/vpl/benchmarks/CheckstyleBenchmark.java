@@ -0,0 +1,92 @@
+package vpl.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CheckstyleRunner.run on generated sources. Needs the checkstyle executable on the PATH; the
+ * configuration is taken from <code>-Dvpl.bench.checkstyle</code> (default: checkstyle_base.xml of the
+ * repository).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class CheckstyleBenchmark {
+    @Param({"1", "5"})
+    public int files;
+
+    private Path dir;
+    private List<File> sources;
+    private String configuration;
+
+    @Setup
+    public void generate() throws Throwable {
+        if (Grader.checkstyleExecutable() == null) {
+            throw new IllegalStateException("checkstyle was not found on the PATH");
+        }
+        configuration = new File(System.getProperty("vpl.bench.checkstyle", "../checkstyle/checkstyle_base.xml")).getAbsolutePath();
+        dir = Files.createTempDirectory("vpl-bench");
+        sources = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < files; i++) {
+            Path file = dir.resolve("Generated" + i + ".java");
+            Files.write(file, source("Generated" + i, random).getBytes(StandardCharsets.UTF_8));
+            sources.add(file.toFile());
+        }
+    }
+
+    /**
+     * A class with some methods, about half of them with style violations (missing braces and whitespace)
+     */
+    private static String source(String name, Random random) {
+        StringBuilder sb = new StringBuilder("public class " + name + " {\n");
+        for (int m = 0; m < 20; m++) {
+            if (random.nextBoolean()) {
+                sb.append("    public int method").append(m).append("(int a){\n")
+                        .append("        if (a>").append(random.nextInt(100)).append(") return a*2;\n")
+                        .append("        return a;\n    }\n");
+            } else {
+                sb.append("    public int method").append(m).append("(int a) {\n")
+                        .append("        if (a > ").append(random.nextInt(100)).append(") {\n")
+                        .append("            return a * 2;\n        }\n")
+                        .append("        return a;\n    }\n");
+            }
+        }
+        return sb.append("}\n").toString();
+    }
+
+    @TearDown
+    public void delete() throws Exception {
+        for (File source : sources) {
+            Files.deleteIfExists(source.toPath());
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public Object run() throws Throwable {
+        return Grader.RUN_CHECKSTYLE.invoke(configuration, sources);
+    }
+}
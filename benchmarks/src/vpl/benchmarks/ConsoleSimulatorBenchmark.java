@@ -0,0 +1,46 @@
+package vpl.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip of a line through the VplConsoleSimulator and a child JVM which echoes it
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConsoleSimulatorBenchmark {
+    private Object simulator;
+    private int counter;
+
+    @Setup
+    public void start() throws Throwable {
+        simulator = Grader.NEW_SIMULATOR.invoke(EchoProgram.class.getName(), new String[0]);
+    }
+
+    @TearDown
+    public void stop() throws Throwable {
+        Grader.KILL.invoke(simulator);
+    }
+
+    @Benchmark
+    public boolean lineRoundTrip() throws Throwable {
+        String line = "line " + (counter++);
+        Grader.ENTER_LINE.invoke(simulator, line);
+        return (boolean) Grader.EXPECT_OUTPUT.invoke(simulator, line);
+    }
+}
@@ -0,0 +1,18 @@
+package vpl.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * Trivial program under test for the {@link ConsoleSimulatorBenchmark}: prints every line it reads
+ */
+public class EchoProgram {
+    public static void main(String[] args) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while ((line = in.readLine()) != null) {
+            System.out.println(line);
+        }
+    }
+}
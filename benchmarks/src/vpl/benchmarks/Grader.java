@@ -0,0 +1,81 @@
+package vpl.benchmarks;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The classes of the grader live in the default package, which cannot be imported by the (packaged)
+ * benchmarks. This class binds the benchmarked methods to constant method handles, which the JIT
+ * inlines like direct calls.
+ */
+public final class Grader {
+    static final MethodHandle BUILD_STYLE_VIOLATION = method("StyleViolation", "build", String.class);
+    static final MethodHandle STYLE_TYPE = method("StyleViolation", "getType");
+    static final MethodHandle STYLE_SEVERITY = method("StyleViolation", "getSeverity");
+    static final MethodHandle NEW_TESTER = constructor("VplJUnitTester", Path.class, PrintStream.class);
+    static final MethodHandle EXTRACT_POINTS = method("VplJUnitTester", "extractPointsFromTestName", String.class);
+    static final MethodHandle DEDUCTIONS_FOR_CHECK = method("VplJUnitTester", "getDeductionsForCheckName", String.class);
+    static final MethodHandle GROUP_STYLE_MESSAGES = method("VplJUnitTester", "groupStyleMessages", List.class, boolean.class, Function.class);
+    static final MethodHandle NEW_SIMULATOR = constructor("VplConsoleSimulator", String.class, String[].class);
+    static final MethodHandle ENTER_LINE = method("VplConsoleSimulator", "enterLine", String.class);
+    static final MethodHandle EXPECT_OUTPUT = method("VplConsoleSimulator", "expectOutput", String.class);
+    static final MethodHandle KILL = method("VplConsoleSimulator", "kill");
+    static final MethodHandle CHECKSTYLE_EXECUTABLE = method("CheckstyleRunner", "getCheckstyleExecutable");
+    static final MethodHandle RUN_CHECKSTYLE = method("CheckstyleRunner", "run", String.class, List.class);
+
+    /**
+     * Private to prevent instantiation
+     */
+    private Grader() {
+
+    }
+
+    /**
+     * Returns the key of the style summary (type or severity of a message) as function
+     */
+    static Function<Object, String> styleKey(MethodHandle getter) {
+        return sv -> {
+            try {
+                return (String) getter.invoke(sv);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    static Map<?, ?> groupStyleMessages(List<?> messages, boolean violations, Function<Object, String> key) throws Throwable {
+        return (Map<?, ?>) GROUP_STYLE_MESSAGES.invoke(messages, violations, key);
+    }
+
+    static File checkstyleExecutable() throws Throwable {
+        return (File) CHECKSTYLE_EXECUTABLE.invoke();
+    }
+
+    private static MethodHandle method(String classname, String name, Class<?>... parameters) {
+        try {
+            Method m = Class.forName(classname).getDeclaredMethod(name, parameters);
+            m.setAccessible(true);
+            return MethodHandles.lookup().unreflect(m);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle constructor(String classname, Class<?>... parameters) {
+        try {
+            Constructor<?> c = Class.forName(classname).getDeclaredConstructor(parameters);
+            c.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(c);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package vpl.benchmarks;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Drives many concurrent evaluations of synthetic submissions (see {@link SubmissionGenerator}) within
+ * one JVM, like the daemon or batch mode of the grader, and reports the throughput and the latency
+ * percentiles of the whole evaluation and of each phase (taken from the metrics of the grader).
+ * <pre>
+ *   java -cp vpl-junit-benchmarks.jar vpl.benchmarks.LoadHarness --submissions 100 --concurrency 8
+ *        [--classes 3] [--tests 10] [--dialogs 3] [--violations 5] [--compile] [--dir load] [--timeout 120]
+ *        [--fork ../release/vpl-junit-0.8.jar]
+ * </pre>
+ * With <code>--fork</code> every submission is graded by its own JVM like the <code>vpl_execution</code>
+ * of <code>scripts/vpl_evaluate.sh</code>: the jar is copied into the submission and started there with
+ * <code>java -jar</code>, so the startup of the JVM and the loading of the classes are measured as
+ * well. The process is killed after the timeout.
+ * <p>
+ * With <code>--compile</code> the grader compiles the sources (-Dvpl.compile), otherwise they are
+ * compiled before the measurement. Style checks only run if checkstyle is on the PATH
+ * (<code>--checkstyle</code> selects the configuration).
+ */
+public class LoadHarness {
+    private static final String METRICS_FILE = ".vpl-metrics.txt";
+    private static final String OUTPUT_FILE = "vpl_evaluation.txt";
+    private static final String[] PHASES = {"discovery", "compile", "junit", "checkstyle", "summary"};
+    private static final Pattern PHASE = Pattern.compile("vpl_phase_wall_seconds\\{phase=\"([^\"]+)\"[^}]*} (\\S+)");
+    private static final Pattern GRADE_LINE = Pattern.compile("Grade :=>> (\\S+)");
+
+    private static final MethodHandle NEW_EVALUATION = constructor("VplEvaluation", Path.class, String[].class, long.class);
+    private static final MethodHandle RUN_EVALUATION = method("VplEvaluation", "run", PrintStream.class);
+    private static final MethodHandle GRADE = method("GradingResult", "getGrade");
+    private static final MethodHandle INSTALL_EXIT_TRAP = method("VplExitTrap", "install");
+    private static final MethodHandle EXIT = method("VplExitTrap", "exit", int.class);
+
+    public static void main(String[] args) throws Throwable {
+        int submissions = 20;
+        int concurrency = Runtime.getRuntime().availableProcessors();
+        int classes = 3;
+        int tests = 10;
+        int dialogs = 3;
+        int violations = 5;
+        boolean compile = false;
+        long timeout = 120;
+        Path dir = Paths.get("load");
+        Path checkstyle = Paths.get("../checkstyle/checkstyle_base.xml");
+        Path graderJar = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--submissions":
+                    submissions = Integer.parseInt(args[++i]);
+                    break;
+                case "--concurrency":
+                    concurrency = Integer.parseInt(args[++i]);
+                    break;
+                case "--classes":
+                    classes = Integer.parseInt(args[++i]);
+                    break;
+                case "--tests":
+                    tests = Integer.parseInt(args[++i]);
+                    break;
+                case "--dialogs":
+                    dialogs = Integer.parseInt(args[++i]);
+                    break;
+                case "--violations":
+                    violations = Integer.parseInt(args[++i]);
+                    break;
+                case "--compile":
+                    compile = true;
+                    break;
+                case "--timeout":
+                    timeout = Long.parseLong(args[++i]);
+                    break;
+                case "--dir":
+                    dir = Paths.get(args[++i]);
+                    break;
+                case "--checkstyle":
+                    checkstyle = Paths.get(args[++i]);
+                    break;
+                case "--fork":
+                    graderJar = Paths.get(args[++i]).toAbsolutePath();
+                    break;
+                default:
+                    System.out.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        if (graderJar != null && !Files.isRegularFile(graderJar)) {
+            System.out.println("The grader " + graderJar + " does not exist");
+            return;
+        }
+
+        // Generate the submissions
+        SubmissionGenerator generator = new SubmissionGenerator(classes, tests, dialogs, violations);
+        boolean styleChecks = Grader.checkstyleExecutable() != null;
+        List<Path> dirs = new ArrayList<>();
+        for (int s = 0; s < submissions; s++) {
+            Path submission = dir.resolve(String.format("s%04d", s)).toAbsolutePath();
+            deleteRecursively(submission);
+            generator.write(submission, s);
+            if (styleChecks && Files.exists(checkstyle)) {
+                Files.copy(checkstyle, submission.resolve("checkstyle_base-10P.xml"), StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (!compile) {
+                compile(submission);
+            }
+            if (graderJar != null) {
+                // The Class-Path of the jar is its own directory, as in VPL
+                Files.copy(graderJar, submission.resolve(graderJar.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+            dirs.add(submission);
+        }
+        System.out.println("Generated " + submissions + " submissions with " + classes + " classes, " + tests + " tests ("
+                + dialogs + " dialogs) and " + violations + " style violations per class in " + dir.toAbsolutePath());
+
+        System.setProperty("vpl.metrics", METRICS_FILE);
+        if (compile) {
+            System.setProperty("vpl.compile", "true");
+        }
+        if (graderJar == null) {
+            INSTALL_EXIT_TRAP.invoke();
+        }
+
+        // Run the evaluations
+        List<Double> latencies = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        List<Future<Double>> grades = new ArrayList<>();
+        long timeoutMillis = timeout * 1000;
+        Path jar = graderJar;
+        boolean compileInGrader = compile;
+        for (Path submission : dirs) {
+            grades.add(pool.submit(() -> {
+                long begin = System.nanoTime();
+                double grade = jar == null ? evaluate(submission, timeoutMillis)
+                        : evaluateForked(submission, jar, compileInGrader, timeoutMillis);
+                latencies.add((System.nanoTime() - begin) / 1e9);
+                return grade;
+            }));
+        }
+        int failed = 0;
+        for (Future<Double> grade : grades) {
+            if (grade.get() < 0) {
+                failed++;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        // Report
+        Map<String, List<Double>> phases = new LinkedHashMap<>();
+        phases.put("total", latencies);
+        for (String phase : PHASES) {
+            phases.put(phase, new ArrayList<>());
+        }
+        for (Path submission : dirs) {
+            Path metrics = submission.resolve(METRICS_FILE);
+            if (!Files.exists(metrics)) {
+                continue;
+            }
+            for (String line : Files.readAllLines(metrics, StandardCharsets.UTF_8)) {
+                Matcher m = PHASE.matcher(line);
+                if (m.matches()) {
+                    phases.computeIfAbsent(m.group(1), p -> new ArrayList<>()).add(Double.parseDouble(m.group(2)));
+                }
+            }
+        }
+        System.out.println(String.format("%d %s evaluations (%d without grade) with concurrency %d in %.1f s -> %.2f evaluations/s",
+                submissions, graderJar == null ? "in-process" : "forked", failed, concurrency, seconds, submissions / seconds));
+        System.out.println(String.format("%-12s %6s %10s %10s %10s", "phase", "count", "p50 ms", "p95 ms", "p99 ms"));
+        for (Map.Entry<String, List<Double>> phase : phases.entrySet()) {
+            if (phase.getValue().isEmpty()) {
+                continue;
+            }
+            List<Double> values = new ArrayList<>(phase.getValue());
+            Collections.sort(values);
+            System.out.println(String.format("%-12s %6d %10.1f %10.1f %10.1f", phase.getKey(), values.size(),
+                    percentile(values, 50) * 1000, percentile(values, 95) * 1000, percentile(values, 99) * 1000));
+        }
+        // Abandoned evaluations may still be running
+        EXIT.invoke(0);
+    }
+
+    /**
+     * Evaluates a submission like the batch mode of the grader (the VPL output is written to
+     * vpl_evaluation.txt within the submission)
+     *
+     * @return the grade
+     */
+    private static double evaluate(Path submission, long timeoutMillis) throws Exception {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            Object result;
+            try (PrintStream out = new PrintStream(buffer, true, StandardCharsets.UTF_8.name())) {
+                Object evaluation = NEW_EVALUATION.invoke(submission, new String[0], timeoutMillis);
+                result = RUN_EVALUATION.invoke(evaluation, out);
+            }
+            Files.write(submission.resolve(OUTPUT_FILE), buffer.toByteArray());
+            return (double) GRADE.invoke(result);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Evaluates a submission with the command line of a VPL evaluation (<code>java -jar</code> with the
+     * copy of the jar within the directory of the submission). The VPL output is written to vpl_evaluation.txt within the submission.
+     *
+     * @return the grade or -1 if the grader printed none (e.g. it was killed after the timeout)
+     */
+    private static double evaluateForked(Path submission, Path jar, boolean compile, long timeoutMillis) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Dvpl.metrics=" + METRICS_FILE);
+        if (compile) {
+            command.add("-Dvpl.compile=true");
+        }
+        command.add("-jar");
+        command.add(jar.getFileName().toString());
+
+        Path output = submission.resolve(OUTPUT_FILE);
+        Process process = new ProcessBuilder(command).directory(submission.toFile())
+                .redirectErrorStream(true).redirectOutput(output.toFile()).start();
+        if (!process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            process.destroyForcibly().waitFor();
+            return -1;
+        }
+        double grade = -1;
+        for (String line : Files.readAllLines(output, StandardCharsets.UTF_8)) {
+            Matcher m = GRADE_LINE.matcher(line);
+            if (m.matches()) {
+                grade = Double.parseDouble(m.group(1));
+            }
+        }
+        return grade;
+    }
+
+    /**
+     * Nearest rank percentile of sorted values
+     */
+    static double percentile(List<Double> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return Double.NaN;
+        }
+        int rank = (int) Math.ceil(p / 100 * sorted.size());
+        return sorted.get(Math.max(0, Math.min(sorted.size(), rank) - 1));
+    }
+
+    private static void compile(Path submission) throws IOException {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) {
+            throw new IllegalStateException("No compiler found; run the harness with a JDK or use --compile");
+        }
+        List<String> args = new ArrayList<>();
+        args.add("-nowarn");
+        args.add("-cp");
+        args.add(System.getProperty("java.class.path"));
+        args.add("-d");
+        args.add(submission.toString());
+        try (Stream<Path> files = Files.list(submission)) {
+            files.filter(f -> f.toString().endsWith(".java")).forEach(f -> args.add(f.toString()));
+        }
+        if (javac.run(null, null, null, args.toArray(new String[0])) != 0) {
+            throw new IllegalStateException("Cannot compile " + submission);
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Collections.reverseOrder()).forEach(f -> f.toFile().delete());
+        }
+    }
+
+    private static MethodHandle method(String classname, String name, Class<?>... parameters) {
+        try {
+            return MethodHandles.lookup().unreflect(Class.forName(classname).getMethod(name, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle constructor(String classname, Class<?>... parameters) {
+        try {
+            Constructor<?> c = Class.forName(classname).getConstructor(parameters);
+            return MethodHandles.lookup().unreflectConstructor(c);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
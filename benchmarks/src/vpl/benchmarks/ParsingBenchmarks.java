@@ -0,0 +1,90 @@
+package vpl.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Parsing of test names and checkstyle output, and the aggregation of the style summary (STEP 5)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParsingBenchmarks {
+    private static final String[] TYPES = {"WhitespaceAround", "NeedBraces", "JavadocMethod", "MagicNumber", "LineLength"};
+    private static final String[] SEVERITIES = {"WARN", "WARN", "WARN", "INFO", "ERROR"};
+
+    private Object tester;
+
+    @Setup
+    public void createTester() throws Throwable {
+        tester = Grader.NEW_TESTER.invoke(Paths.get("."), System.out);
+    }
+
+    /**
+     * The messages of a style check (always the same ones for the same size)
+     */
+    @State(Scope.Thread)
+    public static class Messages {
+        @Param({"100", "1000"})
+        public int messages;
+
+        private List<Object> violations;
+        private final Function<Object, String> type = Grader.styleKey(Grader.STYLE_TYPE);
+        private final Function<Object, String> severity = Grader.styleKey(Grader.STYLE_SEVERITY);
+
+        @Setup
+        public void generate() throws Throwable {
+            Random random = new Random(42);
+            violations = new ArrayList<>();
+            for (int i = 0; i < messages; i++) {
+                violations.add(Grader.BUILD_STYLE_VIOLATION.invoke(checkstyleLine(random, i)));
+            }
+        }
+
+        private static String checkstyleLine(Random random, int i) {
+            String type = TYPES[random.nextInt(TYPES.length)];
+            return "[" + SEVERITIES[random.nextInt(SEVERITIES.length)] + "] /home/student/Submission" + (i % 7) + ".java:"
+                    + (1 + random.nextInt(300)) + ":" + random.nextInt(80) + ": Violation of " + type + ". [" + type + "]";
+        }
+    }
+
+    @Benchmark
+    public Object styleViolationBuild() throws Throwable {
+        return Grader.BUILD_STYLE_VIOLATION.invoke("[WARN] /home/student/SimpleCalculator.java:42:17: '{' is not preceded with whitespace. [WhitespaceAround]");
+    }
+
+    @Benchmark
+    public int extractPointsFromTestName() throws Throwable {
+        return (int) Grader.EXTRACT_POINTS.invoke(tester, "CalculatorTests.i_compactTestWrongOperator_20P");
+    }
+
+    @Benchmark
+    public Object getDeductionsForCheckName() throws Throwable {
+        return Grader.DEDUCTIONS_FOR_CHECK.invoke("/home/student/checkstyle_braces-5P.xml");
+    }
+
+    @Benchmark
+    public int groupStyleMessages(Messages m) throws Throwable {
+        return Grader.groupStyleMessages(m.violations, true, m.type).size()
+                + Grader.groupStyleMessages(m.violations, false, m.severity).size();
+    }
+}
@@ -0,0 +1,116 @@
+package vpl.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Writes synthetic submissions modeled on the exercises of the <code>examples</code> directory: programs
+ * with a console dialog (like SimpleCalculator), tests which call methods directly (like
+ * SchaltjahrTests) and tests which talk to the program through the VplConsoleSimulator (like
+ * CalculatorTests). Some tests fail on purpose and the programs contain style violations. The same seed
+ * always produces the same submissions.
+ */
+public class SubmissionGenerator {
+    private final int classes;
+    private final int tests;
+    private final int dialogs;
+    private final int violations;
+
+    /**
+     * @param classes    Programs (each with its own test class) per submission
+     * @param tests      Tests per test class
+     * @param dialogs    Tests per test class which start the program in a child JVM
+     * @param violations Style violations per program
+     */
+    public SubmissionGenerator(int classes, int tests, int dialogs, int violations) {
+        this.classes = classes;
+        this.tests = tests;
+        this.dialogs = Math.min(dialogs, tests);
+        this.violations = violations;
+    }
+
+    /**
+     * Writes the sources of one submission into the directory
+     */
+    public void write(Path dir, long seed) throws IOException {
+        Files.createDirectories(dir);
+        Random random = new Random(seed);
+        for (int c = 0; c < classes; c++) {
+            write(dir.resolve("Program" + c + ".java"), program(c, random));
+            write(dir.resolve("Program" + c + "Tests.java"), testClass(c, random));
+        }
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String program(int c, Random random) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("import java.util.Scanner;\n\n");
+        sb.append("public class Program").append(c).append(" {\n");
+        sb.append("    public static void main(String[] args) {\n");
+        sb.append("        Scanner in = new Scanner(System.in);\n");
+        sb.append("        System.out.println(\"Welcome to program ").append(c).append("\");\n");
+        sb.append("        System.out.println(\"Enter the first integer\");\n");
+        sb.append("        int a = Integer.parseInt(in.nextLine().trim());\n");
+        sb.append("        System.out.println(\"Enter the second integer\");\n");
+        sb.append("        int b = Integer.parseInt(in.nextLine().trim());\n");
+        sb.append("        System.out.println(\"The sum of \" + a + \" + \" + b + \" = \" + add(a, b));\n");
+        sb.append("    }\n\n");
+        sb.append("    public static int add(int a, int b) {\n");
+        sb.append("        return a + b;\n");
+        sb.append("    }\n\n");
+        sb.append("    public static boolean isLeapYear(int year) {\n");
+        sb.append("        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;\n");
+        sb.append("    }\n");
+        for (int v = 0; v < violations; v++) {
+            // missing braces and whitespace around operators
+            sb.append("\n    public static int max").append(v).append("(int a,int b){\n");
+            sb.append("        if (a>b+").append(random.nextInt(10)).append(") return a;\n");
+            sb.append("        return b;\n");
+            sb.append("    }\n");
+        }
+        return sb.append("}\n").toString();
+    }
+
+    private String testClass(int c, Random random) {
+        String program = "Program" + c;
+        StringBuilder sb = new StringBuilder();
+        sb.append("import org.junit.Test;\n\n");
+        sb.append("import static org.junit.Assert.assertEquals;\n\n");
+        sb.append("public class ").append(program).append("Tests {\n");
+        for (int t = 0; t < tests; t++) {
+            int a = random.nextInt(1000);
+            int b = random.nextInt(1000);
+            // about every seventh test fails
+            int expected = random.nextInt(7) == 0 ? a + b + 1 : a + b;
+            sb.append("\n    @Test\n");
+            if (t < dialogs) {
+                sb.append("    public void dialog").append(t).append("_10P() throws Exception {\n");
+                sb.append("        VplConsoleSimulator p = new VplConsoleSimulator(\"").append(program).append("\");\n");
+                sb.append("        p.skipOutputTill(line -> line.startsWith(\"Enter the first\"));\n");
+                sb.append("        p.enterLine(\"").append(a).append("\");\n");
+                sb.append("        p.assertOutput(\"Enter the second integer\");\n");
+                sb.append("        p.enterLine(\"").append(b).append("\");\n");
+                sb.append("        p.assertOutput(\"The sum of ").append(a).append(" + ").append(b).append(" = ").append(expected).append("\");\n");
+                sb.append("        assertEquals(0, (int) p.getExitValue());\n");
+                sb.append("    }\n");
+            } else if (t % 2 == 0) {
+                sb.append("    public void add").append(t).append("_5P() {\n");
+                sb.append("        assertEquals(").append(expected).append(", ").append(program).append(".add(").append(a).append(", ").append(b).append("));\n");
+                sb.append("    }\n");
+            } else {
+                int year = 1600 + random.nextInt(500);
+                sb.append("    public void leapYear").append(t).append("_5P() {\n");
+                sb.append("        assertEquals(").append((year % 4 == 0 && year % 100 != 0) || year % 400 == 0).append(", ")
+                        .append(program).append(".isLeapYear(").append(year).append("));\n");
+                sb.append("    }\n");
+            }
+        }
+        return sb.append("}\n").toString();
+    }
+}
@@ -7,6 +7,10 @@ vpl_junit_timeout=1
 # use the latest available version
 vpl_junit_version=$(basename  $(ls vpl-junit*) .b64)
 
+# Optional: AppCDS archive of a grader installed on the jail server (created with
+# "ant cds -Dcds.jar=/opt/vpl-junit/vpl-junit.jar"), e.g. /opt/vpl-junit/vpl-junit.jsa
+vpl_junit_cds=""
+
 . common_script.sh
 check_program javac
 check_program java
@@ -23,5 +27,10 @@ if [ "$?" -ne "0" ] ; then
 fi
 
 cat common_script.sh > vpl_execution
-echo "timeout $vpl_junit_timeout java -jar $vpl_junit_version" >> vpl_execution
+if [ -n "$vpl_junit_cds" ] && [ -f "$vpl_junit_cds" ] ; then
+  # the archive only applies to the installed jar next to it
+  echo "timeout $vpl_junit_timeout java -Xlog:cds*=off -XX:SharedArchiveFile=$vpl_junit_cds -cp ${vpl_junit_cds%.jsa}.jar:. VplJUnitTester" >> vpl_execution
+else
+  echo "timeout $vpl_junit_timeout java -jar $vpl_junit_version" >> vpl_execution
+fi
 chmod +x vpl_execution
\ No newline at end of file
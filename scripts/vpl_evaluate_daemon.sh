@@ -0,0 +1,48 @@
+#!/bin/bash
+#load common script and check programs
+
+# Enter timeout for unittests here
+vpl_junit_timeout=5
+
+# Port of the resident grader (java -jar vpl-junit.jar --daemon 7321)
+vpl_junit_daemon_port=7321
+
+# Has to exceed the timeout of the daemon (-Dvpl.daemon.timeout, 60 seconds by default)
+vpl_junit_daemon_timeout=70
+
+# use the latest available version
+vpl_junit_version=$(basename  $(ls vpl-junit*) .b64)
+
+. common_script.sh
+check_program javac
+check_program java
+get_source_files java
+
+#compile all .java files
+
+export CLASSPATH=$CLASSPATH:./$vpl_junit_version
+javac -J-Xmx16m -Xlint:deprecation *.java
+
+if [ "$?" -ne "0" ] ; then
+  echo "Not compiled"
+  exit 0
+fi
+
+# Ask the daemon to evaluate the current directory, fall back to a normal run if it is not reachable
+# or does not answer with a grade (e.g. it is busy or was stopped)
+cat common_script.sh > vpl_execution
+cat >> vpl_execution <<END_OF_EXECUTION
+daemon_output=\$(mktemp)
+if exec 3<>/dev/tcp/127.0.0.1/$vpl_junit_daemon_port 2>/dev/null ; then
+  printf '%s\n\n' "\$PWD" >&3
+  timeout $vpl_junit_daemon_timeout cat <&3 > "\$daemon_output"
+  exec 3<&-
+fi
+if grep -q '^Grade :=>>' "\$daemon_output" ; then
+  cat "\$daemon_output"
+else
+  timeout $vpl_junit_timeout java -jar $vpl_junit_version
+fi
+rm -f "\$daemon_output"
+END_OF_EXECUTION
+chmod +x vpl_execution
@@ -0,0 +1,18 @@
+#!/bin/bash
+#load common script and check programs
+
+# Enter timeout for unittests here
+vpl_junit_timeout=5
+
+# use the latest available version
+vpl_junit_version=$(basename  $(ls vpl-junit*) .b64)
+
+. common_script.sh
+check_program java
+get_source_files java
+
+# The grader compiles all .java files itself (in memory) and reports compile errors as comments
+
+cat common_script.sh > vpl_execution
+echo "timeout $vpl_junit_timeout java -Dvpl.compile=true -jar $vpl_junit_version" >> vpl_execution
+chmod +x vpl_execution
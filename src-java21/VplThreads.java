@@ -0,0 +1,40 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Threads of the grader which wait for child processes (stream pumps, exit waiters) or run concurrent
+ * tests. This is the Java 21 variant of the class in the multi-release jar: every task of an executor
+ * gets its own virtual thread, which releases its carrier thread while it waits for a lock or a queue.
+ * The threads which wait for child processes remain platform threads, because reading a pipe or waiting
+ * for a process pins the carrier and the scheduler would add carriers to compensate.
+ */
+public final class VplThreads {
+
+    /**
+     * Private to prevent instantiation
+     */
+    private VplThreads() {
+
+    }
+
+    /**
+     * Returns true if the executors of this class use virtual threads
+     */
+    public static boolean isVirtual() {
+        return true;
+    }
+
+    /**
+     * Starts a daemon platform thread with the given task, which may block on a child process
+     */
+    public static Thread start(String name, Runnable task) {
+        return Thread.ofPlatform().name(name).daemon().start(task);
+    }
+
+    /**
+     * Returns an executor which runs every task in a new virtual thread
+     */
+    public static ExecutorService newExecutor(String name) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name).factory());
+    }
+}
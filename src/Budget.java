@@ -0,0 +1,36 @@
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Resource budget of a test: it only passes (and earns its points) if one invocation of the test method
+ * needs at most the given CPU time and allocates at most the given number of bytes. A limit of 0 is no
+ * limit. The test method is invoked <code>warmup</code> times without measuring (so the JIT compiler has
+ * done its work) and then <code>repetitions</code> times; the median of the measurements is compared
+ * with the budget. See {@link BudgetRunner}.
+ * <p>
+ * Only the CPU time and the allocations of the thread which runs the test are measured: work in child
+ * processes (e.g. of the {@link VplConsoleSimulator}), parallel streams or other threads is not
+ * counted. Budgets are measured with JUnit 4 (also in forked workers), but not on the JUnit Platform
+ * (<code>-Dvpl.engine=platform</code>), which only prints a warning.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Budget {
+    /**
+     * Maximum CPU time of the thread which runs the test in milliseconds (other threads are not counted)
+     */
+    double cpuMillis() default 0;
+
+    /**
+     * Maximum number of bytes allocated by the thread which runs the test
+     */
+    long allocatedBytes() default 0;
+
+    int warmup() default 3;
+
+    int repetitions() default 5;
+}
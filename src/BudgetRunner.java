@@ -0,0 +1,318 @@
+import org.junit.runner.Request;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerScheduler;
+import org.junit.runners.model.Statement;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs a JUnit 4 test class with tests which have a {@link Budget}. Such a test method is measured
+ * in-process with the CPU time and the allocated bytes of its own thread, which (unlike the wall clock)
+ * do not grow if other evaluations compete for the host. Every invocation gets a new instance of the test
+ * class with its own <code>@Before</code> and <code>@After</code> methods and rules (like a test of its
+ * own); only the test method itself is measured. The median of several invocations after a
+ * warmup removes outliers (e.g. a garbage collection); if the budget is exceeded the measurement is
+ * repeated once and the better median counts. <code>-Dvpl.budget.scale=1.5</code> relaxes all time
+ * budgets for slow hosts.
+ * <p>
+ * Exceeding a budget fails the test with an {@link AssertionError}. The measured values of every test
+ * with a budget are passed to a callback, so that they can be shown in the comments.
+ * <p>
+ * The test methods of a class with the annotation {@link Concurrent} are run at the same time by this
+ * runner, each in a thread of {@link VplThreads}.
+ */
+public class BudgetRunner extends BlockJUnit4ClassRunner {
+    private final BiConsumer<String, String> measured;
+    private final ThreadLocal<Sample> sample = new ThreadLocal<>();
+
+    /**
+     * @param testClass Test class with at least one {@link Budget}
+     * @param measured  Receives the name of a test and its measured values
+     */
+    public BudgetRunner(Class<?> testClass, BiConsumer<String, String> measured) throws InitializationError {
+        super(testClass);
+        this.measured = measured;
+        if (testClass.isAnnotationPresent(Concurrent.class)) {
+            setScheduler(new ConcurrentScheduler());
+        }
+    }
+
+    /**
+     * Returns the request for a test class, which uses this runner if the class has tests with a budget
+     * or is {@link Concurrent} and has no runner of its own
+     */
+    public static Request request(Class<?> testClass, BiConsumer<String, String> measured) {
+        boolean concurrent = testClass.isAnnotationPresent(Concurrent.class);
+        if (!(concurrent || hasBudget(testClass)) || testClass.isAnnotationPresent(RunWith.class)) {
+            return Request.aClass(testClass);
+        }
+        try {
+            return Request.runner(new BudgetRunner(testClass, measured));
+        } catch (InitializationError e) {
+            // JUnit reports the errors of the class
+            return Request.aClass(testClass);
+        }
+    }
+
+    private static boolean hasBudget(Class<?> testClass) {
+        for (Method method : testClass.getMethods()) {
+            if (method.isAnnotationPresent(Budget.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected Statement methodBlock(FrameworkMethod method) {
+        Budget budget = method.getAnnotation(Budget.class);
+        if (budget == null) {
+            return super.methodBlock(method);
+        }
+        String testName = getTestClass().getName() + "." + method.getName();
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                for (int i = 0; i < budget.warmup(); i++) {
+                    invoke(method);
+                }
+                Usage usage = measure(method, budget.repetitions());
+                if (!usage.fits(budget)) {
+                    usage = usage.min(measure(method, budget.repetitions()));
+                }
+
+                measured.accept(testName, usage.toString());
+                if (!usage.fits(budget)) {
+                    throw new AssertionError("Budget exceeded: " + usage.describe(budget));
+                }
+            }
+        };
+    }
+
+    /**
+     * Measures the test method of an invocation (see {@link #invoke(FrameworkMethod)})
+     */
+    @Override
+    protected Statement methodInvoker(FrameworkMethod method, Object test) {
+        Statement invoker = super.methodInvoker(method, test);
+        Sample target = sample.get();
+        if (target == null) {
+            return invoker;
+        }
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                target.measure(invoker);
+            }
+        };
+    }
+
+    /**
+     * Runs the test method once with a new instance, its befores, afters and rules
+     *
+     * @return the measured values of the test method
+     */
+    private Sample invoke(FrameworkMethod method) throws Throwable {
+        Sample target = new Sample();
+        Statement block;
+        sample.set(target);
+        try {
+            block = super.methodBlock(method);
+        } finally {
+            sample.remove();
+        }
+        block.evaluate();
+        return target;
+    }
+
+    /**
+     * Invokes the test the given number of times and returns the medians
+     */
+    private Usage measure(FrameworkMethod method, int repetitions) throws Throwable {
+        List<Sample> samples = new ArrayList<>();
+        for (int i = Math.max(1, repetitions); i > 0; i--) {
+            samples.add(invoke(method));
+        }
+        return Usage.of(samples);
+    }
+
+    /**
+     * Returns the factor for all time budgets
+     */
+    private static double scale() {
+        try {
+            return Math.max(Double.parseDouble(System.getProperty("vpl.budget.scale", "1")), 0.0);
+        } catch (NumberFormatException e) {
+            return 1.0;
+        }
+    }
+
+    /**
+     * Starts every test method in its own thread and waits for all of them when the class is done
+     */
+    private static class ConcurrentScheduler implements RunnerScheduler {
+        private final ExecutorService executor = VplThreads.newExecutor("vpl-test");
+
+        @Override
+        public void schedule(Runnable childStatement) {
+            executor.execute(childStatement);
+        }
+
+        @Override
+        public void finished() {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * CPU time and allocated bytes of one invocation of the test method (measured in the thread which
+     * runs it, e.g. the thread of a JUnit timeout)
+     */
+    private static class Sample {
+        private long cpuNanos;
+        private long allocatedBytes;
+        private boolean threadCpu;
+
+        void measure(Statement invoker) throws Throwable {
+            threadCpu = Usage.THREADS.isCurrentThreadCpuTimeSupported();
+            long cpuStart = Usage.cpuTime(threadCpu);
+            long allocatedStart = Usage.allocatedBytes();
+            try {
+                invoker.evaluate();
+            } finally {
+                allocatedBytes = Usage.allocatedBytes() - allocatedStart;
+                cpuNanos = Usage.cpuTime(threadCpu) - cpuStart;
+            }
+        }
+    }
+
+    /**
+     * Median CPU time and allocated bytes of one invocation (the management beans are only loaded if a
+     * test has a budget)
+     */
+    private static class Usage {
+        private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+        private final long cpuNanos;
+        private final long allocatedBytes;
+        private final boolean threadCpu;
+
+        Usage(long cpuNanos, long allocatedBytes, boolean threadCpu) {
+            this.cpuNanos = cpuNanos;
+            this.allocatedBytes = allocatedBytes;
+            this.threadCpu = threadCpu;
+        }
+
+        /**
+         * Returns the medians of the samples
+         */
+        private static Usage of(List<Sample> samples) {
+            long[] cpu = new long[samples.size()];
+            long[] allocated = new long[samples.size()];
+            boolean threadCpu = true;
+            for (int i = 0; i < cpu.length; i++) {
+                cpu[i] = samples.get(i).cpuNanos;
+                allocated[i] = samples.get(i).allocatedBytes;
+                threadCpu &= samples.get(i).threadCpu;
+            }
+            return new Usage(median(cpu), median(allocated), threadCpu);
+        }
+
+        private static long cpuTime(boolean threadCpu) {
+            return threadCpu ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+        }
+
+        private static long median(long[] values) {
+            Arrays.sort(values);
+            return values[values.length / 2];
+        }
+
+        @SuppressWarnings("restriction")
+        private static long allocatedBytes() {
+            if (THREADS instanceof com.sun.management.ThreadMXBean) {
+                return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+            return 0;
+        }
+
+        private double cpuMillis() {
+            return cpuNanos / 1e6;
+        }
+
+        private double cpuLimit(Budget budget) {
+            return budget.cpuMillis() * scale();
+        }
+
+        boolean fitsCpu(Budget budget) {
+            return budget.cpuMillis() <= 0 || cpuMillis() <= cpuLimit(budget);
+        }
+
+        boolean fitsAllocation(Budget budget) {
+            return budget.allocatedBytes() <= 0 || allocatedBytes <= budget.allocatedBytes();
+        }
+
+        boolean fits(Budget budget) {
+            return fitsCpu(budget) && fitsAllocation(budget);
+        }
+
+        /**
+         * Returns the better values of both measurements
+         */
+        Usage min(Usage other) {
+            return new Usage(Math.min(cpuNanos, other.cpuNanos), Math.min(allocatedBytes, other.allocatedBytes), threadCpu);
+        }
+
+        /**
+         * Describes the exceeded limits
+         */
+        String describe(Budget budget) {
+            StringBuilder sb = new StringBuilder();
+            if (!fitsCpu(budget)) {
+                sb.append(String.format(Locale.ROOT, "%.2f ms %s (budget %.2f ms)", cpuMillis(), clock(), cpuLimit(budget)));
+            }
+            if (!fitsAllocation(budget)) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(formatBytes(allocatedBytes)).append(" allocated (budget ").append(formatBytes(budget.allocatedBytes())).append(")");
+            }
+            return sb.toString();
+        }
+
+        private String clock() {
+            return threadCpu ? "CPU" : "wall clock";
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%.2f ms %s, %s allocated", cpuMillis(), clock(), formatBytes(allocatedBytes));
+        }
+
+        private static String formatBytes(long bytes) {
+            if (bytes < 1024) {
+                return bytes + " bytes";
+            } else if (bytes < 1024 * 1024) {
+                return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+            }
+            return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024.0));
+        }
+    }
+}
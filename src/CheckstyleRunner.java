@@ -33,7 +33,9 @@ public class CheckstyleRunner {
             // Get the name of the File which corresponds to the classname
             String[] cmdline = {cs.toString(), "-c", checkstyleconfig, srcfile.getAbsolutePath().toString()};
 
+            GradingEvents.Span audit = GradingEvents.checkstyleAudit(checkstyleconfig, srcfile.getName());
             Process process = new ProcessBuilder(cmdline).start(); // Go for it !
+            VplGradingContext.childProcessStarted("checkstyle", process);
 
             // Wait till ended
             process.waitFor();
@@ -44,6 +46,7 @@ public class CheckstyleRunner {
 
             String line;
             boolean inAudit = false;
+            int before = violations.size();
             while ((line = inReader.readLine()) != null) {
                 if (line.equalsIgnoreCase("Starting audit...")) {
                     inAudit = true;
@@ -62,6 +65,7 @@ public class CheckstyleRunner {
                     }
                 }
             }
+            audit.end((violations.size() - before) + " messages", violations.size() == before);
         }
 
         return violations;
@@ -71,9 +75,12 @@ public class CheckstyleRunner {
      * Finds the executable checkstyle by traversing the path environment variable
      */
     public static File getCheckstyleExecutable() {
-        String[] paths = System.getenv("PATH").split(":");
+        String searchPath = System.getenv("PATH");
+        if (searchPath == null) {
+            return null;
+        }
 
-        for (String path : paths) {
+        for (String path : searchPath.split(File.pathSeparator)) {
             File cs = new File(path + File.separator + "checkstyle");
             if (cs.exists() && cs.canExecute()) {
                 return cs;
@@ -0,0 +1,319 @@
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads the parts of a class file the grader is interested in (without loading the class): the
+ * referenced classes and string constants of the constant pool as well as the annotations of the class
+ * and its methods.
+ */
+public class ClassFileInfo {
+    public static final int ACC_STATIC = 0x0008;
+    public static final int ACC_INTERFACE = 0x0200;
+    public static final int ACC_ABSTRACT = 0x0400;
+
+    private String name;
+    private String superName;
+    private int access;
+    private final Set<String> referencedClasses = new LinkedHashSet<>();
+    private final Set<String> stringConstants = new LinkedHashSet<>();
+    private final Set<String> annotations = new LinkedHashSet<>();
+    private final List<MethodInfo> methods = new ArrayList<>();
+
+    /**
+     * Private to prevent instantiation
+     */
+    private ClassFileInfo() {
+
+    }
+
+    /**
+     * Parses the bytecode of a class
+     *
+     * @throws IOException if the data is not a valid class file
+     */
+    public static ClassFileInfo parse(byte[] bytecode) throws IOException {
+        ClassFileInfo info = new ClassFileInfo();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytecode));
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        // Constant pool
+        int count = in.readUnsignedShort();
+        Object[] pool = new Object[count];
+        int[] classIndex = new int[count];
+        int[] stringIndex = new int[count];
+        List<Integer> descriptorIndexes = new ArrayList<>();
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1: // Utf8
+                    pool[i] = in.readUTF();
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                    in.readInt();
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    in.readLong();
+                    i++;
+                    break;
+                case 7: // Class
+                    classIndex[i] = in.readUnsignedShort();
+                    break;
+                case 8: // String
+                    stringIndex[i] = in.readUnsignedShort();
+                    break;
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 18: // InvokeDynamic
+                case 17: // Dynamic
+                    in.readUnsignedShort();
+                    in.readUnsignedShort();
+                    break;
+                case 12: // NameAndType
+                    in.readUnsignedShort();
+                    descriptorIndexes.add(in.readUnsignedShort());
+                    break;
+                case 15: // MethodHandle
+                    in.readUnsignedByte();
+                    in.readUnsignedShort();
+                    break;
+                case 16: // MethodType
+                    descriptorIndexes.add(in.readUnsignedShort());
+                    break;
+                case 19: // Module
+                case 20: // Package
+                    in.readUnsignedShort();
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+        for (int i = 1; i < count; i++) {
+            if (classIndex[i] != 0) {
+                addInternalName(info.referencedClasses, (String) pool[classIndex[i]]);
+            }
+            if (stringIndex[i] != 0) {
+                info.stringConstants.add((String) pool[stringIndex[i]]);
+            }
+        }
+        for (int index : descriptorIndexes) {
+            addDescriptor(info.referencedClasses, (String) pool[index]);
+        }
+
+        info.access = in.readUnsignedShort();
+        info.name = toClassName((String) pool[classIndex[in.readUnsignedShort()]]);
+        int superIndex = in.readUnsignedShort();
+        info.superName = superIndex == 0 ? null : toClassName((String) pool[classIndex[superIndex]]);
+        int interfaces = in.readUnsignedShort();
+        for (int i = 0; i < interfaces; i++) {
+            in.readUnsignedShort();
+        }
+
+        // Fields
+        int fields = in.readUnsignedShort();
+        for (int i = 0; i < fields; i++) {
+            in.readUnsignedShort();
+            in.readUnsignedShort();
+            addDescriptor(info.referencedClasses, (String) pool[in.readUnsignedShort()]);
+            readAttributes(in, pool, info.referencedClasses, null);
+        }
+
+        // Methods
+        int methodCount = in.readUnsignedShort();
+        for (int i = 0; i < methodCount; i++) {
+            int methodAccess = in.readUnsignedShort();
+            String methodName = (String) pool[in.readUnsignedShort()];
+            String descriptor = (String) pool[in.readUnsignedShort()];
+            addDescriptor(info.referencedClasses, descriptor);
+            Set<String> methodAnnotations = new LinkedHashSet<>();
+            readAttributes(in, pool, info.referencedClasses, methodAnnotations);
+            info.methods.add(new MethodInfo(methodName, descriptor, methodAccess, methodAnnotations));
+        }
+
+        readAttributes(in, pool, info.referencedClasses, info.annotations);
+        info.referencedClasses.remove(info.name);
+        return info;
+    }
+
+    /**
+     * Reads the attributes of a field, method or the class. Visible annotations are collected.
+     */
+    private static void readAttributes(DataInputStream in, Object[] pool, Set<String> references, Set<String> annotations) throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            String attribute = (String) pool[in.readUnsignedShort()];
+            int length = in.readInt();
+            if (annotations != null && (attribute.equals("RuntimeVisibleAnnotations") || attribute.equals("RuntimeInvisibleAnnotations"))) {
+                int num = in.readUnsignedShort();
+                for (int a = 0; a < num; a++) {
+                    String type = readAnnotation(in, pool, references);
+                    annotations.add(type);
+                }
+            } else {
+                in.readFully(new byte[length]);
+            }
+        }
+    }
+
+    /**
+     * Reads a single annotation and returns its class name
+     */
+    private static String readAnnotation(DataInputStream in, Object[] pool, Set<String> references) throws IOException {
+        String type = (String) pool[in.readUnsignedShort()];
+        addDescriptor(references, type);
+        int pairs = in.readUnsignedShort();
+        for (int p = 0; p < pairs; p++) {
+            in.readUnsignedShort();
+            skipElementValue(in, pool, references);
+        }
+        return toClassName(type.substring(1, type.length() - 1));
+    }
+
+    private static void skipElementValue(DataInputStream in, Object[] pool, Set<String> references) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case 'e':
+                addDescriptor(references, (String) pool[in.readUnsignedShort()]);
+                in.readUnsignedShort();
+                break;
+            case 'c':
+                addDescriptor(references, (String) pool[in.readUnsignedShort()]);
+                break;
+            case '@':
+                readAnnotation(in, pool, references);
+                break;
+            case '[':
+                int values = in.readUnsignedShort();
+                for (int v = 0; v < values; v++) {
+                    skipElementValue(in, pool, references);
+                }
+                break;
+            default:
+                in.readUnsignedShort();
+        }
+    }
+
+    /**
+     * Adds all class names of a field/method descriptor (e.g. (ILjava/lang/String;)[LFoo;)
+     */
+    private static void addDescriptor(Set<String> references, String descriptor) {
+        if (descriptor == null) {
+            return;
+        }
+        int start = descriptor.indexOf('L');
+        while (start >= 0) {
+            int end = descriptor.indexOf(';', start);
+            if (end < 0) {
+                return;
+            }
+            addInternalName(references, descriptor.substring(start + 1, end));
+            start = descriptor.indexOf('L', end);
+        }
+    }
+
+    private static void addInternalName(Set<String> references, String internalName) {
+        if (internalName == null) {
+            return;
+        }
+        if (internalName.startsWith("[")) {
+            addDescriptor(references, internalName);
+        } else {
+            references.add(toClassName(internalName));
+        }
+    }
+
+    private static String toClassName(String internalName) {
+        return internalName.replace('/', '.');
+    }
+
+    /**
+     * Returns the binary name of the class (e.g. com.foo.Bar$Inner)
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the binary name of the super class (null for java.lang.Object)
+     */
+    public String getSuperName() {
+        return superName;
+    }
+
+    public int getAccess() {
+        return access;
+    }
+
+    /**
+     * Returns all classes the bytecode refers to (without the class itself)
+     */
+    public Set<String> getReferencedClasses() {
+        return Collections.unmodifiableSet(referencedClasses);
+    }
+
+    /**
+     * Returns all string literals of the class
+     */
+    public Set<String> getStringConstants() {
+        return Collections.unmodifiableSet(stringConstants);
+    }
+
+    /**
+     * Returns the class names of the annotations of the class
+     */
+    public Set<String> getAnnotations() {
+        return Collections.unmodifiableSet(annotations);
+    }
+
+    public List<MethodInfo> getMethods() {
+        return Collections.unmodifiableList(methods);
+    }
+
+    /**
+     * A single method of the class
+     */
+    public static class MethodInfo {
+        private final String name;
+        private final String descriptor;
+        private final int access;
+        private final Set<String> annotations;
+
+        MethodInfo(String name, String descriptor, int access, Set<String> annotations) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.access = access;
+            this.annotations = annotations;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescriptor() {
+            return descriptor;
+        }
+
+        public int getAccess() {
+            return access;
+        }
+
+        /**
+         * Returns the class names of the annotations of the method
+         */
+        public Set<String> getAnnotations() {
+            return Collections.unmodifiableSet(annotations);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Keeps the bytecode of compilation units between evaluations, so that the {@link VplCompiler} only has
+ * to compile the sources which changed. Enabled with <code>-Dvpl.compileCache=&lt;directory&gt;</code>;
+ * the directory can be shared by all submissions of a course (the tests and helper classes provided by
+ * the teacher are the same for everyone). Since a submission could plant bytecode under the hash of a
+ * source of the teacher, every entry is authenticated with the key of the grader (<code>-Dvpl.key</code>,
+ * see {@link VplHashes#hmac(String...)}) and entries which fail the check are compiled again; without
+ * a key the cache is not used.
+ * <p>
+ * An entry is found by the hash of the source. It is only valid if every other compilation unit it
+ * depends on (by the types referenced in its bytecode or named in its source) still has the same hash
+ * as at the time it was compiled. Every entry is stored in its own file, so that concurrent
+ * evaluations never see a half written entry.
+ */
+public class CompileCache {
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final String DEPENDENCY = "dep.";
+    private static final String CLASS = "class.";
+    private static final String REPORT = "report";
+    private static final String COMPILER = "compiler";
+    private static final String MAC = "mac";
+
+    private final Path directory;
+
+    private CompileCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Opens the cache
+     *
+     * @return the cache or null if caching is not enabled
+     */
+    public static CompileCache open() throws IOException {
+        String location = System.getProperty("vpl.compileCache");
+        if (location == null || location.isEmpty()) {
+            return null;
+        }
+        if (!VplHashes.hasKey()) {
+            System.err.println("Warning: The compile cache " + location + " is not used, since its entries cannot be authenticated without -Dvpl.key");
+            return null;
+        }
+        Path directory = Paths.get(location);
+        Files.createDirectories(directory);
+        return new CompileCache(directory);
+    }
+
+    /**
+     * Searches a valid entry for a compilation unit
+     *
+     * @param sourceHash Hash of the source
+     * @param unitHashes Hash of every compilation unit of the submission by its file name
+     * @return the entry or null if the unit has to be compiled
+     */
+    public Entry lookup(String sourceHash, Map<String, String> unitHashes) throws IOException {
+        Path dir = directory.resolve(sourceHash);
+        if (!Files.isDirectory(dir)) {
+            return null;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + ENTRY_SUFFIX)) {
+            for (Path file : stream) {
+                Entry entry = read(sourceHash, file);
+                if (entry != null && entry.isValid(unitHashes)) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores the result of a compilation unit
+     *
+     * @param sourceHash   Hash of the source
+     * @param dependencies Hash of every other compilation unit the unit depends on by its file name
+     * @param classes      Bytecode of all classes of the unit
+     * @param report       Warnings of the compiler for this unit (in the VPL format)
+     */
+    public void store(String sourceHash, Map<String, String> dependencies, Map<String, byte[]> classes,
+                      String report) throws IOException {
+        Map<String, String> sorted = new TreeMap<>(dependencies);
+        Properties p = new Properties();
+        for (Map.Entry<String, String> dep : sorted.entrySet()) {
+            p.setProperty(DEPENDENCY + dep.getKey(), dep.getValue());
+        }
+        for (Map.Entry<String, byte[]> c : classes.entrySet()) {
+            p.setProperty(CLASS + c.getKey(), Base64.getEncoder().encodeToString(c.getValue()));
+        }
+        p.setProperty(REPORT, report);
+        p.setProperty(COMPILER, compilerVersion());
+        p.setProperty(MAC, macOf(sourceHash, p));
+
+        Path dir = Files.createDirectories(directory.resolve(sourceHash));
+        Path file = dir.resolve(VplHashes.sha256((compilerVersion() + sorted).getBytes(StandardCharsets.UTF_8)) + ENTRY_SUFFIX);
+        Path tmp = Files.createTempFile(dir, "entry", ".tmp");
+        try {
+            try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                p.store(w, "vpl-junit compile cache");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Reads an entry
+     *
+     * @return the entry or null if it was not stored by a grader with the same key
+     */
+    private static Entry read(String sourceHash, Path file) throws IOException {
+        Properties p = new Properties();
+        try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            p.load(r);
+        }
+        if (!VplHashes.sameHmac(macOf(sourceHash, p), p.getProperty(MAC))) {
+            return null;
+        }
+        Entry entry = new Entry(p.getProperty(COMPILER, ""), p.getProperty(REPORT, ""));
+        for (String key : p.stringPropertyNames()) {
+            if (key.startsWith(DEPENDENCY)) {
+                entry.dependencies.put(key.substring(DEPENDENCY.length()), p.getProperty(key));
+            } else if (key.startsWith(CLASS)) {
+                entry.classes.put(key.substring(CLASS.length()), Base64.getDecoder().decode(p.getProperty(key)));
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * HMAC over the hash of the source and all properties of an entry (sorted by their keys)
+     */
+    private static String macOf(String sourceHash, Properties p) {
+        List<String> parts = new ArrayList<>();
+        parts.add(sourceHash);
+        for (String key : new TreeSet<>(p.stringPropertyNames())) {
+            if (key.equals(MAC)) {
+                continue;
+            }
+            parts.add(key);
+            parts.add(p.getProperty(key));
+        }
+        return VplHashes.hmac(parts.toArray(new String[0]));
+    }
+
+    /**
+     * Bytecode of other compiler versions is not reused (e.g. after an update of the JDK)
+     */
+    private static String compilerVersion() {
+        return System.getProperty("java.vendor") + " " + System.getProperty("java.version");
+    }
+
+    /**
+     * The cached result of a compilation unit
+     */
+    public static class Entry {
+        private final Map<String, String> dependencies = new TreeMap<>();
+        private final Map<String, byte[]> classes = new TreeMap<>();
+        private final String compiler;
+        private final String report;
+
+        Entry(String compiler, String report) {
+            this.compiler = compiler;
+            this.report = report;
+        }
+
+        private boolean isValid(Map<String, String> unitHashes) {
+            if (!compiler.equals(compilerVersion())) {
+                return false;
+            }
+            for (Map.Entry<String, String> dep : dependencies.entrySet()) {
+                if (!dep.getValue().equals(unitHashes.get(dep.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the file names of the compilation units this unit depends on
+         */
+        public Set<String> getDependencies() {
+            return Collections.unmodifiableSet(dependencies.keySet());
+        }
+
+        /**
+         * Returns the bytecode of all classes of the unit
+         */
+        public Map<String, byte[]> getClasses() {
+            return classes;
+        }
+
+        /**
+         * Returns the warnings of the compiler when the unit was compiled
+         */
+        public String getReport() {
+            return report;
+        }
+    }
+}
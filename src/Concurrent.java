@@ -0,0 +1,18 @@
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The test methods of a JUnit 4 test class with this annotation run at the same time, each in its own
+ * thread (a virtual thread on Java 21+, see {@link VplThreads}). This pays off for tests which mostly
+ * wait, e.g. console dialogs with the {@link VplConsoleSimulator}; every started program still needs
+ * two platform threads which read its output. The tests must not share mutable state; with the
+ * {@link VplInstructionBudget} they share one budget. See {@link BudgetRunner}.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Concurrent {
+}
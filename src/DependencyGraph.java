@@ -0,0 +1,102 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Static dependencies between the classes of a submission, read from their bytecode: a class depends
+ * on every class of the submission in its constant pool and on every class whose name is one of its
+ * string constants (e.g. the class started by the {@link VplConsoleSimulator} or loaded with
+ * <code>Class.forName</code>). Classes which are only reached through computed names are not found.
+ */
+public class DependencyGraph {
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final Map<String, Set<String>> edges = new HashMap<>();
+
+    private DependencyGraph() {
+
+    }
+
+    /**
+     * Builds the graph of the given classes
+     *
+     * @param classes Bytecode by class name
+     */
+    public static DependencyGraph of(Map<String, byte[]> classes) throws IOException {
+        Map<String, ClassFileInfo> infos = new HashMap<>();
+        for (Map.Entry<String, byte[]> c : classes.entrySet()) {
+            infos.put(c.getKey(), ClassFileInfo.parse(c.getValue()));
+        }
+        DependencyGraph graph = new DependencyGraph();
+        for (Map.Entry<String, ClassFileInfo> c : infos.entrySet()) {
+            Set<String> targets = new HashSet<>();
+            for (String referenced : c.getValue().getReferencedClasses()) {
+                if (infos.containsKey(referenced)) {
+                    targets.add(referenced);
+                }
+            }
+            for (String constant : c.getValue().getStringConstants()) {
+                String name = constant.replace('/', '.');
+                if (infos.containsKey(name)) {
+                    targets.add(name);
+                }
+            }
+            targets.remove(c.getKey());
+            graph.edges.put(c.getKey(), targets);
+        }
+        return graph;
+    }
+
+    /**
+     * Builds the graph of the classes compiled in memory, or (if there are none) of the class files
+     * within the directory of the submission
+     */
+    public static DependencyGraph scan(Path workDir, Map<String, byte[]> memoryClasses) throws IOException {
+        if (!memoryClasses.isEmpty()) {
+            return of(memoryClasses);
+        }
+        Map<String, byte[]> classes = new HashMap<>();
+        try (Stream<Path> files = Files.walk(workDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String relative = workDir.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                if (relative.endsWith(CLASS_SUFFIX)) {
+                    String name = relative.substring(0, relative.length() - CLASS_SUFFIX.length()).replace('/', '.');
+                    classes.put(name, Files.readAllBytes(file));
+                }
+            }
+        }
+        return of(classes);
+    }
+
+    /**
+     * Returns the class and all classes of the submission it depends on, directly or indirectly (sorted)
+     */
+    public Set<String> dependenciesOf(String classname) {
+        Set<String> reached = new TreeSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        pending.add(classname);
+        while (!pending.isEmpty()) {
+            String c = pending.poll();
+            if (reached.add(c)) {
+                pending.addAll(edges.getOrDefault(c, Collections.emptySet()));
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Returns true if the class is part of the graph
+     */
+    public boolean contains(String classname) {
+        return edges.containsKey(classname);
+    }
+}
@@ -0,0 +1,429 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the test classes within a small pool of reusable child JVMs ({@link VplTestWorker}), so that
+ * student code which calls System.exit, exhausts the heap or crashes the JVM cannot take the grader
+ * down. Enabled with <code>-Dvpl.fork=&lt;number of workers&gt;</code>; additional options for the
+ * workers can be given with <code>-Dvpl.fork.options="-Xmx128m"</code>.
+ * <p>
+ * If a worker dies, the test which was running is marked as failed, a new worker is started and the
+ * remaining tests of the class are run there. If the tests of a class take longer than
+ * <code>-Dvpl.fork.timeout</code> seconds (default 60), the worker is killed, the test which was running
+ * and the remaining tests of the class are marked as failed.
+ * <p>
+ * The worker only reports the names and the outcomes of the tests (see {@link VplTestWorker}); their
+ * points are determined from the test classes of the grader.
+ */
+public class ForkedTestRunner {
+    private static final int CONNECT_TIMEOUT = 30000;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final PrintStream out;
+    private final VplJUnitTester tester;
+    private final ClassLoader loader;
+    private final List<Path> jars;
+
+    /**
+     * @param out    Stream which receives the output of the tests
+     * @param tester Receives the points and the results of the tests
+     * @param loader Classloader of the test classes (they are not initialized)
+     * @param jars   Jars of the submission (e.g. with the test classes)
+     */
+    public ForkedTestRunner(PrintStream out, VplJUnitTester tester, ClassLoader loader, List<Path> jars) {
+        this.out = out;
+        this.tester = tester;
+        this.loader = loader;
+        this.jars = jars;
+    }
+
+    /**
+     * Returns true if the tests should run in worker JVMs
+     */
+    public static boolean isEnabled() {
+        return workers() > 0;
+    }
+
+    private static int workers() {
+        return Integer.getInteger("vpl.fork", 0);
+    }
+
+    private static long timeout() {
+        return Long.getLong("vpl.fork.timeout", 60L);
+    }
+
+    /**
+     * Runs all test classes and waits till they are finished
+     */
+    public void run(List<String> classnames) throws IOException, InterruptedException {
+        List<Job> all = new ArrayList<>();
+        for (String classname : classnames) {
+            all.add(new Job(classname));
+        }
+        BlockingQueue<Job> jobs = new LinkedBlockingQueue<>(all);
+
+        int workers = Math.min(workers(), classnames.size());
+        ExecutorService executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "vpl-fork");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<Void>> threads = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                threads.add(executor.submit(() -> {
+                    work(jobs);
+                    return null;
+                }));
+            }
+            for (Future<Void> thread : threads) {
+                try {
+                    thread.get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Worker failed", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Report in the order of the classes, no matter which worker was first
+        for (Job job : all) {
+            out.println("\t" + job.classname);
+            for (String line : job.output) {
+                out.println(line);
+            }
+            for (Outcome outcome : job.results) {
+                tester.recordResult(outcome.test, outcome.failure, outcome.nanos);
+            }
+        }
+    }
+
+    /**
+     * Takes jobs from the queue and runs them on the worker of this thread
+     */
+    private void work(BlockingQueue<Job> jobs) throws IOException, InterruptedException {
+        Worker worker = null;
+        try {
+            Job job;
+            while ((job = jobs.poll()) != null) {
+                if (worker == null) {
+                    worker = new Worker();
+                }
+                if (!worker.run(job)) {
+                    worker.close();
+                    worker = null;
+                    if (job.progressed && !job.done.containsAll(job.tests)) {
+                        jobs.add(job);
+                    }
+                }
+            }
+        } finally {
+            if (worker != null) {
+                worker.close();
+            }
+        }
+    }
+
+    /**
+     * A test class, its output and the tests which already have a result. The results are reported when
+     * all classes are done, so their durations are measured when the events arrive.
+     */
+    private static class Job {
+        private final String classname;
+        private final Set<String> tests = new LinkedHashSet<>();
+        private final Set<String> done = new LinkedHashSet<>();
+        private final List<String> output = new ArrayList<>();
+        private final Map<String, Long> starts = new HashMap<>();
+        private final List<Outcome> results = new ArrayList<>();
+        private boolean progressed;
+        private boolean started;
+        private long deadline;
+
+        Job(String classname) {
+            this.classname = classname;
+        }
+
+        /**
+         * Returns the time till which the tests of the class may run (counted from their first start)
+         */
+        long deadline() {
+            if (!started) {
+                started = true;
+                deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout());
+            }
+            return deadline;
+        }
+
+        void start(String test) {
+            starts.put(test, System.nanoTime());
+        }
+
+        void record(String test, Throwable failure) {
+            Long start = starts.get(test);
+            results.add(new Outcome(test, failure, start == null ? -1 : System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Result of a single test and its duration (-1 if it is not known)
+     */
+    private static class Outcome {
+        private final String test;
+        private final Throwable failure;
+        private final long nanos;
+
+        Outcome(String test, Throwable failure, long nanos) {
+            this.test = test;
+            this.failure = failure;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * A child JVM which runs one test class after another. The messages are exchanged over a connection on
+     * the loopback interface, which the worker opens before it loads any class of the submission. Everything
+     * the worker writes to stdout and stderr directly is discarded.
+     */
+    private class Worker {
+        private final Process process;
+        private final Socket socket;
+        private final BufferedWriter control;
+        private final BufferedReader events;
+
+        Worker() throws IOException {
+            List<String> jvmOptions = new ArrayList<>();
+            jvmOptions.add("-XX:+ExitOnOutOfMemoryError");
+            jvmOptions.addAll(Arrays.asList(VplExitTrap.jvmOptions()));
+            String options = System.getProperty("vpl.fork.options", "").trim();
+            if (!options.isEmpty()) {
+                jvmOptions.addAll(Arrays.asList(options.split("\\s+")));
+            }
+
+            String[] args = new String[jars.size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = jars.get(i).toAbsolutePath().toString();
+            }
+
+            byte[] bytes = new byte[16];
+            RANDOM.nextBytes(bytes);
+            String nonce = VplHashes.hex(bytes);
+            Charset cs = Charset.defaultCharset();
+            Process started = null;
+            try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                ProcessBuilder pb = new ProcessBuilder(VplConsoleSimulator.buildCommandLine(jvmOptions, "VplTestWorker", args));
+                pb.directory(VplGradingContext.getProcessDirectory());
+                pb.redirectErrorStream(true);
+                started = pb.start();
+                VplGradingContext.childProcessStarted("VplTestWorker", started);
+                discard(started.getInputStream());
+                try (OutputStream stdin = started.getOutputStream()) {
+                    stdin.write((server.getLocalPort() + " " + nonce + "\n").getBytes(cs));
+                }
+                this.socket = accept(server, started, nonce, cs);
+            } catch (IOException e) {
+                if (started != null) {
+                    started.destroyForcibly();
+                }
+                throw e;
+            }
+            this.process = started;
+            this.control = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), cs));
+            this.events = new BufferedReader(new InputStreamReader(socket.getInputStream(), cs));
+        }
+
+        /**
+         * Waits for the connection of the worker, which has to send the nonce first (and nothing else
+         * till it receives the first class)
+         */
+        private Socket accept(ServerSocket server, Process worker, String nonce, Charset cs) throws IOException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CONNECT_TIMEOUT);
+            while (true) {
+                long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (left <= 0 || !worker.isAlive()) {
+                    throw new IOException("The worker did not connect");
+                }
+                server.setSoTimeout((int) left);
+                Socket candidate;
+                try {
+                    candidate = server.accept();
+                } catch (SocketTimeoutException e) {
+                    continue;
+                }
+                candidate.setSoTimeout((int) left);
+                try {
+                    if (nonce.equals(new BufferedReader(new InputStreamReader(candidate.getInputStream(), cs)).readLine())) {
+                        candidate.setSoTimeout(0);
+                        return candidate;
+                    }
+                } catch (IOException e) {
+                    // not the worker
+                }
+                candidate.close();
+            }
+        }
+
+        /**
+         * Runs the remaining tests of the class
+         *
+         * @return false if the worker died or was killed
+         */
+        boolean run(Job job) throws InterruptedException {
+            String running = null;
+            boolean timedOut = false;
+            job.progressed = false;
+            Class<?> testClass;
+            try {
+                testClass = Class.forName(job.classname, false, loader);
+            } catch (ClassNotFoundException | LinkageError e) {
+                // the worker reports that it cannot run the class, the points are taken from the names
+                testClass = null;
+            }
+            try {
+                control.write(VplTestWorker.RUN + job.classname + " " + job.done.size());
+                control.newLine();
+                for (String test : job.done) {
+                    control.write(test);
+                    control.newLine();
+                }
+                control.flush();
+
+                String line;
+                while ((line = next(job.deadline())) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    } else if (line.equals(VplTestWorker.DONE)) {
+                        return true;
+                    } else if (line.charAt(0) == VplFuzzWorker.OUT) {
+                        job.output.add(line.substring(1));
+                    } else if (line.charAt(0) == VplFuzzWorker.ERR) {
+                        System.err.println(line.substring(1));
+                    } else if (line.startsWith(VplTestWorker.TEST)) {
+                        String test = line.substring(VplTestWorker.TEST.length());
+                        job.tests.add(test);
+                        if (testClass != null) {
+                            tester.getPointsTable().register(test, testClass);
+                        }
+                    } else if (line.startsWith(VplTestWorker.START)) {
+                        running = line.substring(VplTestWorker.START.length());
+                        job.start(running);
+                    } else if (line.startsWith(VplTestWorker.FAIL)) {
+                        String[] parts = line.substring(VplTestWorker.FAIL.length()).split("\t", 2);
+                        job.record(parts[0], new RecordedFailure(VplTestWorker.unescape(parts[1])));
+                    } else if (line.startsWith(VplTestWorker.MEASURED)) {
+                        String[] parts = line.substring(VplTestWorker.MEASURED.length()).split("\t", 2);
+                        tester.recordMeasurement(parts[0], parts[1]);
+                    } else if (line.startsWith(VplTestWorker.FINISH)) {
+                        String test = line.substring(VplTestWorker.FINISH.length());
+                        job.record(test, null);
+                        job.done.add(test);
+                        running = null;
+                    }
+                }
+            } catch (SocketTimeoutException e) {
+                timedOut = true;
+            } catch (IOException e) {
+                // the worker is gone
+            }
+
+            if (timedOut) {
+                process.destroyForcibly();
+                process.waitFor();
+                String limit = "exceeded the time limit of " + timeout() + " seconds";
+                if (running != null) {
+                    job.record(running, new RecordedFailure("java.lang.Error: The test " + limit));
+                    job.done.add(running);
+                }
+                for (String test : job.tests) {
+                    if (job.done.add(test)) {
+                        job.record(test, new RecordedFailure("java.lang.Error: Not executed, since the tests of " + job.classname + " " + limit));
+                    }
+                }
+                if (running == null && job.tests.isEmpty()) {
+                    job.output.add("Comment :=>> The tests of " + job.classname + " " + limit);
+                }
+                return false;
+            }
+
+            // The worker died (e.g. out of memory), most likely because of the test which was running
+            int status = process.waitFor();
+            if (running != null) {
+                job.record(running, new RecordedFailure("java.lang.Error: The test terminated the JVM (exit status " + status + ")"));
+                job.done.add(running);
+                job.progressed = true;
+            } else {
+                job.output.add("Comment :=>> The tests of " + job.classname + " terminated the JVM (exit status " + status + ")");
+            }
+            return false;
+        }
+
+        /**
+         * Reads the next message of the worker
+         *
+         * @param deadline Time (of {@link System#nanoTime()}) till which the message has to arrive
+         * @throws SocketTimeoutException if no message arrived in time
+         */
+        private String next(long deadline) throws IOException {
+            long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (left <= 0) {
+                throw new SocketTimeoutException();
+            }
+            socket.setSoTimeout((int) Math.min(left, Integer.MAX_VALUE));
+            return events.readLine();
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already closed
+            }
+            process.destroy();
+        }
+    }
+
+    /**
+     * Reads the output of a worker in the background and drops it
+     */
+    private static void discard(InputStream in) {
+        Thread t = new Thread(() -> {
+            byte[] buffer = new byte[8192];
+            try {
+                while (in.read(buffer) >= 0) {
+                    // dropped
+                }
+            } catch (IOException e) {
+                // the worker is gone
+            }
+        }, "vpl-fork-output");
+        t.setDaemon(true);
+        t.start();
+    }
+}
@@ -0,0 +1,117 @@
+import org.junit.runner.notification.RunListener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Java Flight Recorder events of the grading lifecycle (tests, child processes, waits of the
+ * {@link VplConsoleSimulator} and checkstyle audits) within the category <code>VPL</code>, so they can
+ * be correlated with GC, JIT and I/O events of the same recording.
+ * <p>
+ * The events are emitted by {@link JfrEvents}, which is only loaded if the JVM contains
+ * <code>jdk.jfr</code> and Flight Recorder is already running when the grader starts (e.g. with
+ * <code>-XX:StartFlightRecording</code>) or <code>-Dvpl.jfr=grading.jfr</code> is given, which records
+ * every evaluation into the given file (relative to the directory of the submission). Otherwise all
+ * methods do nothing, so an evaluation does not pay for the initialization of Flight Recorder.
+ */
+public final class GradingEvents {
+    private static final Span NO_SPAN = (detail, success) -> {
+    };
+    private static final Backend BACKEND = loadBackend();
+
+    /**
+     * Private to prevent instantiation
+     */
+    private GradingEvents() {
+
+    }
+
+    private static Backend loadBackend() {
+        try {
+            String file = System.getProperty("vpl.jfr");
+            if ((file == null || file.isEmpty())
+                    && !(Boolean) Class.forName("jdk.jfr.FlightRecorder").getMethod("isInitialized").invoke(null)) {
+                return null;
+            }
+            return (Backend) Class.forName("JfrEvents").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns a listener which emits an event for every JUnit 4 test (null without JFR)
+     */
+    public static RunListener testListener() {
+        return BACKEND == null ? null : BACKEND.testListener();
+    }
+
+    /**
+     * Emits an event which lasts from the start of the child process till its exit
+     */
+    public static void processStarted(String classname, Process process) {
+        if (BACKEND != null) {
+            BACKEND.processStarted(classname, process);
+        }
+    }
+
+    /**
+     * Starts an event for the wait of the {@link VplConsoleSimulator} for the next line of the program
+     */
+    public static Span expectation(String classname) {
+        return BACKEND == null ? NO_SPAN : BACKEND.expectation(classname);
+    }
+
+    /**
+     * Starts an event for the checkstyle audit of a single file
+     */
+    public static Span checkstyleAudit(String configuration, String file) {
+        return BACKEND == null ? NO_SPAN : BACKEND.checkstyleAudit(configuration, file);
+    }
+
+    /**
+     * Starts a recording of the evaluation of the given directory if <code>-Dvpl.jfr</code> is set
+     *
+     * @return the recording, which writes the file when it is closed, or null
+     */
+    public static Closeable startRecording(Path workDir) throws IOException {
+        String file = System.getProperty("vpl.jfr");
+        if (file == null || file.isEmpty()) {
+            return null;
+        }
+        if (BACKEND == null) {
+            System.err.println("Cannot record " + file + ": the JVM does not support Java Flight Recorder");
+            return null;
+        }
+        return BACKEND.startRecording(workDir.resolve(Paths.get(file)));
+    }
+
+    /**
+     * An event which is committed at its end
+     */
+    @FunctionalInterface
+    public interface Span {
+        /**
+         * @param detail  e.g. the line which was read
+         * @param success e.g. whether the line matched the expectation
+         */
+        void end(String detail, boolean success);
+    }
+
+    /**
+     * Implemented by {@link JfrEvents}
+     */
+    interface Backend {
+        RunListener testListener();
+
+        void processStarted(String classname, Process process);
+
+        Span expectation(String classname);
+
+        Span checkstyleAudit(String configuration, String file);
+
+        Closeable startRecording(Path file) throws IOException;
+    }
+}
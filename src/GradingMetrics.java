@@ -0,0 +1,241 @@
+import org.junit.runner.Description;
+import org.junit.runner.notification.RunListener;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures where the time of an evaluation goes: wall time, CPU time and allocated bytes of every phase
+ * (discovery, compilation, JUnit, each style check, summary) and of every test, and the wall time of
+ * every child process. Enabled with <code>-Dvpl.metrics=&lt;file&gt;</code>, which receives the values in
+ * the OpenMetrics text format; <code>-Dvpl.metrics.summary=true</code> prints the phases at the end of
+ * the output as well.
+ * <p>
+ * CPU time and allocated bytes are those of the thread which ran the phase or test (allocations are only
+ * known on JVMs which support <code>com.sun.management.ThreadMXBean</code>).
+ */
+public class GradingMetrics extends RunListener implements VplGradingContext.ChildProcessListener {
+    private final List<Measurement> phases = new ArrayList<>();
+    private final List<Measurement> tests = new ArrayList<>();
+    private final List<Measurement> children = new ArrayList<>();
+    private final Map<Description, Sample> runningTests = new ConcurrentHashMap<>();
+
+    /**
+     * Returns true if the metrics should be written
+     */
+    public static boolean isEnabled() {
+        return System.getProperty("vpl.metrics") != null;
+    }
+
+    /**
+     * Starts to measure a phase of the evaluation
+     *
+     * @param name  Name of the phase (e.g. junit)
+     * @param label Additional label (e.g. the style check) or null
+     * @return the phase, which has to be closed at its end
+     */
+    public Phase phase(String name, String label) {
+        return new Phase(name, label);
+    }
+
+    @Override
+    public void testStarted(Description description) {
+        runningTests.put(description, new Sample());
+    }
+
+    @Override
+    public void testFinished(Description description) {
+        Sample start = runningTests.remove(description);
+        if (start != null) {
+            add(tests, new Measurement(description.getClassName() + "." + description.getMethodName(), null, start, new Sample()));
+        }
+    }
+
+    @Override
+    public void started(String classname, Process process) {
+        long start = System.nanoTime();
+        VplThreads.start("vpl-metrics-" + classname, () -> {
+            try {
+                int status = process.waitFor();
+                add(children, new Measurement(classname, Integer.toString(status), System.nanoTime() - start));
+            } catch (InterruptedException e) {
+                // the evaluation is over
+            }
+        });
+    }
+
+    private void add(List<Measurement> list, Measurement measurement) {
+        synchronized (list) {
+            list.add(measurement);
+        }
+    }
+
+    /**
+     * Writes all measurements to the file of <code>-Dvpl.metrics</code> (relative to the given directory)
+     */
+    public void write(Path workDir) throws IOException {
+        Path file = workDir.resolve(Paths.get(System.getProperty("vpl.metrics")));
+        try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            synchronized (phases) {
+                family(w, "vpl_phase_wall_seconds", "seconds", "Wall time of the phases of the evaluation");
+                for (Measurement m : phases) {
+                    sample(w, "vpl_phase_wall_seconds", m.labels("phase", "label"), m.wallNanos / 1e9);
+                }
+                family(w, "vpl_phase_cpu_seconds", "seconds", "CPU time of the phases of the evaluation");
+                for (Measurement m : phases) {
+                    sample(w, "vpl_phase_cpu_seconds", m.labels("phase", "label"), m.cpuNanos / 1e9);
+                }
+                family(w, "vpl_phase_allocated_bytes", "bytes", "Bytes allocated within the phases of the evaluation");
+                for (Measurement m : phases) {
+                    sample(w, "vpl_phase_allocated_bytes", m.labels("phase", "label"), m.allocatedBytes);
+                }
+            }
+            synchronized (tests) {
+                family(w, "vpl_test_wall_seconds", "seconds", "Wall time of the tests");
+                for (Measurement m : tests) {
+                    sample(w, "vpl_test_wall_seconds", m.labels("test", null), m.wallNanos / 1e9);
+                }
+                family(w, "vpl_test_cpu_seconds", "seconds", "CPU time of the tests");
+                for (Measurement m : tests) {
+                    sample(w, "vpl_test_cpu_seconds", m.labels("test", null), m.cpuNanos / 1e9);
+                }
+                family(w, "vpl_test_allocated_bytes", "bytes", "Bytes allocated by the tests");
+                for (Measurement m : tests) {
+                    sample(w, "vpl_test_allocated_bytes", m.labels("test", null), m.allocatedBytes);
+                }
+            }
+            synchronized (children) {
+                family(w, "vpl_child_process_wall_seconds", "seconds", "Wall time of the child processes");
+                for (int i = 0; i < children.size(); i++) {
+                    Measurement m = children.get(i);
+                    String labels = "{class=\"" + escape(m.name) + "\",index=\"" + i + "\",exit_status=\"" + m.label + "\"}";
+                    sample(w, "vpl_child_process_wall_seconds", labels, m.wallNanos / 1e9);
+                }
+            }
+            w.write("# EOF\n");
+        }
+    }
+
+    /**
+     * Prints the phases (not visible for the students)
+     */
+    public void printSummary(PrintStream out) {
+        if (!Boolean.getBoolean("vpl.metrics.summary")) {
+            return;
+        }
+        out.println("Metrics");
+        synchronized (phases) {
+            for (Measurement m : phases) {
+                out.println(String.format(Locale.ROOT, "\t%-30s %8.3f s wall %8.3f s cpu %12d bytes",
+                        m.label == null ? m.name : m.name + " " + m.label, m.wallNanos / 1e9, m.cpuNanos / 1e9, m.allocatedBytes));
+            }
+        }
+        synchronized (children) {
+            out.println("\t" + children.size() + " child processes");
+        }
+    }
+
+    private static void family(Writer w, String name, String unit, String help) throws IOException {
+        w.write("# TYPE " + name + " gauge\n");
+        w.write("# UNIT " + name + " " + unit + "\n");
+        w.write("# HELP " + name + " " + help + "\n");
+    }
+
+    private static void sample(Writer w, String name, String labels, double value) throws IOException {
+        w.write(name + labels + " " + value + "\n");
+    }
+
+    private static void sample(Writer w, String name, String labels, long value) throws IOException {
+        w.write(name + labels + " " + value + "\n");
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * A phase of the evaluation which is measured till it is closed
+     */
+    public class Phase implements AutoCloseable {
+        private final String name;
+        private final String label;
+        private final Sample start = new Sample();
+
+        private Phase(String name, String label) {
+            this.name = name;
+            this.label = label;
+        }
+
+        @Override
+        public void close() {
+            add(phases, new Measurement(name, label, start, new Sample()));
+        }
+    }
+
+    /**
+     * Clock, CPU time and allocated bytes of the current thread at a point in time (the management
+     * beans are only loaded if the metrics are enabled)
+     */
+    private static class Sample {
+        private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+        private final long wallNanos = System.nanoTime();
+        private final long cpuNanos = THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+        private final long allocatedBytes = allocatedBytes();
+
+        @SuppressWarnings("restriction")
+        private static long allocatedBytes() {
+            if (THREADS instanceof com.sun.management.ThreadMXBean) {
+                return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Difference of two samples
+     */
+    private static class Measurement {
+        private final String name;
+        private final String label;
+        private final long wallNanos;
+        private final long cpuNanos;
+        private final long allocatedBytes;
+
+        Measurement(String name, String label, Sample start, Sample end) {
+            this.name = name;
+            this.label = label;
+            this.wallNanos = end.wallNanos - start.wallNanos;
+            this.cpuNanos = end.cpuNanos - start.cpuNanos;
+            this.allocatedBytes = Math.max(0, end.allocatedBytes - start.allocatedBytes);
+        }
+
+        Measurement(String name, String label, long wallNanos) {
+            this.name = name;
+            this.label = label;
+            this.wallNanos = wallNanos;
+            this.cpuNanos = 0;
+            this.allocatedBytes = 0;
+        }
+
+        String labels(String nameLabel, String labelLabel) {
+            String labels = "{" + nameLabel + "=\"" + escape(name) + "\"";
+            if (label != null && labelLabel != null) {
+                labels += "," + labelLabel + "=\"" + escape(label) + "\"";
+            }
+            return labels + "}";
+        }
+    }
+}
@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Queue of submissions which are graded by {@link VplGradingWorker} processes (possibly on several
+ * hosts) and supervised by the {@link VplGradingCoordinator}.
+ * <p>
+ * The default implementation is the {@link SpoolDirectoryQueue}. Another implementation can be used by
+ * setting the system property <code>vpl.queue.class</code> to a class with a public constructor which
+ * takes the location of the queue as String.
+ */
+public interface GradingQueue {
+
+    /**
+     * Adds a submission to the queue
+     *
+     * @return the id of the new job
+     */
+    String enqueue(Path submission, String[] args) throws IOException;
+
+    /**
+     * Takes the next pending job for the given worker
+     *
+     * @return the job or null if no job is pending
+     */
+    GradingJob claim(String workerId) throws IOException;
+
+    /**
+     * Tells the queue that the worker of the job is still alive
+     */
+    void heartbeat(GradingJob job) throws IOException;
+
+    /**
+     * Stores the result of a job and removes it from the running jobs
+     */
+    void complete(GradingJob job, GradingResult result, String output) throws IOException;
+
+    /**
+     * Returns jobs whose worker did not send a heartbeat within the lease back to the pending jobs.
+     * Jobs which have already been tried maxAttempts times are marked as failed.
+     *
+     * @return the number of jobs which were returned or marked as failed
+     */
+    int requeueExpired(long leaseMillis, int maxAttempts) throws IOException;
+
+    /**
+     * Returns the number of jobs which are pending or running
+     */
+    int countOpen() throws IOException;
+
+    /**
+     * Returns the CSV lines (see {@link VplBatchGrader#toCsv(GradingResult)}) of all completed jobs
+     */
+    List<String> completedCsv() throws IOException;
+
+    /**
+     * Returns the JSON objects (see {@link VplBatchGrader#toJson(GradingResult)}) of all completed jobs
+     */
+    List<String> completedJson() throws IOException;
+
+    /**
+     * Returns the ids of the jobs which failed too often
+     */
+    List<String> failed() throws IOException;
+
+    /**
+     * Opens the configured queue implementation
+     */
+    static GradingQueue open(String location) throws IOException {
+        String impl = System.getProperty("vpl.queue.class");
+        if (impl == null) {
+            return new SpoolDirectoryQueue(Paths.get(location));
+        }
+        try {
+            Constructor<?> c = Class.forName(impl).getConstructor(String.class);
+            return (GradingQueue) c.newInstance(location);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Cannot create the queue " + impl, e);
+        }
+    }
+
+    /**
+     * A submission which is graded by a worker
+     */
+    class GradingJob {
+        private final String id;
+        private final Path submission;
+        private final String[] args;
+        private final int attempt;
+
+        public GradingJob(String id, Path submission, String[] args, int attempt) {
+            this.id = id;
+            this.submission = submission;
+            this.args = args;
+            this.attempt = attempt;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Path getSubmission() {
+            return submission;
+        }
+
+        public String[] getArgs() {
+            return args;
+        }
+
+        /**
+         * Returns how often the job has been claimed (starting with 1)
+         */
+        public int getAttempt() {
+            return attempt;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Receives the results of an evaluation in addition to the VPL output (e.g. to import them into
+ * another system). The reporters are configured with the system property <code>vpl.report</code>, a
+ * comma separated list of <code>format:file</code> entries:
+ * <pre>
+ *   -Dvpl.report=jsonl:/var/log/vpl/results.jsonl,junit:TEST-vpl.xml
+ * </pre>
+ * Relative files are resolved against the directory of the submission.
+ */
+public interface GradingReporter extends Closeable {
+
+    /**
+     * Called for every test as soon as it has finished (while the other tests are still running; never
+     * by two threads at the same time)
+     */
+    void testFinished(GradingResult.TestResult test) throws IOException;
+
+    /**
+     * Called for every checkstyle configuration after its deduction is known
+     */
+    void styleChecked(GradingResult.StyleResult check) throws IOException;
+
+    /**
+     * Called once at the end of the evaluation (also if nothing could be graded)
+     */
+    void gradingFinished(GradingResult result) throws IOException;
+
+    /**
+     * Opens the configured reporters for the evaluation of the given directory
+     *
+     * @return the reporters (empty if none is configured)
+     */
+    static List<GradingReporter> open(Path workDir) throws IOException {
+        List<GradingReporter> reporters = new ArrayList<>();
+        String config = System.getProperty("vpl.report", "").trim();
+        if (config.isEmpty()) {
+            return reporters;
+        }
+        for (String entry : config.split(",")) {
+            int colon = entry.indexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Expected format:file instead of " + entry + " in vpl.report");
+            }
+            String format = entry.substring(0, colon).trim();
+            Path file = workDir.resolve(entry.substring(colon + 1).trim());
+            switch (format) {
+                case "jsonl":
+                    reporters.add(new JsonLinesReporter(workDir, file));
+                    break;
+                case "junit":
+                    reporters.add(new JUnitXmlReporter(file));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown report format " + format + " (expected jsonl or junit)");
+            }
+        }
+        return reporters;
+    }
+}
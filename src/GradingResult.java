@@ -0,0 +1,151 @@
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Machine readable outcome of the evaluation of a single submission.
+ */
+public class GradingResult {
+    private final Path submission;
+    private final List<TestResult> tests = new ArrayList<>();
+    private final List<StyleResult> styleChecks = new ArrayList<>();
+    private double grade = -1;
+    private boolean timedOut;
+    private String error;
+
+    public GradingResult(Path submission) {
+        this.submission = submission;
+    }
+
+    void addTest(TestResult test) {
+        tests.add(test);
+    }
+
+    void addStyleCheck(StyleResult check) {
+        styleChecks.add(check);
+    }
+
+    void setGrade(double grade) {
+        this.grade = grade;
+    }
+
+    void setTimedOut(boolean timedOut) {
+        this.timedOut = timedOut;
+    }
+
+    void setError(String error) {
+        this.error = error;
+    }
+
+    public Path getSubmission() {
+        return submission;
+    }
+
+    public List<TestResult> getTests() {
+        return Collections.unmodifiableList(tests);
+    }
+
+    public List<StyleResult> getStyleChecks() {
+        return Collections.unmodifiableList(styleChecks);
+    }
+
+    /**
+     * Returns the grade or -1 if nothing could be graded
+     */
+    public double getGrade() {
+        return grade;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Returns the reason why the evaluation failed or null
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Result of a single JUnit test
+     */
+    public static class TestResult {
+        private final String name;
+        private final double points;
+        private final boolean passed;
+        private final String message;
+        private final long millis;
+
+        public TestResult(String name, double points, boolean passed, String message) {
+            this(name, points, passed, message, -1);
+        }
+
+        public TestResult(String name, double points, boolean passed, String message, long millis) {
+            this.name = name;
+            this.points = points;
+            this.passed = passed;
+            this.message = message;
+            this.millis = millis;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the points which can be achieved with this test (0 if the test has no points,
+         * negative for a penalty)
+         */
+        public double getPoints() {
+            return points;
+        }
+
+        public boolean isPassed() {
+            return passed;
+        }
+
+        /**
+         * Returns the failure message or null if the test has passed
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * Returns the duration of the test in milliseconds or -1 if it is not known (e.g. the result
+         * was replayed from the cache)
+         */
+        public long getMillis() {
+            return millis;
+        }
+    }
+
+    /**
+     * Result of a single checkstyle configuration
+     */
+    public static class StyleResult {
+        private final String check;
+        private final int violations;
+        private final int deduction;
+
+        public StyleResult(String check, int violations, int deduction) {
+            this.check = check;
+            this.violations = violations;
+            this.deduction = deduction;
+        }
+
+        public String getCheck() {
+            return check;
+        }
+
+        public int getViolations() {
+            return violations;
+        }
+
+        public int getDeduction() {
+            return deduction;
+        }
+    }
+}
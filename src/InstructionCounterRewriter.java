@@ -0,0 +1,577 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Rewrites a class file so that every method calls a static counter method (e.g.
+ * <code>VplInstructionBudget.tick()</code>) when it is entered and before every backward branch, i.e.
+ * once per method call and once per loop iteration. Used by the {@link VplInstructionBudget} agent.
+ * <p>
+ * The call neither needs nor leaves anything on the operand stack, so the existing stack map frames stay
+ * valid; only the offsets of branches, switches, exception handlers, stack map frames and the debug
+ * tables are moved. Type annotations of instructions are dropped. Methods which cannot be rewritten
+ * (e.g. because a branch would get too long) are kept unchanged.
+ */
+public class InstructionCounterRewriter {
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int TABLESWITCH = 0xaa;
+    private static final int LOOKUPSWITCH = 0xab;
+    private static final int WIDE = 0xc4;
+    private static final int IINC = 0x84;
+    private static final int GOTO_W = 0xc8;
+    private static final int JSR_W = 0xc9;
+    private static final int CALL_LENGTH = 3;
+
+    /**
+     * Length of the instructions with a fixed length (0 for switches and wide)
+     */
+    private static final int[] LENGTHS = new int[256];
+
+    static {
+        Arrays.fill(LENGTHS, 1);
+        for (int op : new int[]{0x10, 0x12, 0x15, 0x16, 0x17, 0x18, 0x19, 0x36, 0x37, 0x38, 0x39, 0x3a, 0xa9, 0xbc}) {
+            LENGTHS[op] = 2;
+        }
+        for (int op : new int[]{0x11, 0x13, 0x14, IINC, 0xbb, 0xbd, 0xc0, 0xc1, 0xc6, 0xc7}) {
+            LENGTHS[op] = 3;
+        }
+        for (int op = 0x99; op <= 0xa8; op++) {
+            LENGTHS[op] = 3;
+        }
+        for (int op = 0xb2; op <= INVOKESTATIC; op++) {
+            LENGTHS[op] = 3;
+        }
+        LENGTHS[0xc5] = 4;
+        for (int op : new int[]{0xb9, 0xba, GOTO_W, JSR_W}) {
+            LENGTHS[op] = 5;
+        }
+        LENGTHS[TABLESWITCH] = 0;
+        LENGTHS[LOOKUPSWITCH] = 0;
+        LENGTHS[WIDE] = 0;
+    }
+
+    private final String[] utf8;
+    private final int counterRef;
+
+    private InstructionCounterRewriter(String[] utf8, int counterRef) {
+        this.utf8 = utf8;
+        this.counterRef = counterRef;
+    }
+
+    /**
+     * Returns the rewritten class file
+     *
+     * @param bytecode Class file
+     * @param owner    Internal name of the class with the counter method
+     * @param method   Name of the static counter method without arguments and result
+     * @return the new class file or null if the class cannot be rewritten
+     */
+    public static byte[] rewrite(byte[] bytecode, String owner, String method) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytecode));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(bytecode.length + bytecode.length / 4);
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
+        }
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(in.readUnsignedShort());
+        out.writeShort(in.readUnsignedShort());
+
+        // Constant pool: copied, followed by the reference to the counter method
+        int count = in.readUnsignedShort();
+        if (count + 6 > 0xFFFF) {
+            return null;
+        }
+        ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        DataOutputStream poolOut = new DataOutputStream(pool);
+        String[] utf8 = new String[count];
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            poolOut.writeByte(tag);
+            switch (tag) {
+                case 1: // Utf8
+                    utf8[i] = in.readUTF();
+                    poolOut.writeUTF(utf8[i]);
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    copy(in, poolOut, 8);
+                    i++;
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    copy(in, poolOut, 4);
+                    break;
+                case 15: // MethodHandle
+                    copy(in, poolOut, 3);
+                    break;
+                case 7: // Class
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    copy(in, poolOut, 2);
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+        out.writeShort(count + 6);
+        out.write(pool.toByteArray());
+        out.writeByte(1);
+        out.writeUTF(owner);
+        out.writeByte(7);
+        out.writeShort(count);
+        out.writeByte(1);
+        out.writeUTF(method);
+        out.writeByte(1);
+        out.writeUTF("()V");
+        out.writeByte(12);
+        out.writeShort(count + 2);
+        out.writeShort(count + 3);
+        out.writeByte(10);
+        out.writeShort(count + 1);
+        out.writeShort(count + 4);
+        InstructionCounterRewriter rewriter = new InstructionCounterRewriter(utf8, count + 5);
+
+        // Access flags, this, super and interfaces
+        copy(in, out, 6);
+        int interfaces = in.readUnsignedShort();
+        out.writeShort(interfaces);
+        copy(in, out, 2 * interfaces);
+
+        int fields = in.readUnsignedShort();
+        out.writeShort(fields);
+        for (int i = 0; i < fields; i++) {
+            copy(in, out, 6);
+            copyAttributes(in, out);
+        }
+
+        int methods = in.readUnsignedShort();
+        out.writeShort(methods);
+        for (int i = 0; i < methods; i++) {
+            copy(in, out, 6);
+            int attributes = in.readUnsignedShort();
+            out.writeShort(attributes);
+            for (int a = 0; a < attributes; a++) {
+                int name = in.readUnsignedShort();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                if ("Code".equals(utf8[name])) {
+                    byte[] code = rewriter.rewriteCode(data);
+                    if (code != null) {
+                        data = code;
+                    }
+                }
+                out.writeShort(name);
+                out.writeInt(data.length);
+                out.write(data);
+            }
+        }
+
+        copyAttributes(in, out);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the new Code attribute or null if the method has to stay unchanged
+     */
+    private byte[] rewriteCode(byte[] attribute) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(attribute));
+        int maxStack = in.readUnsignedShort();
+        int maxLocals = in.readUnsignedShort();
+        byte[] code = new byte[in.readInt()];
+        in.readFully(code);
+        Layout layout = new Layout(code);
+        if (!layout.compute()) {
+            return null;
+        }
+        byte[] newCode = layout.emit(counterRef);
+        if (newCode == null) {
+            return null;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(attribute.length + newCode.length - code.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(newCode.length);
+        out.write(newCode);
+
+        int handlers = in.readUnsignedShort();
+        out.writeShort(handlers);
+        for (int i = 0; i < handlers; i++) {
+            out.writeShort(layout.target(in.readUnsignedShort()));
+            out.writeShort(layout.target(in.readUnsignedShort()));
+            out.writeShort(layout.target(in.readUnsignedShort()));
+            out.writeShort(in.readUnsignedShort());
+        }
+
+        int attributes = in.readUnsignedShort();
+        ByteArrayOutputStream kept = new ByteArrayOutputStream();
+        DataOutputStream keptOut = new DataOutputStream(kept);
+        int keptCount = 0;
+        for (int a = 0; a < attributes; a++) {
+            int name = in.readUnsignedShort();
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            String attributeName = utf8[name];
+            if ("StackMapTable".equals(attributeName)) {
+                data = rewriteStackMap(data, layout);
+            } else if ("LineNumberTable".equals(attributeName)) {
+                data = rewriteLineNumbers(data, layout);
+            } else if ("LocalVariableTable".equals(attributeName) || "LocalVariableTypeTable".equals(attributeName)) {
+                data = rewriteLocalVariables(data, layout);
+            } else {
+                // e.g. type annotations, which would refer to the old offsets
+                continue;
+            }
+            keptOut.writeShort(name);
+            keptOut.writeInt(data.length);
+            keptOut.write(data);
+            keptCount++;
+        }
+        out.writeShort(keptCount);
+        out.write(kept.toByteArray());
+        return bytes.toByteArray();
+    }
+
+    private static byte[] rewriteStackMap(byte[] data, Layout layout) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length + 16);
+        DataOutputStream out = new DataOutputStream(bytes);
+        int frames = in.readUnsignedShort();
+        out.writeShort(frames);
+        int offset = -1;
+        int newOffset = -1;
+        for (int i = 0; i < frames; i++) {
+            int type = in.readUnsignedByte();
+            int delta;
+            if (type < 128) {
+                delta = type & 63;
+            } else if (type >= 247) {
+                delta = in.readUnsignedShort();
+            } else {
+                throw new IOException("Unknown stack map frame " + type);
+            }
+            offset += delta + 1;
+            int target = layout.target(offset);
+            int newDelta = target - newOffset - 1;
+            newOffset = target;
+
+            if (type < 64) {
+                if (newDelta < 64) {
+                    out.writeByte(newDelta);
+                } else {
+                    out.writeByte(251);
+                    out.writeShort(newDelta);
+                }
+            } else if (type < 128) {
+                if (newDelta < 64) {
+                    out.writeByte(64 + newDelta);
+                } else {
+                    out.writeByte(247);
+                    out.writeShort(newDelta);
+                }
+                copyVerificationType(in, out, layout);
+            } else {
+                out.writeByte(type);
+                out.writeShort(newDelta);
+                if (type == 247) {
+                    copyVerificationType(in, out, layout);
+                } else if (type >= 252 && type <= 254) {
+                    for (int l = 0; l < type - 251; l++) {
+                        copyVerificationType(in, out, layout);
+                    }
+                } else if (type == 255) {
+                    for (int part = 0; part < 2; part++) {
+                        int n = in.readUnsignedShort();
+                        out.writeShort(n);
+                        for (int l = 0; l < n; l++) {
+                            copyVerificationType(in, out, layout);
+                        }
+                    }
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void copyVerificationType(DataInputStream in, DataOutputStream out, Layout layout) throws IOException {
+        int tag = in.readUnsignedByte();
+        out.writeByte(tag);
+        if (tag == 7) { // Object
+            out.writeShort(in.readUnsignedShort());
+        } else if (tag == 8) { // Uninitialized: offset of the new instruction
+            out.writeShort(layout.instruction(in.readUnsignedShort()));
+        }
+    }
+
+    private static byte[] rewriteLineNumbers(byte[] data, Layout layout) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        int n = in.readUnsignedShort();
+        out.writeShort(n);
+        for (int i = 0; i < n; i++) {
+            out.writeShort(layout.target(in.readUnsignedShort()));
+            out.writeShort(in.readUnsignedShort());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] rewriteLocalVariables(byte[] data, Layout layout) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        int n = in.readUnsignedShort();
+        out.writeShort(n);
+        for (int i = 0; i < n; i++) {
+            int start = in.readUnsignedShort();
+            int length = in.readUnsignedShort();
+            int newStart = layout.target(start);
+            out.writeShort(newStart);
+            out.writeShort(layout.target(start + length) - newStart);
+            copy(in, out, 6);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void copyAttributes(DataInputStream in, DataOutputStream out) throws IOException {
+        int attributes = in.readUnsignedShort();
+        out.writeShort(attributes);
+        for (int a = 0; a < attributes; a++) {
+            out.writeShort(in.readUnsignedShort());
+            int length = in.readInt();
+            out.writeInt(length);
+            copy(in, out, length);
+        }
+    }
+
+    private static void copy(DataInputStream in, DataOutputStream out, int length) throws IOException {
+        byte[] buffer = new byte[length];
+        in.readFully(buffer);
+        out.write(buffer);
+    }
+
+    /**
+     * Positions of the instructions of a method before and after the calls of the counter are inserted
+     */
+    private static class Layout {
+        private final byte[] code;
+        private final int[] oldPcs;
+        private final boolean[] counted;
+        /**
+         * New position of the inserted call (or of the instruction itself if nothing is inserted)
+         */
+        private final int[] starts;
+        /**
+         * New position of the instruction
+         */
+        private final int[] positions;
+        /**
+         * Index of the instruction at an old offset (-1 within an instruction)
+         */
+        private final int[] indexOf;
+        private int newLength;
+
+        Layout(byte[] code) {
+            this.code = code;
+            this.indexOf = new int[code.length + 1];
+            Arrays.fill(indexOf, -1);
+            int n = 0;
+            for (int pc = 0; pc < code.length; pc += length(pc, pc)) {
+                indexOf[pc] = n++;
+            }
+            this.oldPcs = new int[n];
+            this.counted = new boolean[n];
+            this.starts = new int[n];
+            this.positions = new int[n];
+            for (int pc = 0; pc < code.length; pc++) {
+                if (indexOf[pc] >= 0) {
+                    oldPcs[indexOf[pc]] = pc;
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                counted[i] = i == 0 || jumpsBack(oldPcs[i]);
+            }
+        }
+
+        /**
+         * Computes the new positions (switches are padded depending on their position)
+         *
+         * @return false if the method would get too long
+         */
+        boolean compute() {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int pos = 0;
+                for (int i = 0; i < oldPcs.length; i++) {
+                    starts[i] = pos;
+                    if (counted[i]) {
+                        pos += CALL_LENGTH;
+                    }
+                    if (positions[i] != pos) {
+                        positions[i] = pos;
+                        changed = true;
+                    }
+                    pos += length(oldPcs[i], pos);
+                }
+                newLength = pos;
+            }
+            return newLength < 0x10000;
+        }
+
+        /**
+         * New offset of a jump target (an inserted call belongs to the instruction which follows)
+         */
+        int target(int oldPc) {
+            if (oldPc >= code.length) {
+                return newLength;
+            }
+            return starts[indexOf[oldPc]];
+        }
+
+        /**
+         * New offset of the instruction itself
+         */
+        int instruction(int oldPc) {
+            return positions[indexOf[oldPc]];
+        }
+
+        /**
+         * Writes the new code
+         *
+         * @return the code or null if a branch is out of range
+         */
+        byte[] emit(int counterRef) {
+            byte[] out = new byte[newLength];
+            for (int i = 0; i < oldPcs.length; i++) {
+                int pc = oldPcs[i];
+                int op = code[pc] & 0xff;
+                if (counted[i]) {
+                    out[starts[i]] = (byte) INVOKESTATIC;
+                    out[starts[i] + 1] = (byte) (counterRef >> 8);
+                    out[starts[i] + 2] = (byte) counterRef;
+                }
+                int pos = positions[i];
+                if (isBranch(op)) {
+                    out[pos] = (byte) op;
+                    int offset = target(pc + (short) u2(pc + 1)) - pos;
+                    if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                        return null;
+                    }
+                    putU2(out, pos + 1, offset);
+                } else if (op == GOTO_W || op == JSR_W) {
+                    out[pos] = (byte) op;
+                    putU4(out, pos + 1, target(pc + s4(pc + 1)) - pos);
+                } else if (op == TABLESWITCH || op == LOOKUPSWITCH) {
+                    out[pos] = (byte) op;
+                    int oldBase = pc + 1 + padding(pc);
+                    int newBase = pos + 1 + padding(pos);
+                    putU4(out, newBase, target(pc + s4(oldBase)) - pos);
+                    if (op == TABLESWITCH) {
+                        int low = s4(oldBase + 4);
+                        int high = s4(oldBase + 8);
+                        putU4(out, newBase + 4, low);
+                        putU4(out, newBase + 8, high);
+                        for (int k = 0; k <= high - low; k++) {
+                            putU4(out, newBase + 12 + 4 * k, target(pc + s4(oldBase + 12 + 4 * k)) - pos);
+                        }
+                    } else {
+                        int pairs = s4(oldBase + 4);
+                        putU4(out, newBase + 4, pairs);
+                        for (int k = 0; k < pairs; k++) {
+                            putU4(out, newBase + 8 + 8 * k, s4(oldBase + 8 + 8 * k));
+                            putU4(out, newBase + 12 + 8 * k, target(pc + s4(oldBase + 12 + 8 * k)) - pos);
+                        }
+                    }
+                } else {
+                    System.arraycopy(code, pc, out, pos, length(pc, pos));
+                }
+            }
+            return out;
+        }
+
+        /**
+         * Returns true if the instruction may jump to itself or to an earlier instruction
+         */
+        private boolean jumpsBack(int pc) {
+            int op = code[pc] & 0xff;
+            if (isBranch(op)) {
+                return (short) u2(pc + 1) <= 0;
+            } else if (op == GOTO_W || op == JSR_W) {
+                return s4(pc + 1) <= 0;
+            } else if (op == TABLESWITCH || op == LOOKUPSWITCH) {
+                int base = pc + 1 + padding(pc);
+                if (s4(base) <= 0) {
+                    return true;
+                }
+                int first = base + 12;
+                int step = op == TABLESWITCH ? 4 : 8;
+                int n = op == TABLESWITCH ? s4(base + 8) - s4(base + 4) + 1 : s4(base + 4);
+                for (int k = 0; k < n; k++) {
+                    if (s4(first + step * k) <= 0) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Length of the instruction at the old offset if it is placed at the given new offset
+         */
+        private int length(int pc, int pos) {
+            int op = code[pc] & 0xff;
+            if (op == TABLESWITCH) {
+                int base = pc + 1 + padding(pc);
+                return 1 + padding(pos) + 12 + 4 * (s4(base + 8) - s4(base + 4) + 1);
+            } else if (op == LOOKUPSWITCH) {
+                int base = pc + 1 + padding(pc);
+                return 1 + padding(pos) + 8 + 8 * s4(base + 4);
+            } else if (op == WIDE) {
+                return (code[pc + 1] & 0xff) == IINC ? 6 : 4;
+            }
+            return LENGTHS[op];
+        }
+
+        private static boolean isBranch(int op) {
+            return (op >= 0x99 && op <= 0xa8) || op == 0xc6 || op == 0xc7;
+        }
+
+        private static int padding(int pc) {
+            return (4 - (pc + 1) % 4) % 4;
+        }
+
+        private int u2(int i) {
+            return ((code[i] & 0xff) << 8) | (code[i + 1] & 0xff);
+        }
+
+        private int s4(int i) {
+            return (code[i] << 24) | ((code[i + 1] & 0xff) << 16) | ((code[i + 2] & 0xff) << 8) | (code[i + 3] & 0xff);
+        }
+
+        private static void putU2(byte[] out, int i, int value) {
+            out[i] = (byte) (value >> 8);
+            out[i + 1] = (byte) value;
+        }
+
+        private static void putU4(byte[] out, int i, int value) {
+            out[i] = (byte) (value >> 24);
+            out[i + 1] = (byte) (value >> 16);
+            out[i + 2] = (byte) (value >> 8);
+            out[i + 3] = (byte) value;
+        }
+    }
+}
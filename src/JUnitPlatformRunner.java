@@ -0,0 +1,246 @@
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs the tests on the JUnit Platform (e.g. Jupiter tests with <code>@Timeout</code>, dynamic tests and
+ * parallel execution) instead of JUnit 4's <code>JUnitCore</code>. Enabled with
+ * <code>-Dvpl.engine=platform</code>.
+ * <p>
+ * The platform is not part of the jar. Its jars (e.g. <code>junit-platform-console-standalone.jar</code>)
+ * have to be on the classpath or in the directory of the submission, so the platform is only accessed
+ * by reflection. All configuration parameters of the platform can be given as system properties
+ * (e.g. <code>-Djunit.jupiter.execution.parallel.enabled=true</code>); <code>-Dvpl.parallel=4</code>
+ * is a shortcut to run test classes and methods concurrently on 4 threads.
+ */
+public class JUnitPlatformRunner {
+    private static final String PLATFORM = "org.junit.platform.";
+
+    /**
+     * Private to prevent instantiation
+     */
+    private JUnitPlatformRunner() {
+
+    }
+
+    /**
+     * Returns true if the tests should run on the JUnit Platform
+     */
+    public static boolean isEnabled() {
+        return "platform".equalsIgnoreCase(System.getProperty("vpl.engine"));
+    }
+
+    /**
+     * Runs all test classes within one launcher session and records the results at the tester
+     *
+     * @param classnames Test classes
+     * @param loader     Classloader which loads the test classes (and the platform)
+     * @param tester     Receives the points and the results of the tests
+     * @return false if the platform was not found
+     */
+    public static boolean run(List<String> classnames, ClassLoader loader, VplJUnitTester tester) throws ClassNotFoundException {
+        Class<?> launcherFactory;
+        try {
+            launcherFactory = loader.loadClass(PLATFORM + "launcher.core.LauncherFactory");
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+
+        // The platform finds its test engines with the context classloader
+        Thread thread = Thread.currentThread();
+        ClassLoader contextLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(loader);
+        try {
+            Method selectClass = loader.loadClass(PLATFORM + "engine.discovery.DiscoverySelectors").getMethod("selectClass", Class.class);
+            List<Object> selectors = new ArrayList<>();
+            for (String classname : classnames) {
+                selectors.add(selectClass.invoke(null, Class.forName(classname, false, loader)));
+            }
+
+            Class<?> builderClass = loader.loadClass(PLATFORM + "launcher.core.LauncherDiscoveryRequestBuilder");
+            Object builder = builderClass.getMethod("request").invoke(null);
+            builderClass.getMethod("selectors", List.class).invoke(builder, selectors);
+            builderClass.getMethod("configurationParameters", Map.class).invoke(builder, configurationParameters());
+            Object request = builderClass.getMethod("build").invoke(builder);
+
+            Class<?> listenerClass = loader.loadClass(PLATFORM + "launcher.TestExecutionListener");
+            Object listeners = Array.newInstance(listenerClass, 1);
+            Array.set(listeners, 0, Proxy.newProxyInstance(loader, new Class<?>[]{listenerClass}, new Listener(tester, loader)));
+
+            Object launcher = launcherFactory.getMethod("create").invoke(null);
+            Class<?> requestClass = loader.loadClass(PLATFORM + "launcher.LauncherDiscoveryRequest");
+            loader.loadClass(PLATFORM + "launcher.Launcher").getMethod("execute", requestClass, listeners.getClass())
+                    .invoke(launcher, request, listeners);
+            return true;
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("The JUnit Platform failed", e.getCause());
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException("Unsupported version of the JUnit Platform", e);
+        } finally {
+            thread.setContextClassLoader(contextLoader);
+        }
+    }
+
+    /**
+     * Passes all <code>junit.*</code> system properties to the platform and expands <code>vpl.parallel</code>
+     */
+    private static Map<String, String> configurationParameters() {
+        Map<String, String> parameters = new TreeMap<>();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("junit.")) {
+                parameters.put(name, System.getProperty(name));
+            }
+        }
+        String parallel = System.getProperty("vpl.parallel");
+        if (parallel != null && !parallel.isEmpty()) {
+            parameters.putIfAbsent("junit.jupiter.execution.parallel.enabled", "true");
+            parameters.putIfAbsent("junit.jupiter.execution.parallel.mode.default", "concurrent");
+            parameters.putIfAbsent("junit.jupiter.execution.parallel.mode.classes.default", "concurrent");
+            parameters.putIfAbsent("junit.jupiter.execution.parallel.config.strategy", "fixed");
+            parameters.putIfAbsent("junit.jupiter.execution.parallel.config.fixed.parallelism", parallel);
+        }
+        return parameters;
+    }
+
+    /**
+     * Implements the <code>TestExecutionListener</code> of the platform and forwards the results to the
+     * tester. Tests are named like JUnit 4 tests (class name and method name). All invocations of a
+     * parameterized or repeated test and all dynamic tests of a test factory make up one test, which
+     * fails with the first failing invocation. Tests which were aborted (a failed assumption) pass, as
+     * with JUnit 4.
+     */
+    private static class Listener implements InvocationHandler {
+        private final VplJUnitTester tester;
+        private final ClassLoader loader;
+        private final Map<String, String> names = new ConcurrentHashMap<>();
+        private final Map<String, String> templates = new ConcurrentHashMap<>();
+        private final Map<String, Throwable> invocationFailures = new ConcurrentHashMap<>();
+
+        Listener(VplJUnitTester tester, ClassLoader loader) {
+            this.tester = tester;
+            this.loader = loader;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "executionStarted":
+                    started(args[0]);
+                    return null;
+                case "executionFinished":
+                    finished(args[0], args[1]);
+                    return null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "VPL grading listener";
+                default:
+                    // all other events are not needed for the grading
+                    return null;
+            }
+        }
+
+        private void started(Object identifier) throws ReflectiveOperationException {
+            boolean test = (Boolean) call(identifier, "isTest");
+            if (test) {
+                VplInstructionBudget.testStarted();
+            }
+            String uniqueId = (String) call(identifier, "getUniqueId");
+            String parentId = parentIdOf(identifier);
+            String template = parentId == null ? null : templates.get(parentId);
+            if (template != null) {
+                // An invocation of a parameterized or repeated test or a test (or container) of a factory
+                templates.put(uniqueId, template);
+                return;
+            }
+
+            Object source = methodSource(identifier);
+            if (source == null) {
+                return;
+            }
+            String name = call(source, "getClassName") + "." + call(source, "getMethodName");
+            names.put(uniqueId, name);
+            if (!test) {
+                // A parameterized or repeated test or a test factory: all its tests make up one test
+                templates.put(uniqueId, uniqueId);
+            }
+            register(name, source);
+            tester.recordStart(name);
+        }
+
+        private void finished(Object identifier, Object result) throws ReflectiveOperationException {
+            if ((Boolean) call(identifier, "isTest")) {
+                VplInstructionBudget.testFinished();
+            }
+            String uniqueId = (String) call(identifier, "getUniqueId");
+            String status = String.valueOf(call(result, "getStatus"));
+            Throwable failure = null;
+            if (status.equals("FAILED")) {
+                failure = (Throwable) ((Optional<?>) call(result, "getThrowable")).orElse(null);
+                if (failure == null) {
+                    failure = new AssertionError(status);
+                }
+            }
+
+            String template = templates.remove(uniqueId);
+            if (template != null && !template.equals(uniqueId)) {
+                if (failure != null) {
+                    invocationFailures.putIfAbsent(template, failure);
+                }
+                return;
+            }
+            String name = names.remove(uniqueId);
+            if (name == null) {
+                return;
+            }
+            if (template != null) {
+                // e.g. the arguments of a parameterized test or a test factory failed before any test ran
+                Throwable first = invocationFailures.remove(uniqueId);
+                tester.recordResult(name, first != null ? first : failure);
+            } else {
+                tester.recordResult(name, failure);
+            }
+        }
+
+        private void register(String name, Object source) throws ReflectiveOperationException {
+            Class<?> testClass = Class.forName((String) call(source, "getClassName"), false, loader);
+            tester.getPointsTable().register(name, findMethod(testClass, (String) call(source, "getMethodName")), testClass);
+        }
+
+        private static Object methodSource(Object identifier) throws ReflectiveOperationException {
+            Object source = ((Optional<?>) call(identifier, "getSource")).orElse(null);
+            return source != null && source.getClass().getSimpleName().equals("MethodSource") ? source : null;
+        }
+
+        private static String parentIdOf(Object identifier) throws ReflectiveOperationException {
+            return (String) ((Optional<?>) call(identifier, "getParentId")).orElse(null);
+        }
+
+        private static Method findMethod(Class<?> testClass, String methodName) {
+            for (Class<?> c = testClass; c != null; c = c.getSuperclass()) {
+                for (Method m : c.getDeclaredMethods()) {
+                    if (m.getName().equals(methodName)) {
+                        return m;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private static Object call(Object target, String method) throws ReflectiveOperationException {
+            Method m = target.getClass().getMethod(method);
+            m.setAccessible(true);
+            return m.invoke(target);
+        }
+    }
+}
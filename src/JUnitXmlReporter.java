@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the results of an evaluation as JUnit XML report (as known from Ant and Maven Surefire), so
+ * they can be shown by CI servers and other tools. Every test class becomes a testsuite; the style
+ * checks are reported as the testsuite <code>checkstyle</code>. The file is written at the end of the
+ * evaluation, since a testsuite starts with the number of its tests and failures.
+ */
+public class JUnitXmlReporter implements GradingReporter {
+    private final Path file;
+
+    /**
+     * @param file File which receives the report
+     */
+    public JUnitXmlReporter(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void testFinished(GradingResult.TestResult test) {
+        // written at the end
+    }
+
+    @Override
+    public void styleChecked(GradingResult.StyleResult check) {
+        // written at the end
+    }
+
+    @Override
+    public void gradingFinished(GradingResult result) throws IOException {
+        Map<String, List<GradingResult.TestResult>> suites = new LinkedHashMap<>();
+        int failures = 0;
+        for (GradingResult.TestResult test : result.getTests()) {
+            suites.computeIfAbsent(classOf(test.getName()), c -> new ArrayList<>()).add(test);
+            failures += test.isPassed() ? 0 : 1;
+        }
+        for (GradingResult.StyleResult check : result.getStyleChecks()) {
+            failures += check.getViolations() == 0 ? 0 : 1;
+        }
+
+        try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            w.write("<testsuites name=\"" + escape(String.valueOf(result.getSubmission().toAbsolutePath().normalize().getFileName())) + "\""
+                    + " tests=\"" + (result.getTests().size() + result.getStyleChecks().size()) + "\""
+                    + " failures=\"" + failures + "\""
+                    + " grade=\"" + PointsTable.format(result.getGrade()) + "\">\n");
+            for (Map.Entry<String, List<GradingResult.TestResult>> suite : suites.entrySet()) {
+                List<GradingResult.TestResult> tests = suite.getValue();
+                int failed = 0;
+                for (GradingResult.TestResult test : tests) {
+                    failed += test.isPassed() ? 0 : 1;
+                }
+                w.write("  <testsuite name=\"" + escape(suite.getKey()) + "\" tests=\"" + tests.size()
+                        + "\" failures=\"" + failed + "\" errors=\"0\" skipped=\"0\">\n");
+                for (GradingResult.TestResult test : tests) {
+                    String method = test.getName().substring(suite.getKey().length() + 1);
+                    testcase(w, suite.getKey(), method, test.getMillis(), "points", PointsTable.format(test.getPoints()), test.getMessage());
+                }
+                w.write("  </testsuite>\n");
+            }
+            if (!result.getStyleChecks().isEmpty()) {
+                int failed = 0;
+                for (GradingResult.StyleResult check : result.getStyleChecks()) {
+                    failed += check.getViolations() == 0 ? 0 : 1;
+                }
+                w.write("  <testsuite name=\"checkstyle\" tests=\"" + result.getStyleChecks().size()
+                        + "\" failures=\"" + failed + "\" errors=\"0\" skipped=\"0\">\n");
+                for (GradingResult.StyleResult check : result.getStyleChecks()) {
+                    testcase(w, "checkstyle", check.getCheck(), -1, "deduction", Integer.toString(check.getDeduction()),
+                            check.getViolations() == 0 ? null : check.getViolations() + " violations");
+                }
+                w.write("  </testsuite>\n");
+            }
+            w.write("</testsuites>\n");
+        }
+    }
+
+    private static void testcase(Writer w, String classname, String name, long millis, String property, String value, String failure) throws IOException {
+        w.write("    <testcase classname=\"" + escape(classname) + "\" name=\"" + escape(name) + "\""
+                + (millis < 0 ? "" : " time=\"" + String.format(Locale.ROOT, "%.3f", millis / 1000.0) + "\"") + ">\n");
+        w.write("      <properties><property name=\"" + property + "\" value=\"" + value + "\"/></properties>\n");
+        if (failure != null) {
+            String firstLine = failure.split("\\R", 2)[0];
+            w.write("      <failure message=\"" + escape(firstLine) + "\">" + escape(failure) + "</failure>\n");
+        }
+        w.write("    </testcase>\n");
+    }
+
+    private static String classOf(String test) {
+        int dot = test.lastIndexOf('.');
+        return dot < 0 ? "" : test.substring(0, dot);
+    }
+
+    /**
+     * Escapes text for attributes and elements (characters which are not allowed in XML are dropped)
+     */
+    private static String escape(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '"':
+                    sb.append("&quot;");
+                    break;
+                case '\n':
+                    sb.append("&#10;");
+                    break;
+                case '\r':
+                    sb.append("&#13;");
+                    break;
+                case '\t':
+                    sb.append(c);
+                    break;
+                default:
+                    if (c >= 0x20) {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void close() {
+        // the file is closed at the end of gradingFinished
+    }
+}
@@ -0,0 +1,186 @@
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The JFR events of {@link GradingEvents}. This class references <code>jdk.jfr</code> and must only be
+ * loaded through {@link GradingEvents}.
+ */
+class JfrEvents implements GradingEvents.Backend {
+
+    @Override
+    public RunListener testListener() {
+        return new TestListener();
+    }
+
+    @Override
+    public void processStarted(String classname, Process process) {
+        ChildProcessEvent event = new ChildProcessEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.begin();
+        event.mainClass = classname;
+        VplThreads.start("vpl-jfr-" + classname, () -> {
+            try {
+                event.exitStatus = process.waitFor();
+                event.commit();
+            } catch (InterruptedException e) {
+                // the evaluation is over
+            }
+        });
+    }
+
+    @Override
+    public GradingEvents.Span expectation(String classname) {
+        ExpectationEvent event = new ExpectationEvent();
+        event.begin();
+        return (detail, success) -> {
+            event.end();
+            if (event.shouldCommit()) {
+                event.mainClass = classname;
+                event.line = detail;
+                event.matched = success;
+                event.commit();
+            }
+        };
+    }
+
+    @Override
+    public GradingEvents.Span checkstyleAudit(String configuration, String file) {
+        CheckstyleEvent event = new CheckstyleEvent();
+        event.begin();
+        return (detail, success) -> {
+            event.end();
+            if (event.shouldCommit()) {
+                event.configuration = configuration;
+                event.file = file;
+                event.passed = success;
+                event.commit();
+            }
+        };
+    }
+
+    @Override
+    public Closeable startRecording(Path file) throws IOException {
+        Recording recording;
+        try {
+            recording = new Recording(Configuration.getConfiguration("profile"));
+        } catch (ParseException e) {
+            throw new IOException("Cannot read the JFR configuration", e);
+        }
+        recording.setName("vpl " + file.getFileName());
+        recording.enable(TestEvent.class);
+        recording.enable(ChildProcessEvent.class);
+        recording.enable(ExpectationEvent.class);
+        recording.enable(CheckstyleEvent.class);
+        recording.start();
+        return () -> {
+            try {
+                recording.stop();
+                recording.dump(file);
+            } finally {
+                recording.close();
+            }
+        };
+    }
+
+    /**
+     * Emits an event for every test
+     */
+    private static class TestListener extends RunListener {
+        private final Map<org.junit.runner.Description, TestEvent> running = new ConcurrentHashMap<>();
+
+        @Override
+        public void testStarted(org.junit.runner.Description description) {
+            TestEvent event = new TestEvent();
+            event.begin();
+            event.test = description.getClassName() + "." + description.getMethodName();
+            event.passed = true;
+            running.put(description, event);
+        }
+
+        @Override
+        public void testFailure(Failure failure) {
+            TestEvent event = running.get(failure.getDescription());
+            if (event != null) {
+                event.passed = false;
+            }
+        }
+
+        @Override
+        public void testFinished(org.junit.runner.Description description) {
+            TestEvent event = running.remove(description);
+            if (event != null) {
+                event.commit();
+            }
+        }
+    }
+
+    @Name("vpl.Test")
+    @Label("Test")
+    @Category("VPL")
+    @Description("A JUnit test of the submission")
+    static class TestEvent extends Event {
+        @Label("Test")
+        String test;
+
+        @Label("Passed")
+        boolean passed;
+    }
+
+    @Name("vpl.ChildProcess")
+    @Label("Child Process")
+    @Category("VPL")
+    @Description("A JVM started by the grader, from its start till its exit")
+    static class ChildProcessEvent extends Event {
+        @Label("Main Class")
+        String mainClass;
+
+        @Label("Exit Status")
+        int exitStatus;
+    }
+
+    @Name("vpl.Expectation")
+    @Label("Expectation")
+    @Category("VPL")
+    @Description("Wait of the console simulator for the next line of the program")
+    static class ExpectationEvent extends Event {
+        @Label("Main Class")
+        String mainClass;
+
+        @Label("Line")
+        String line;
+
+        @Label("Matched")
+        boolean matched;
+    }
+
+    @Name("vpl.Checkstyle")
+    @Label("Checkstyle Audit")
+    @Category("VPL")
+    @Description("Checkstyle audit of a single source file")
+    static class CheckstyleEvent extends Event {
+        @Label("Configuration")
+        String configuration;
+
+        @Label("File")
+        String file;
+
+        @Label("Passed")
+        boolean passed;
+    }
+}
@@ -0,0 +1,94 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends one JSON object per line for every test, every style check and the grade of an evaluation:
+ * <pre>
+ *   {"event": "test", "submission": "s1", "name": "CalcTests.testAdd_10P", "points": 10, "passed": true, "message": null}
+ *   {"event": "style", "submission": "s1", "check": "checkstyle-5P.xml", "violations": 2, "deduction": 2}
+ *   {"event": "grade", "submission": "s1", "grade": 95, "timedOut": false, "error": null, "tests": 12, "passed": 11}
+ * </pre>
+ * The lines are collected in a buffer which is appended to the file once it is full and at the end of
+ * the evaluation. Only complete lines are appended, so many evaluations (e.g. of a daemon or batch run)
+ * can share one file.
+ */
+public class JsonLinesReporter implements GradingReporter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Object APPEND_LOCK = new Object();
+
+    private final String submission;
+    private final Path file;
+    private final StringBuilder buffer = new StringBuilder();
+
+    /**
+     * @param workDir Directory of the submission
+     * @param file    File which receives the lines
+     */
+    public JsonLinesReporter(Path workDir, Path file) {
+        Path name = workDir.toAbsolutePath().normalize().getFileName();
+        this.submission = VplJson.quote(name == null ? workDir.toString() : name.toString());
+        this.file = file;
+    }
+
+    @Override
+    public void testFinished(GradingResult.TestResult test) throws IOException {
+        line("{\"event\": \"test\", \"submission\": " + submission
+                + ", \"name\": " + VplJson.quote(test.getName())
+                + ", \"points\": " + PointsTable.format(test.getPoints())
+                + ", \"passed\": " + test.isPassed()
+                + ", \"message\": " + VplJson.quote(test.getMessage()) + "}");
+    }
+
+    @Override
+    public void styleChecked(GradingResult.StyleResult check) throws IOException {
+        line("{\"event\": \"style\", \"submission\": " + submission
+                + ", \"check\": " + VplJson.quote(check.getCheck())
+                + ", \"violations\": " + check.getViolations()
+                + ", \"deduction\": " + check.getDeduction() + "}");
+    }
+
+    @Override
+    public void gradingFinished(GradingResult result) throws IOException {
+        int passed = 0;
+        for (GradingResult.TestResult test : result.getTests()) {
+            if (test.isPassed()) {
+                passed++;
+            }
+        }
+        line("{\"event\": \"grade\", \"submission\": " + submission
+                + ", \"grade\": " + PointsTable.format(result.getGrade())
+                + ", \"timedOut\": " + result.isTimedOut()
+                + ", \"error\": " + VplJson.quote(result.getError())
+                + ", \"tests\": " + result.getTests().size()
+                + ", \"passed\": " + passed + "}");
+    }
+
+    private void line(String json) throws IOException {
+        buffer.append(json).append('\n');
+        if (buffer.length() >= BUFFER_SIZE) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        if (buffer.length() == 0) {
+            return;
+        }
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        buffer.setLength(0);
+        synchronized (APPEND_LOCK) {
+            try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
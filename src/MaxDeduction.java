@@ -0,0 +1,16 @@
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Limits the sum of all penalties (tests with negative {@link Points}) of a test class, like the
+ * <code>-10P</code> suffix of a checkstyle file limits its deductions.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface MaxDeduction {
+    double value();
+}
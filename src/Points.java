@@ -0,0 +1,19 @@
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Points of a test (instead of the <code>_10P</code> suffix of the method name). Fractional points are
+ * possible. Negative points are a penalty: they are deducted if the test fails and have no effect if
+ * it passes.
+ * <p>
+ * On a test class the value applies to all tests of the class without points of their own.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface Points {
+    double value();
+}
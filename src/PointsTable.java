@@ -0,0 +1,152 @@
+import org.junit.runner.Description;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Points of every test of an evaluation. The table is filled from the descriptions of the test classes
+ * when they start, so the summary only has to look up each test.
+ * <p>
+ * The points of a test are taken from (in this order) its {@link Points} annotation, the
+ * <code>_10P</code> suffix of its name and the {@link Points} annotation of its class.
+ */
+public class PointsTable {
+    private static final Pattern POINT_REGEX = Pattern.compile(".*_(\\d+)P");
+
+    private final Map<String, Double> points = new HashMap<>();
+    private final Map<String, Double> maxDeductions = new HashMap<>();
+
+    /**
+     * Registers all tests below the description (e.g. of a test class or suite)
+     */
+    public synchronized void register(Description description) {
+        if (description.isTest()) {
+            points.put(nameOf(description), pointsOf(description));
+            if (description.getTestClass() != null) {
+                registerClass(description.getTestClass());
+            }
+            return;
+        }
+        for (Description child : description.getChildren()) {
+            register(child);
+        }
+    }
+
+    /**
+     * Returns the points of a test (0 if the test has no points)
+     */
+    public synchronized double getPoints(String test) {
+        Double value = points.get(test);
+        if (value == null) {
+            // Not part of the description (e.g. a dynamically added test)
+            value = (double) Math.max(pointsFromName(test), 0);
+            points.put(test, value);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the maximum sum of penalties of the test class
+     */
+    public synchronized double getMaxDeduction(String classname) {
+        return maxDeductions.getOrDefault(classname, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Registers a test which is not described by JUnit 4 (e.g. a test of the JUnit Platform)
+     *
+     * @param test      Name of the test
+     * @param method    The test method (null if unknown)
+     * @param testClass The test class
+     */
+    public synchronized void register(String test, Method method, Class<?> testClass) {
+        Points annotation = method == null ? null : method.getAnnotation(Points.class);
+        points.put(test, pointsOf(annotation, method == null ? test : method.getName(), testClass));
+        registerClass(testClass);
+    }
+
+    /**
+     * Registers a test which is only known by its name (e.g. reported by a worker JVM or replayed from the
+     * cache). Its method is looked up without the index of a parameterized test (<code>m_5P[0]</code>).
+     */
+    public synchronized void register(String test, Class<?> testClass) {
+        String prefix = testClass.getName() + ".";
+        String name = test.startsWith(prefix) ? test.substring(prefix.length()) : test;
+        register(test, methodOf(testClass, withoutIndex(name)), testClass);
+    }
+
+    /**
+     * Removes the index of a parameterized JUnit 4 test (<code>m_5P[0]</code> -&gt; <code>m_5P</code>)
+     */
+    private static String withoutIndex(String methodName) {
+        int index = methodName.indexOf('[');
+        return index < 0 ? methodName : methodName.substring(0, index);
+    }
+
+    private static Method methodOf(Class<?> testClass, String name) {
+        for (Method method : testClass.getMethods()) {
+            if (method.getName().equals(name)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private void registerClass(Class<?> testClass) {
+        maxDeductions.computeIfAbsent(testClass.getName(), name -> maxDeductionOf(testClass));
+    }
+
+    /**
+     * Returns the maximum sum of penalties of the test class
+     */
+    public static double maxDeductionOf(Class<?> testClass) {
+        MaxDeduction max = testClass.getAnnotation(MaxDeduction.class);
+        return max == null ? Double.POSITIVE_INFINITY : Math.abs(max.value());
+    }
+
+    /**
+     * Determines the points of a single test
+     */
+    public static double pointsOf(Description test) {
+        return pointsOf(test.getAnnotation(Points.class), test.getMethodName() == null ? "" : withoutIndex(test.getMethodName()), test.getTestClass());
+    }
+
+    private static double pointsOf(Points annotation, String methodName, Class<?> testClass) {
+        if (annotation != null) {
+            return annotation.value();
+        }
+        int fromName = pointsFromName(methodName);
+        if (fromName >= 0) {
+            return fromName;
+        }
+        annotation = testClass == null ? null : testClass.getAnnotation(Points.class);
+        return annotation == null ? 0 : annotation.value();
+    }
+
+    /**
+     * Returns the points of the <code>_10P</code> suffix of a test name or -1 if it has none (the name
+     * has to end with the suffix)
+     */
+    public static int pointsFromName(String name) {
+        Matcher m = POINT_REGEX.matcher(name);
+        if (m.matches()) {
+            return Integer.parseInt(m.group(1));
+        }
+        return -1;
+    }
+
+    /**
+     * Formats points without unnecessary decimals (10 instead of 10.0)
+     */
+    public static String format(double value) {
+        return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+
+    private static String nameOf(Description test) {
+        return (test.getTestClass() == null ? test.getClassName() : test.getTestClass().getName()) + "." + test.getMethodName();
+    }
+}
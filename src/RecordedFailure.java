@@ -0,0 +1,22 @@
+/**
+ * Failure of a test which did not happen within this JVM (e.g. replayed from a cache or reported by
+ * another process). Only the text of the original failure is known, which is exactly what the grader
+ * shows to the student.
+ */
+public class RecordedFailure extends Throwable {
+    private static final long serialVersionUID = 1L;
+    private final String description;
+
+    /**
+     * @param description the toString() of the original failure
+     */
+    public RecordedFailure(String description) {
+        super(description, null, false, false);
+        this.description = description;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -0,0 +1,251 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link GradingQueue} within a (possibly shared) directory. Every job is a small properties file
+ * which moves through the subdirectories by atomic renames, so any number of workers on any number of
+ * hosts can take jobs without further coordination:
+ * <pre>
+ *   pending/  jobs waiting for a worker
+ *   running/  jobs claimed by a worker and their .lease files (a counter which every heartbeat increments)
+ *   done/     results (.json, .csv and the VPL output as .txt)
+ *   failed/   jobs which crashed their workers too often
+ * </pre>
+ * A lease expires if its counter did not change for the lease time, measured with the clock of the
+ * coordinator. So the clocks of the hosts (and of a file server) do not have to agree.
+ */
+public class SpoolDirectoryQueue implements GradingQueue {
+    private static final String JOB = ".job";
+    private static final String LEASE = ".lease";
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    private static final AtomicLong BEATS = new AtomicLong();
+
+    private final Path pending;
+    private final Path running;
+    private final Path done;
+    private final Path failed;
+    private final Map<String, Lease> leases = new HashMap<>();
+
+    public SpoolDirectoryQueue(Path spool) throws IOException {
+        this.pending = Files.createDirectories(spool.resolve("pending"));
+        this.running = Files.createDirectories(spool.resolve("running"));
+        this.done = Files.createDirectories(spool.resolve("done"));
+        this.failed = Files.createDirectories(spool.resolve("failed"));
+    }
+
+    @Override
+    public String enqueue(Path submission, String[] args) throws IOException {
+        String id = String.format("%d-%04d-%s", System.currentTimeMillis(), SEQUENCE.incrementAndGet() % 10000,
+                submission.getFileName().toString().replaceAll("[^A-Za-z0-9_.-]", "_"));
+        Properties p = new Properties();
+        p.setProperty("submission", submission.toAbsolutePath().normalize().toString());
+        p.setProperty("args", String.join(" ", args));
+        p.setProperty("attempts", "0");
+        writeAtomically(pending.resolve(id + JOB), p);
+        return id;
+    }
+
+    @Override
+    public GradingJob claim(String workerId) throws IOException {
+        for (Path candidate : list(pending, JOB)) {
+            Path target = running.resolve(candidate.getFileName());
+            try {
+                Files.move(candidate, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException | FileAlreadyExistsException e) {
+                continue; // another worker was faster
+            }
+            beat(idOf(target));
+
+            Properties p = read(target);
+            int attempt = Integer.parseInt(p.getProperty("attempts", "0")) + 1;
+            p.setProperty("attempts", Integer.toString(attempt));
+            p.setProperty("worker", workerId);
+            writeAtomically(target, p);
+
+            String args = p.getProperty("args", "").trim();
+            return new GradingJob(idOf(target), Paths.get(p.getProperty("submission")),
+                    args.isEmpty() ? new String[0] : args.split("\\s+"), attempt);
+        }
+        return null;
+    }
+
+    @Override
+    public void heartbeat(GradingJob job) throws IOException {
+        if (Files.exists(running.resolve(job.getId() + JOB))) {
+            beat(job.getId());
+        }
+        // otherwise the job has been requeued in the meantime
+    }
+
+    /**
+     * Writes a new value of the counter of the lease
+     */
+    private void beat(String id) throws IOException {
+        write(running.resolve(id + LEASE), Long.toString(BEATS.incrementAndGet()));
+    }
+
+    @Override
+    public void complete(GradingJob job, GradingResult result, String output) throws IOException {
+        write(done.resolve(job.getId() + ".txt"), output);
+        write(done.resolve(job.getId() + ".csv"), VplBatchGrader.toCsv(result));
+        // The .json file is written last, it marks the job as done
+        write(done.resolve(job.getId() + ".json"), VplBatchGrader.toJson(result));
+        Files.deleteIfExists(running.resolve(job.getId() + JOB));
+        Files.deleteIfExists(running.resolve(job.getId() + LEASE));
+    }
+
+    @Override
+    public int requeueExpired(long leaseMillis, int maxAttempts) throws IOException {
+        int count = 0;
+        long now = System.nanoTime();
+        Map<String, Lease> current = new HashMap<>();
+        for (Path job : list(running, JOB)) {
+            String id = idOf(job);
+            String beat = readLease(id);
+            Lease lease = leases.get(id);
+            if (lease == null || !lease.beat.equals(beat)) {
+                lease = new Lease(beat, now);
+            }
+            current.put(id, lease);
+            if (now - lease.seen < leaseMillis * 1_000_000) {
+                continue;
+            }
+            try {
+                if (Files.exists(done.resolve(id + ".json"))) {
+                    Files.deleteIfExists(job);
+                    continue;
+                }
+                int attempts = Integer.parseInt(read(job).getProperty("attempts", "0"));
+                Path target = (attempts >= maxAttempts ? failed : pending).resolve(job.getFileName());
+                Files.move(job, target, StandardCopyOption.ATOMIC_MOVE);
+                Files.deleteIfExists(running.resolve(id + LEASE));
+                current.remove(id);
+                count++;
+            } catch (NoSuchFileException e) {
+                // completed in the meantime
+            }
+        }
+        leases.clear();
+        leases.putAll(current);
+        return count;
+    }
+
+    /**
+     * Returns the counter of the lease of a running job (empty if there is none)
+     */
+    private String readLease(String id) throws IOException {
+        try {
+            return new String(Files.readAllBytes(running.resolve(id + LEASE)), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return "";
+        }
+    }
+
+    @Override
+    public int countOpen() throws IOException {
+        return list(pending, JOB).size() + list(running, JOB).size();
+    }
+
+    @Override
+    public List<String> completedCsv() throws IOException {
+        return readAll(".csv");
+    }
+
+    @Override
+    public List<String> completedJson() throws IOException {
+        return readAll(".json");
+    }
+
+    @Override
+    public List<String> failed() throws IOException {
+        List<String> ids = new ArrayList<>();
+        for (Path job : list(failed, JOB)) {
+            ids.add(idOf(job));
+        }
+        return ids;
+    }
+
+    private List<String> readAll(String extension) throws IOException {
+        List<String> contents = new ArrayList<>();
+        for (Path json : list(done, ".json")) {
+            Path file = done.resolve(idOf(json) + extension);
+            contents.add(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        }
+        return contents;
+    }
+
+    /**
+     * Last value of the counter of a lease and when the coordinator saw it change (System.nanoTime)
+     */
+    private static class Lease {
+        private final String beat;
+        private final long seen;
+
+        Lease(String beat, long seen) {
+            this.beat = beat;
+            this.seen = seen;
+        }
+    }
+
+    private static String idOf(Path file) {
+        String name = file.getFileName().toString();
+        return name.substring(0, name.lastIndexOf('.'));
+    }
+
+    private static List<Path> list(Path dir, String extension) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + extension)) {
+            for (Path entry : stream) {
+                files.add(entry);
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private static Properties read(Path file) throws IOException {
+        Properties p = new Properties();
+        try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            p.load(r);
+        }
+        return p;
+    }
+
+    private static void writeAtomically(Path file, Properties p) throws IOException {
+        Path tmp = file.resolveSibling("." + file.getFileName() + ".tmp");
+        try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            p.store(w, null);
+        }
+        move(tmp, file);
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Path tmp = file.resolveSibling("." + file.getFileName() + ".tmp");
+        Files.write(tmp, content.getBytes(StandardCharsets.UTF_8));
+        move(tmp, file);
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the classes of a single submission. Classes of the submission are loaded by this loader
+ * first (so every evaluation gets its own copy with fresh static fields), while the JDK, JUnit and the
+ * classes of the grader itself are always shared with the parent.
+ */
+public class SubmissionClassLoader extends URLClassLoader {
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    private static final String[] SHARED_PACKAGES = {"java.", "javax.", "jdk.", "sun.", "com.sun.",
+            "org.junit.", "junit.", "org.hamcrest."};
+
+    private final String graderLocation;
+    private final Map<String, byte[]> memoryClasses;
+    private volatile ClassLoadListener listener;
+
+    /**
+     * Creates a classloader for the submission within the given directory
+     */
+    public SubmissionClassLoader(Path workDir, ClassLoader parent) throws IOException {
+        this(workDir, Collections.emptyMap(), parent);
+    }
+
+    /**
+     * Creates a classloader for the submission within the given directory, which prefers the given
+     * bytecode (e.g. compiled by the {@link VplCompiler}) over class files. Jars within the directory
+     * are part of the submission as well.
+     */
+    public SubmissionClassLoader(Path workDir, Map<String, byte[]> memoryClasses, ClassLoader parent) throws IOException {
+        super(classpath(workDir), parent);
+        CodeSource cs = VplJUnitTester.class.getProtectionDomain().getCodeSource();
+        this.graderLocation = cs == null ? null : cs.getLocation().toString();
+        this.memoryClasses = memoryClasses;
+    }
+
+    private static URL[] classpath(Path workDir) throws IOException {
+        List<URL> urls = new ArrayList<>();
+        urls.add(workDir.toUri().toURL());
+        for (Path jar : WorkspaceIndex.findJars(workDir)) {
+            urls.add(jar.toUri().toURL());
+        }
+        return urls.toArray(new URL[0]);
+    }
+
+    /**
+     * Registers a listener which receives the bytecode of every class of the submission this loader defines
+     */
+    public void setClassLoadListener(ClassLoadListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] bytecode = memoryClasses.get(name);
+        if (bytecode != null) {
+            if (listener != null) {
+                listener.loaded(name, bytecode);
+            }
+            int dot = name.lastIndexOf('.');
+            if (dot > 0 && getPackage(name.substring(0, dot)) == null) {
+                definePackage(name.substring(0, dot), null, null, null, null, null, null, null);
+            }
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+
+        Class<?> c = super.findClass(name);
+        ClassLoadListener l = listener;
+        if (l != null) {
+            try (InputStream in = getResourceAsStream(name.replace('.', '/') + ".class")) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int n;
+                while (in != null && (n = in.read(buffer)) > 0) {
+                    bytes.write(buffer, 0, n);
+                }
+                l.loaded(name, bytes.toByteArray());
+            } catch (IOException e) {
+                l.loaded(name, new byte[0]);
+            }
+        }
+        return c;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> c = findLoadedClass(name);
+            if (c == null && !isShared(name)) {
+                try {
+                    c = findClass(name);
+                } catch (ClassNotFoundException e) {
+                    // not part of the submission
+                }
+            }
+            if (c == null) {
+                try {
+                    c = getParent().loadClass(name);
+                } catch (ClassNotFoundException e) {
+                    if (!isShared(name)) {
+                        throw e;
+                    }
+                    // A library of the submission within a shared package (e.g. the JUnit Platform in a jar)
+                    c = findClass(name);
+                }
+            }
+            if (resolve) {
+                resolveClass(c);
+            }
+            return c;
+        }
+    }
+
+    /**
+     * Classes of the JDK, JUnit and the grader must exist only once
+     */
+    private boolean isShared(String name) {
+        for (String prefix : SHARED_PACKAGES) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        if (graderLocation == null) {
+            return false;
+        }
+        URL url = getParent().getResource(name.replace('.', '/') + ".class");
+        return url != null && url.toString().replaceFirst("^jar:", "").startsWith(graderLocation);
+    }
+
+    /**
+     * Is informed about every class of the submission which is defined by the loader
+     */
+    @FunctionalInterface
+    public interface ClassLoadListener {
+        void loaded(String classname, byte[] bytecode);
+    }
+}
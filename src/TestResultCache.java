@@ -0,0 +1,359 @@
+import org.junit.FixMethodOrder;
+import org.junit.runner.Description;
+import org.junit.runner.Request;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Replays the results of tests whose bytecode did not change since the last evaluation.
+ * <p>
+ * Enabled with <code>-Dvpl.cache=&lt;file&gt;</code> (an absolute path outside of the submission) and
+ * <code>-Dvpl.key=&lt;file&gt;</code>: every entry is authenticated with the key of the grader (see
+ * {@link VplHashes#hmac(String...)}), so a forged or modified entry is never replayed. Only the outcome of
+ * a test is replayed; its points are always taken from the current test class. Every test class is
+ * loaded by its own {@link SubmissionClassLoader}, which records the hash of every class of the
+ * submission that is loaded till a test has finished. On the next evaluation, a test is not executed
+ * again if the hashes of all these classes are still the same; its previous result is replayed instead.
+ * Tests which start a child JVM (e.g. with the {@link VplConsoleSimulator}) additionally depend on all
+ * classes which the test class reaches in the static {@link DependencyGraph} of the submission, which
+ * includes the classes whose names it passes to the simulator.
+ * <p>
+ * Tests of classes annotated with {@link FixMethodOrder} usually depend on each other, so such a class
+ * is either replayed completely or executed completely.
+ * <p>
+ * The state of every test is tracked separately, since the tests of a {@link Concurrent} class run at
+ * the same time.
+ */
+public class TestResultCache extends RunListener {
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String MAC = ".mac";
+
+    private final Path file;
+    private final Path workDir;
+    private final Properties entries = new Properties();
+    private final List<SubmissionClassLoader> loaders = new ArrayList<>();
+
+    private final Map<String, String> loadedClasses = new LinkedHashMap<>();
+    private final InheritableThreadLocal<String> currentTest = new InheritableThreadLocal<>();
+    private final Set<String> runningTests = ConcurrentHashMap.newKeySet();
+    private final Set<String> childProcessTests = ConcurrentHashMap.newKeySet();
+    private final Map<String, String> failures = new ConcurrentHashMap<>();
+    private final Map<String, String> hashes = new HashMap<>();
+    private DependencyGraph graph;
+    private String workspaceHash;
+
+    private TestResultCache(Path file, Path workDir) throws IOException {
+        this.file = file;
+        this.workDir = workDir;
+        if (Files.isRegularFile(file)) {
+            try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                entries.load(r);
+            }
+        }
+    }
+
+    /**
+     * Opens the cache of the submission
+     *
+     * @return the cache or null if caching is not enabled
+     */
+    public static TestResultCache open(Path workDir) throws IOException {
+        String location = System.getProperty("vpl.cache");
+        if (location == null || location.isEmpty()) {
+            return null;
+        }
+        Path file = Paths.get(location).normalize();
+        if (!file.isAbsolute() || file.startsWith(workDir.toAbsolutePath().normalize())) {
+            System.err.println("Warning: The test cache " + location + " is not used, since it has to be an absolute path outside of the submission");
+            return null;
+        }
+        if (!VplHashes.hasKey()) {
+            System.err.println("Warning: The test cache " + location + " is not used, since its entries cannot be authenticated without -Dvpl.key");
+            return null;
+        }
+        return new TestResultCache(file, workDir);
+    }
+
+    /**
+     * Replays all valid results of the test class and returns the request for the remaining tests.
+     *
+     * @param classname Test class
+     * @param loader    Classloader of the evaluation
+     * @param replay    Receives the name and the failure (or null) of every replayed test
+     * @param points    Receives the points of every replayed test
+     * @param requests  Creates the request of the test class (e.g. with the {@link BudgetRunner})
+     * @return the request or null if all tests have been replayed
+     */
+    public Request prepare(String classname, ClassLoader loader, BiConsumer<String, Throwable> replay,
+                           PointsTable points, Function<Class<?>, Request> requests) throws IOException, ClassNotFoundException {
+        Set<String> valid = new LinkedHashSet<>();
+        String tests = entries.getProperty(classname + ".tests");
+        if (tests != null && !VplHashes.sameHmac(VplHashes.hmac(classname, tests), entries.getProperty(classname + ".tests" + MAC))) {
+            tests = null;
+        }
+        if (tests != null && !tests.isEmpty()) {
+            for (String test : tests.split(",")) {
+                if (isValid(test)) {
+                    valid.add(test);
+                }
+            }
+            if (valid.size() == tests.split(",").length) {
+                replayAll(valid, replay, points, Class.forName(classname, false, loader));
+                return null;
+            }
+        }
+
+        ClassLoader parent = loader instanceof SubmissionClassLoader ? loader.getParent() : loader;
+        SubmissionClassLoader classLoader = new SubmissionClassLoader(workDir, VplGradingContext.getMemoryClasses(), parent);
+        loaders.add(classLoader);
+        loadedClasses.clear();
+        classLoader.setClassLoadListener((name, bytecode) -> {
+            synchronized (loadedClasses) {
+                loadedClasses.put(name, VplHashes.sha256(bytecode));
+            }
+        });
+
+        Class<?> testClass = Class.forName(classname, true, classLoader);
+        if (valid.isEmpty() || testClass.isAnnotationPresent(FixMethodOrder.class)) {
+            entries.remove(classname + ".tests");
+            entries.remove(classname + ".tests" + MAC);
+            return requests.apply(testClass);
+        }
+
+        replayAll(valid, replay, points, testClass);
+        return requests.apply(testClass).filterWith(new Filter() {
+            @Override
+            public boolean shouldRun(Description description) {
+                if (description.isTest()) {
+                    return !valid.contains(nameOf(description));
+                }
+                for (Description child : description.getChildren()) {
+                    if (shouldRun(child)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public String describe() {
+                return "tests without cached result";
+            }
+        });
+    }
+
+    /**
+     * Writes the cache and releases the classloaders
+     */
+    public void save() throws IOException {
+        for (SubmissionClassLoader loader : loaders) {
+            loader.close();
+        }
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        // A unique temporary file, since several evaluations may share the cache
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                entries.store(w, "vpl-junit test result cache");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Reacts to child JVMs of the current test. The test is known from the thread which starts the child
+     * (or one of its parents); if it is not known, e.g. for a thread which was created before the test,
+     * all running tests are assumed to have started it.
+     */
+    public void childProcessStarted(String classname, Process process) {
+        String test = currentTest.get();
+        if (test != null && runningTests.contains(test)) {
+            childProcessTests.add(test);
+        } else {
+            childProcessTests.addAll(runningTests);
+        }
+    }
+
+    @Override
+    public void testStarted(Description description) {
+        String test = nameOf(description);
+        currentTest.set(test);
+        childProcessTests.remove(test);
+        runningTests.add(test);
+    }
+
+    @Override
+    public void testFailure(Failure failure) {
+        failures.putIfAbsent(nameOf(failure.getDescription()), failure.getException().toString());
+    }
+
+    @Override
+    public synchronized void testFinished(Description description) {
+        String test = nameOf(description);
+        String classname = description.getTestClass().getName();
+
+        Map<String, String> dependencies;
+        synchronized (loadedClasses) {
+            dependencies = new LinkedHashMap<>(loadedClasses);
+        }
+        runningTests.remove(test);
+        boolean startedChildProcess = childProcessTests.remove(test);
+        if (startedChildProcess && !addStaticDependencies(classname, dependencies)) {
+            // Unknown dependencies -> the test is executed again
+            dependencies.clear();
+        }
+        StringBuilder deps = new StringBuilder();
+        for (Map.Entry<String, String> e : dependencies.entrySet()) {
+            deps.append(deps.length() == 0 ? "" : ",").append(e.getKey()).append('=').append(e.getValue());
+        }
+        entries.setProperty(test + ".deps", deps.toString());
+        entries.remove(test + ".workspace");
+        String failure = failures.remove(test);
+        entries.setProperty(test + ".passed", Boolean.toString(failure == null));
+        entries.setProperty(test + ".message", failure == null ? "" : failure);
+        entries.setProperty(test + MAC, macOf(test));
+
+        String tests = entries.getProperty(classname + ".tests", "");
+        if (!("," + tests + ",").contains("," + test + ",")) {
+            tests = tests.isEmpty() ? test : tests + "," + test;
+            entries.setProperty(classname + ".tests", tests);
+        }
+        entries.setProperty(classname + ".tests" + MAC, VplHashes.hmac(classname, tests));
+    }
+
+    /**
+     * HMAC of the entry of a test
+     */
+    private String macOf(String test) {
+        return VplHashes.hmac(test, entries.getProperty(test + ".deps", ""), entries.getProperty(test + ".workspace", ""),
+                entries.getProperty(test + ".passed", ""), entries.getProperty(test + ".message", ""));
+    }
+
+    /**
+     * Adds the classes which the child JVMs of a test may load: the static dependencies of the test class
+     *
+     * @return false if they are not known (e.g. the test class is within a jar)
+     */
+    private boolean addStaticDependencies(String classname, Map<String, String> dependencies) {
+        try {
+            if (graph == null) {
+                graph = DependencyGraph.scan(workDir, VplGradingContext.getMemoryClasses());
+            }
+            if (!graph.contains(classname)) {
+                return false;
+            }
+            for (String dependency : graph.dependenciesOf(classname)) {
+                if (!dependencies.containsKey(dependency)) {
+                    dependencies.put(dependency, hashOf(dependency));
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * A cached result is valid if all classes it depends on are unchanged (results of older versions
+     * of the cache may depend on the whole workspace)
+     */
+    private boolean isValid(String test) throws IOException {
+        String deps = entries.getProperty(test + ".deps");
+        if (deps == null || deps.isEmpty() || !VplHashes.sameHmac(macOf(test), entries.getProperty(test + MAC))) {
+            return false;
+        }
+        for (String dep : deps.split(",")) {
+            int eq = dep.indexOf('=');
+            if (!dep.substring(eq + 1).equals(hashOf(dep.substring(0, eq)))) {
+                return false;
+            }
+        }
+        String workspace = entries.getProperty(test + ".workspace", "");
+        return workspace.isEmpty() || workspace.equals(workspaceHash());
+    }
+
+    /**
+     * Hash of the current bytecode of a class (compiled in memory or from the class file), computed
+     * once per evaluation
+     */
+    private String hashOf(String classname) throws IOException {
+        String hash = hashes.get(classname);
+        if (hash != null) {
+            return hash;
+        }
+        byte[] bytecode = VplGradingContext.getMemoryClasses().get(classname);
+        if (bytecode != null) {
+            hash = VplHashes.sha256(bytecode);
+        } else {
+            hash = VplHashes.sha256(workDir.resolve(classname.replace('.', '/') + CLASS_SUFFIX));
+        }
+        hashes.put(classname, hash);
+        return hash;
+    }
+
+    /**
+     * Replays the outcome of the tests; their points are taken from the current test class
+     */
+    private void replayAll(Set<String> tests, BiConsumer<String, Throwable> replay, PointsTable points, Class<?> testClass) {
+        for (String test : tests) {
+            points.register(test, testClass);
+            boolean passed = Boolean.parseBoolean(entries.getProperty(test + ".passed"));
+            replay.accept(test, passed ? null : new RecordedFailure(entries.getProperty(test + ".message")));
+        }
+    }
+
+    /**
+     * Hash over all classes of the submission (computed once per evaluation)
+     */
+    private String workspaceHash() {
+        if (workspaceHash == null) {
+            Map<String, String> hashes = new TreeMap<>();
+            for (Map.Entry<String, byte[]> e : VplGradingContext.getMemoryClasses().entrySet()) {
+                hashes.put(e.getKey(), VplHashes.sha256(e.getValue()));
+            }
+            try (Stream<Path> files = Files.walk(workDir)) {
+                files.filter(p -> p.toString().endsWith(CLASS_SUFFIX)).forEach(p -> {
+                    try {
+                        hashes.put(workDir.relativize(p).toString(), VplHashes.sha256(p));
+                    } catch (IOException e) {
+                        hashes.put(workDir.relativize(p).toString(), "unreadable");
+                    }
+                });
+            } catch (IOException e) {
+                return "unknown-" + System.nanoTime();
+            }
+            workspaceHash = VplHashes.sha256(hashes.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return workspaceHash;
+    }
+
+    private static String nameOf(Description description) {
+        return description.getTestClass().getName() + "." + description.getMethodName();
+    }
+}
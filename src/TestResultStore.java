@@ -0,0 +1,262 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Results of the tests of one evaluation in the order in which they were recorded. Only a compact
+ * record of every test is kept (points, outcome, duration and the text of the failure, truncated to
+ * <code>-Dvpl.results.maxMessage</code> characters), never the failure itself, which may reference a
+ * whole console transcript or objects of the submission.
+ * <p>
+ * With <code>-Dvpl.results.spill=n</code> at most n records are held in memory; older records are
+ * written to a temporary file, so suites with tens of thousands of (generated) tests run in a small
+ * heap. The file is deleted when the store is closed.
+ */
+public class TestResultStore implements Closeable {
+    private static final int DEFAULT_MAX_MESSAGE = 10_000;
+
+    private final int maxMessage;
+    private int spillAfter;
+    private final Set<String> tests = new HashSet<>();
+    private final List<Record> records = new ArrayList<>();
+    private Path spillFile;
+    private DataOutputStream spill;
+    private int spilled;
+
+    /**
+     * Creates a store with the limits of <code>-Dvpl.results.maxMessage</code> and
+     * <code>-Dvpl.results.spill</code>
+     */
+    public TestResultStore() {
+        this(Integer.getInteger("vpl.results.maxMessage", DEFAULT_MAX_MESSAGE), Integer.getInteger("vpl.results.spill", 0));
+    }
+
+    /**
+     * @param maxMessage Maximum number of characters of a failure message
+     * @param spillAfter Maximum number of records in memory (0 keeps all records in memory)
+     */
+    public TestResultStore(int maxMessage, int spillAfter) {
+        this.maxMessage = Math.max(100, maxMessage);
+        this.spillAfter = Math.max(0, spillAfter);
+    }
+
+    /**
+     * Records the outcome of a test unless it already has one (the first failure of a test is kept)
+     *
+     * @param testName Class name and method name of the test
+     * @param points   Points of the test
+     * @param failure  The failure or null if the test passed
+     * @param nanos    Duration of the test or -1 if it is not known
+     * @param measured Measured values of a test with a {@link Budget} or null
+     * @return the record or null if the test already had a result
+     */
+    public synchronized Record add(String testName, double points, Throwable failure, long nanos, String measured) {
+        if (!tests.add(testName)) {
+            return null;
+        }
+        String message = failure == null ? null : truncate(failure.toString());
+        Record record = new Record(testName, points, message, nanos < 0 ? -1 : nanos / 1_000_000, measured);
+        records.add(record);
+        if (spillAfter > 0 && records.size() >= spillAfter) {
+            try {
+                spill();
+            } catch (IOException e) {
+                System.err.println("Cannot spill the test results, keeping them in memory: " + e);
+                spillAfter = 0;
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Returns the number of recorded tests
+     */
+    public synchronized int size() {
+        return tests.size();
+    }
+
+    /**
+     * Reads all records in the order in which they were added
+     */
+    public synchronized Cursor read() throws IOException {
+        if (spill != null) {
+            spill.flush();
+        }
+        return new Cursor(spillFile, spilled, new ArrayList<>(records));
+    }
+
+    private String truncate(String message) {
+        if (message.length() <= maxMessage) {
+            return message;
+        }
+        int end = maxMessage;
+        if (Character.isHighSurrogate(message.charAt(end - 1))) {
+            end--;
+        }
+        return message.substring(0, end) + System.lineSeparator() + "... (" + (message.length() - end) + " more characters)";
+    }
+
+    /**
+     * Moves the records from the memory to the end of the file
+     */
+    private void spill() throws IOException {
+        if (spill == null) {
+            spillFile = Files.createTempFile("vpl-results", ".bin");
+            spill = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile)));
+        }
+        for (Record record : records) {
+            record.write(spill);
+        }
+        spilled += records.size();
+        records.clear();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        records.clear();
+        tests.clear();
+        if (spill != null) {
+            spill.close();
+            spill = null;
+            Files.deleteIfExists(spillFile);
+        }
+    }
+
+    /**
+     * Outcome of a single test
+     */
+    public static final class Record {
+        private final String name;
+        private final double points;
+        private final String message;
+        private final long millis;
+        private final String measured;
+
+        Record(String name, double points, String message, long millis, String measured) {
+            this.name = name;
+            this.points = points;
+            this.message = message;
+            this.millis = millis;
+            this.measured = measured;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getPoints() {
+            return points;
+        }
+
+        public boolean isPassed() {
+            return message == null;
+        }
+
+        /**
+         * Returns the (truncated) text of the failure or null if the test has passed
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * Returns the duration in milliseconds or -1 if it is not known
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * Returns the measured values of a test with a {@link Budget} or null
+         */
+        public String getMeasured() {
+            return measured;
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            writeString(out, name);
+            out.writeDouble(points);
+            writeString(out, message);
+            out.writeLong(millis);
+            writeString(out, measured);
+        }
+
+        private static Record read(DataInputStream in) throws IOException {
+            return new Record(readString(in), in.readDouble(), readString(in), in.readLong(), readString(in));
+        }
+
+        // writeUTF is limited to 64 KB
+        private static void writeString(DataOutputStream out, String s) throws IOException {
+            if (s == null) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static String readString(DataInputStream in) throws IOException {
+            int length = in.readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Reads the records of the file and then the records of the memory
+     */
+    public static final class Cursor implements Closeable {
+        private final List<Record> memory;
+        private DataInputStream in;
+        private int remaining;
+        private int index;
+
+        private Cursor(Path file, int spilled, List<Record> memory) throws IOException {
+            this.memory = memory;
+            this.remaining = spilled;
+            if (spilled > 0) {
+                this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+            }
+        }
+
+        /**
+         * Returns the next record or null after the last one
+         */
+        public Record next() throws IOException {
+            if (remaining > 0) {
+                try {
+                    remaining--;
+                    return Record.read(in);
+                } catch (EOFException e) {
+                    throw new IOException("The results file is truncated", e);
+                }
+            }
+            close();
+            return index < memory.size() ? memory.get(index++) : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+                in = null;
+            }
+        }
+    }
+}
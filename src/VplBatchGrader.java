@@ -0,0 +1,223 @@
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Regrades all submissions below a root directory (one subdirectory per student) concurrently and
+ * writes a consolidated report.
+ * <pre>
+ *   java -jar vpl-junit.jar --batch submissions/ [--threads 8] [--timeout 60] [--out grades.csv|grades.json]
+ * </pre>
+ * The submissions must already be compiled. The VPL output of every submission is written to
+ * <code>vpl_evaluation.txt</code> within the respective directory.
+ * <p>
+ * All submissions share the working directory of the JVM (see {@link VplEvaluation}). Tests which
+ * open files with relative paths need <code>-Dvpl.fork=1</code>, which runs them in a child JVM within
+ * the directory of the submission.
+ */
+public class VplBatchGrader {
+    public static final String OPTION = "--batch";
+    public static final String OUTPUT_FILE = "vpl_evaluation.txt";
+    static final String CSV_HEADER = "submission;grade;test;points;passed;message";
+
+    private final Path root;
+    private final int threads;
+    private final long timeoutMillis;
+
+    public VplBatchGrader(Path root, int threads, long timeoutMillis) {
+        this.root = root;
+        this.threads = threads;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Starts the batch grading
+     *
+     * @param args root directory followed by the options
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.out.println("Usage: java -jar vpl-junit.jar " + OPTION + " <root> [--threads n] [--timeout seconds] [--out grades.csv|grades.json]");
+            return;
+        }
+        Path root = Paths.get(args[0]);
+        int threads = Runtime.getRuntime().availableProcessors();
+        long timeout = 60;
+        Path report = root.resolve("grades.csv");
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                System.out.println("Missing value of option " + args[i]);
+                return;
+            }
+            switch (args[i]) {
+                case "--threads":
+                    threads = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--timeout":
+                    timeout = Long.parseLong(args[i + 1]);
+                    break;
+                case "--out":
+                    report = Paths.get(args[i + 1]);
+                    break;
+                default:
+                    System.out.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        VplExitTrap.install();
+        long start = System.currentTimeMillis();
+        List<GradingResult> results = new VplBatchGrader(root, threads, timeout * 1000).gradeAll();
+        if (report.getFileName().toString().endsWith(".json")) {
+            writeJson(results, report);
+        } else {
+            writeCsv(results, report);
+        }
+        System.out.println("Graded " + results.size() + " submissions in " + (System.currentTimeMillis() - start) + " ms -> " + report);
+    }
+
+    /**
+     * Grades every subdirectory of the root directory. The results are in the order of the directories.
+     */
+    public List<GradingResult> gradeAll() throws IOException, InterruptedException {
+        List<Path> submissions = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root, Files::isDirectory)) {
+            for (Path entry : stream) {
+                submissions.add(entry);
+            }
+        }
+        submissions.sort(null);
+
+        ExecutorService pool = Executors.newWorkStealingPool(threads);
+        try {
+            List<Callable<GradingResult>> jobs = new ArrayList<>();
+            for (Path submission : submissions) {
+                jobs.add(() -> grade(submission));
+            }
+
+            List<GradingResult> results = new ArrayList<>();
+            for (Future<GradingResult> future : pool.invokeAll(jobs)) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Grades a single submission and stores its VPL output within the submission
+     */
+    private GradingResult grade(Path submission) throws IOException, InterruptedException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        GradingResult result;
+        try (PrintStream out = new PrintStream(buffer, true, Charset.defaultCharset().name())) {
+            result = new VplEvaluation(submission, new String[0], timeoutMillis).run(out);
+        }
+        Files.write(submission.resolve(OUTPUT_FILE), buffer.toByteArray());
+        return result;
+    }
+
+    /**
+     * Writes one line per test (and per style check) of every submission
+     */
+    static void writeCsv(List<GradingResult> results, Path file) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write(CSV_HEADER);
+            w.newLine();
+            for (GradingResult r : results) {
+                w.write(toCsv(r));
+            }
+        }
+    }
+
+    /**
+     * Writes all results as one JSON array
+     */
+    static void writeJson(List<GradingResult> results, Path file) throws IOException {
+        try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write("[");
+            for (int i = 0; i < results.size(); i++) {
+                w.write(i == 0 ? "\n  " : ",\n  ");
+                w.write(toJson(results.get(i)));
+            }
+            w.write("\n]\n");
+        }
+    }
+
+    /**
+     * Returns the CSV lines (without header) of a single submission
+     */
+    static String toCsv(GradingResult r) {
+        String nl = System.lineSeparator();
+        StringBuilder sb = new StringBuilder();
+        String prefix = csv(r.getSubmission().getFileName().toString()) + ";" + PointsTable.format(r.getGrade()) + ";";
+        if (r.isTimedOut() || r.getError() != null) {
+            sb.append(prefix).append(";;false;").append(csv(r.isTimedOut() ? "timeout" : r.getError())).append(nl);
+        }
+        for (GradingResult.TestResult t : r.getTests()) {
+            sb.append(prefix).append(csv(t.getName())).append(";").append(PointsTable.format(t.getPoints())).append(";").append(t.isPassed())
+                    .append(";").append(csv(t.getMessage())).append(nl);
+        }
+        for (GradingResult.StyleResult s : r.getStyleChecks()) {
+            sb.append(prefix).append(csv(s.getCheck())).append(";").append(-s.getDeduction()).append(";")
+                    .append(s.getViolations() == 0).append(";").append(csv(s.getViolations() + " violations")).append(nl);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns a single submission as JSON object
+     */
+    static String toJson(GradingResult r) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"submission\": ").append(VplJson.quote(r.getSubmission().getFileName().toString()))
+                .append(", \"grade\": ").append(PointsTable.format(r.getGrade()))
+                .append(", \"timedOut\": ").append(r.isTimedOut())
+                .append(", \"error\": ").append(VplJson.quote(r.getError()))
+                .append(", \"tests\": [");
+        List<GradingResult.TestResult> tests = r.getTests();
+        for (int j = 0; j < tests.size(); j++) {
+            GradingResult.TestResult t = tests.get(j);
+            sb.append(j == 0 ? "" : ", ").append("{\"name\": ").append(VplJson.quote(t.getName()))
+                    .append(", \"points\": ").append(PointsTable.format(t.getPoints()))
+                    .append(", \"passed\": ").append(t.isPassed())
+                    .append(", \"message\": ").append(VplJson.quote(t.getMessage())).append("}");
+        }
+        sb.append("], \"styleChecks\": [");
+        List<GradingResult.StyleResult> checks = r.getStyleChecks();
+        for (int j = 0; j < checks.size(); j++) {
+            GradingResult.StyleResult s = checks.get(j);
+            sb.append(j == 0 ? "" : ", ").append("{\"check\": ").append(VplJson.quote(s.getCheck()))
+                    .append(", \"violations\": ").append(s.getViolations())
+                    .append(", \"deduction\": ").append(s.getDeduction()).append("}");
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        return "\"" + value.replace("\"", "\"\"").replace("\r", "").replace("\n", " | ") + "\"";
+    }
+}
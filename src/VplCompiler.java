@@ -0,0 +1,347 @@
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Compiles the sources of a submission within the grader (instead of a separate javac JVM) and keeps
+ * the bytecode in memory. Enabled with <code>-Dvpl.compile=true</code>.
+ * <p>
+ * Compile errors are reported in the VPL comment format.
+ */
+public class VplCompiler {
+    private final Path workDir;
+    private final PrintStream out;
+
+    /**
+     * @param workDir Directory with the sources
+     * @param out     Stream which receives the compile errors
+     */
+    public VplCompiler(Path workDir, PrintStream out) {
+        this.workDir = workDir;
+        this.out = out;
+    }
+
+    /**
+     * Returns true if the grader should compile the sources itself
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean("vpl.compile");
+    }
+
+    /**
+     * Compiles all java files of the directory (including its subdirectories).
+     *
+     * @return bytecode per class name or null if the compilation failed
+     */
+    public Map<String, byte[]> compile() throws IOException {
+        return compile(WorkspaceIndex.scan(workDir).getSourceFiles());
+    }
+
+    /**
+     * Compiles the given sources. If the {@link CompileCache} is enabled, only the sources without a
+     * valid cache entry are compiled.
+     *
+     * @return bytecode per class name or null if the compilation failed
+     */
+    public Map<String, byte[]> compile(List<Path> sources) throws IOException {
+        if (sources.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        // Reuse the bytecode of unchanged compilation units
+        CompileCache cache = CompileCache.open();
+        Map<String, String> unitHashes = new LinkedHashMap<>();
+        Map<String, CompileCache.Entry> reused = new LinkedHashMap<>();
+        if (cache != null) {
+            for (Path source : sources) {
+                unitHashes.put(unitName(source), VplHashes.sha256(source));
+            }
+            for (Map.Entry<String, String> unit : unitHashes.entrySet()) {
+                CompileCache.Entry entry = cache.lookup(unit.getValue(), unitHashes);
+                if (entry != null) {
+                    reused.put(unit.getKey(), entry);
+                }
+            }
+            // A unit depending on a unit which is compiled again has to be compiled again as well
+            // (e.g. because of inlined constants)
+            boolean invalidated = true;
+            while (invalidated) {
+                invalidated = reused.values().removeIf(e -> !reused.keySet().containsAll(e.getDependencies()));
+            }
+        }
+
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        Map<String, String> origins = new HashMap<>();
+        for (Map.Entry<String, CompileCache.Entry> unit : reused.entrySet()) {
+            out.print(unit.getValue().getReport());
+            classes.putAll(unit.getValue().getClasses());
+            for (String classname : unit.getValue().getClasses().keySet()) {
+                origins.put(classname, unit.getKey());
+            }
+        }
+        List<Path> changed = new ArrayList<>();
+        for (Path source : sources) {
+            if (!reused.containsKey(unitName(source))) {
+                changed.add(source);
+            }
+        }
+        if (changed.isEmpty()) {
+            return classes;
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            out.println("Comment :=>> Cannot compile, the grader is not running on a JDK.");
+            return null;
+        }
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        Map<String, byte[]> compiled = new LinkedHashMap<>();
+        Map<String, StringBuilder> reports = new HashMap<>();
+        try (StandardJavaFileManager standard = compiler.getStandardFileManager(diagnostics, null, Charset.defaultCharset());
+             MemoryFileManager files = new MemoryFileManager(standard, compiled, origins, classes)) {
+            List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"), "-Xlint:deprecation");
+            Iterable<? extends JavaFileObject> units = standard.getJavaFileObjectsFromFiles(toFiles(changed));
+            boolean success = compiler.getTask(null, files, diagnostics, options, null, units).call();
+
+            report(diagnostics.getDiagnostics(), reports);
+            if (!success) {
+                return null;
+            }
+        }
+
+        if (cache != null) {
+            store(changed, cache, compiled, origins, unitHashes, reports);
+        }
+        classes.putAll(compiled);
+        return classes;
+    }
+
+    /**
+     * Stores every compiled unit together with the hashes of the units it depends on. These are the
+     * units of all classes referenced by its bytecode and of all top level types named within its source.
+     */
+    private void store(List<Path> sources, CompileCache cache, Map<String, byte[]> compiled,
+                              Map<String, String> origins, Map<String, String> unitHashes,
+                              Map<String, StringBuilder> reports) throws IOException {
+        Map<String, String> typeNames = new HashMap<>();
+        for (Map.Entry<String, String> origin : origins.entrySet()) {
+            String classname = origin.getKey();
+            if (classname.indexOf('$') < 0) {
+                typeNames.put(classname.substring(classname.lastIndexOf('.') + 1), origin.getValue());
+            }
+        }
+
+        for (Path source : sources) {
+            String unit = unitName(source);
+            Map<String, byte[]> unitClasses = new LinkedHashMap<>();
+            Set<String> dependencies = new TreeSet<>();
+            for (Map.Entry<String, byte[]> c : compiled.entrySet()) {
+                if (unit.equals(origins.get(c.getKey()))) {
+                    unitClasses.put(c.getKey(), c.getValue());
+                    for (String referenced : ClassFileInfo.parse(c.getValue()).getReferencedClasses()) {
+                        addIfKnown(dependencies, origins.get(referenced));
+                    }
+                }
+            }
+            for (String identifier : new String(Files.readAllBytes(source), Charset.defaultCharset()).split("\\W+")) {
+                addIfKnown(dependencies, typeNames.get(identifier));
+            }
+            dependencies.remove(unit);
+
+            Map<String, String> hashes = new LinkedHashMap<>();
+            for (String dependency : dependencies) {
+                hashes.put(dependency, unitHashes.get(dependency));
+            }
+            StringBuilder report = reports.get(unit);
+            cache.store(unitHashes.get(unit), hashes, unitClasses, report == null ? "" : report.toString());
+        }
+    }
+
+    private static void addIfKnown(Set<String> units, String unit) {
+        if (unit != null) {
+            units.add(unit);
+        }
+    }
+
+    /**
+     * Prints errors (and warnings) as VPL comments and collects them per source file
+     */
+    private void report(List<Diagnostic<? extends JavaFileObject>> diagnostics, Map<String, StringBuilder> reports) {
+        String nl = System.lineSeparator();
+        for (Diagnostic<? extends JavaFileObject> d : diagnostics) {
+            if (d.getKind() != Diagnostic.Kind.ERROR && d.getKind() != Diagnostic.Kind.WARNING
+                    && d.getKind() != Diagnostic.Kind.MANDATORY_WARNING) {
+                continue;
+            }
+            String source = d.getSource() == null ? null : unitName(d.getSource().toUri());
+            String file = source == null ? "" : source + ":" + d.getLineNumber() + ": ";
+            String kind = d.getKind() == Diagnostic.Kind.ERROR ? "error" : "warning";
+            String[] lines = d.getMessage(null).split("\\r?\\n");
+            StringBuilder text = new StringBuilder();
+            text.append("Comment :=>> ").append(file).append(kind).append(": ").append(lines[0]).append(nl);
+            if (lines.length > 1) {
+                text.append("<|--").append(nl);
+                for (int i = 1; i < lines.length; i++) {
+                    text.append(">").append(lines[i]).append(nl);
+                }
+                text.append("--|>").append(nl);
+            }
+            out.print(text);
+            if (source != null) {
+                reports.computeIfAbsent(source, k -> new StringBuilder()).append(text);
+            }
+        }
+    }
+
+    private static List<File> toFiles(List<Path> paths) {
+        List<File> files = new ArrayList<>();
+        for (Path p : paths) {
+            files.add(p.toFile());
+        }
+        return files;
+    }
+
+    /**
+     * Names a source by its path within the submission (e.g. com/foo/Bar.java)
+     */
+    private String unitName(Path source) {
+        Path relative = source.isAbsolute() ? workDir.toAbsolutePath().normalize().relativize(source.normalize()) : workDir.relativize(source);
+        return relative.toString().replace(File.separatorChar, '/');
+    }
+
+    private String unitName(URI uri) {
+        if ("file".equals(uri.getScheme())) {
+            return unitName(Paths.get(uri));
+        }
+        String path = uri.getPath();
+        return path == null ? uri.toString() : path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Keeps all generated class files in memory and provides the classes of the reused compilation
+     * units on the class path
+     */
+    class MemoryFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+        private final Map<String, byte[]> classes;
+        private final Map<String, String> origins;
+        private final Map<String, byte[]> classpath;
+
+        /**
+         * @param classes   Receives the generated classes
+         * @param origins   Receives the source file name of every generated class
+         * @param classpath Additional classes for the class path
+         */
+        MemoryFileManager(JavaFileManager fileManager, Map<String, byte[]> classes, Map<String, String> origins,
+                          Map<String, byte[]> classpath) {
+            super(fileManager);
+            this.classes = classes;
+            this.origins = origins;
+            this.classpath = classpath;
+        }
+
+        @Override
+        public Iterable<JavaFileObject> list(Location location, String packageName, Set<JavaFileObject.Kind> kinds,
+                                             boolean recurse) throws IOException {
+            Iterable<JavaFileObject> files = super.list(location, packageName, kinds, recurse);
+            if (location != StandardLocation.CLASS_PATH || !kinds.contains(JavaFileObject.Kind.CLASS) || classpath.isEmpty()) {
+                return files;
+            }
+            List<JavaFileObject> result = new ArrayList<>();
+            for (Map.Entry<String, byte[]> c : classpath.entrySet()) {
+                String classname = c.getKey();
+                String pkg = classname.lastIndexOf('.') < 0 ? "" : classname.substring(0, classname.lastIndexOf('.'));
+                if (pkg.equals(packageName) || (recurse && pkg.startsWith(packageName.isEmpty() ? "" : packageName + "."))) {
+                    result.add(new ClassFile(classname, c.getValue()));
+                }
+            }
+            for (JavaFileObject file : files) {
+                result.add(file);
+            }
+            return result;
+        }
+
+        @Override
+        public String inferBinaryName(Location location, JavaFileObject file) {
+            if (file instanceof ClassFile) {
+                return ((ClassFile) file).classname;
+            }
+            return super.inferBinaryName(location, file);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+                                                   FileObject sibling) throws IOException {
+            if (kind != JavaFileObject.Kind.CLASS) {
+                return super.getJavaFileForOutput(location, className, kind, sibling);
+            }
+            if (sibling != null) {
+                synchronized (classes) {
+                    origins.put(className, unitName(sibling.toUri()));
+                }
+            }
+            return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    return new ByteArrayOutputStream() {
+                        @Override
+                        public void close() throws IOException {
+                            super.close();
+                            synchronized (classes) {
+                                classes.put(className, toByteArray());
+                            }
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+    /**
+     * A class file from memory
+     */
+    private static class ClassFile extends SimpleJavaFileObject {
+        private final String classname;
+        private final byte[] bytecode;
+
+        ClassFile(String classname, byte[] bytecode) {
+            super(URI.create("mem:///" + classname.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+            this.classname = classname;
+            this.bytecode = bytecode;
+        }
+
+        @Override
+        public InputStream openInputStream() {
+            return new ByteArrayInputStream(bytecode);
+        }
+    }
+}
@@ -0,0 +1,355 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Estimates the time complexity of a student method by running it and a reference implementation on
+ * geometrically growing inputs, and fails the calling test if the student method grows faster than
+ * expected or is much slower than the reference:
+ * <pre>
+ *     new VplComplexityChecker&lt;int[]&gt;((n, random) -&gt; random.ints(n).toArray())
+ *             .sizes(1000, 2, 8)
+ *             .expect(VplComplexityChecker.Complexity.LINEARITHMIC)
+ *             .maxRatio(5)
+ *             .assertComplexity(Sorter::sort, Reference::sort);
+ * </pre>
+ * Every size is measured with the CPU time of the current thread (which does not depend on the load of
+ * the host) after a warmup, the median of several repetitions counts. The complexity class whose curve
+ * fits the measured times best (least squares of the logarithms) is the estimated class.
+ *
+ * @param <T> Type of the input
+ */
+public class VplComplexityChecker<T> {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Times below this are dominated by the resolution of the clock and are not used for the fit
+     */
+    private static final double NOISE_MILLIS = 0.05;
+
+    private final InputGenerator<T> generator;
+    private long seed = 0x5EEDL;
+    private int firstSize = 1000;
+    private int factor = 2;
+    private int steps = 8;
+    private int warmup = 2;
+    private int repetitions = 5;
+    private double maxMillis = 1000;
+    private Complexity expected = null;
+    private double maxRatio = Double.POSITIVE_INFINITY;
+
+    /**
+     * Creates a checker for inputs of the given generator
+     *
+     * @param generator Produces an input of the given size
+     */
+    public VplComplexityChecker(InputGenerator<T> generator) {
+        this.generator = generator;
+    }
+
+    /**
+     * Seed of the random generator. Student and reference method get the same inputs.
+     */
+    public VplComplexityChecker<T> seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Sizes of the inputs: <code>first, first * factor, first * factor^2, ...</code>
+     *
+     * @param first  Smallest size (at least 2, since log(log n) is used for n)
+     * @param factor Growth of the size from one step to the next
+     * @param steps  Number of sizes (at least 3)
+     */
+    public VplComplexityChecker<T> sizes(int first, int factor, int steps) {
+        this.firstSize = Math.max(2, first);
+        this.factor = Math.max(2, factor);
+        this.steps = Math.max(3, steps);
+        return this;
+    }
+
+    /**
+     * Number of unmeasured runs before each size is measured
+     */
+    public VplComplexityChecker<T> warmup(int warmup) {
+        this.warmup = Math.max(0, warmup);
+        return this;
+    }
+
+    /**
+     * Number of measured runs per size, the median counts
+     */
+    public VplComplexityChecker<T> repetitions(int repetitions) {
+        this.repetitions = Math.max(1, repetitions);
+        return this;
+    }
+
+    /**
+     * Larger sizes are skipped once a single run of either method takes longer (but at least 3 sizes
+     * are measured). A size whose warmup takes longer is measured only once.
+     */
+    public VplComplexityChecker<T> maxMillis(double maxMillis) {
+        this.maxMillis = maxMillis;
+        return this;
+    }
+
+    /**
+     * Worst complexity class which is accepted
+     */
+    public VplComplexityChecker<T> expect(Complexity expected) {
+        this.expected = expected;
+        return this;
+    }
+
+    /**
+     * Maximum factor by which the student method may be slower than the reference at the largest size
+     */
+    public VplComplexityChecker<T> maxRatio(double maxRatio) {
+        this.maxRatio = maxRatio;
+        return this;
+    }
+
+    /**
+     * Measures both methods and fails if the estimated complexity class of the student method is worse
+     * than the expected one or if it is slower than allowed.
+     *
+     * @param student   Method of the submission
+     * @param reference Method of the teacher
+     * @return the measurement (e.g. to award points in a further test)
+     */
+    public Result assertComplexity(Consumer<T> student, Consumer<T> reference) {
+        Result result = measure(student, reference);
+        if (expected != null && result.getComplexity().compareTo(expected) > 0) {
+            fail("The running time grows like " + result.getComplexity() + ", expected at most " + expected
+                    + System.lineSeparator() + result);
+        }
+        if (result.getRatio() > maxRatio) {
+            fail(String.format(Locale.ROOT, "The solution is %.1f times slower than the reference (allowed: %.1f)",
+                    result.getRatio(), maxRatio) + System.lineSeparator() + result);
+        }
+        return result;
+    }
+
+    /**
+     * Measures both methods without judging the result
+     */
+    public Result measure(Consumer<T> student, Consumer<T> reference) {
+        List<Integer> sizes = new ArrayList<>();
+        List<Double> studentMillis = new ArrayList<>();
+        List<Double> referenceMillis = new ArrayList<>();
+        long size = firstSize;
+        for (int step = 0; step < steps && size <= Integer.MAX_VALUE; step++, size *= factor) {
+            int n = (int) size;
+            double s = measure(student, n);
+            double r = measure(reference, n);
+            sizes.add(n);
+            studentMillis.add(s);
+            referenceMillis.add(r);
+            if (step >= 2 && Math.max(s, r) > maxMillis) {
+                break;
+            }
+        }
+        return new Result(sizes, studentMillis, referenceMillis);
+    }
+
+    /**
+     * Returns the median CPU time of the method for inputs of the given size in milliseconds
+     */
+    private double measure(Consumer<T> method, int n) {
+        Random random = new Random(seed ^ n);
+        int runs = repetitions;
+        for (int i = 0; i < warmup; i++) {
+            T input = generator.generate(n, random);
+            long start = cpuTime();
+            method.accept(input);
+            if ((cpuTime() - start) / 1e6 > maxMillis) {
+                // Too slow to be repeated, the JIT had enough time anyway
+                runs = 1;
+                break;
+            }
+        }
+        long[] nanos = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            T input = generator.generate(n, random);
+            long start = cpuTime();
+            method.accept(input);
+            nanos[i] = cpuTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos[nanos.length / 2] / 1e6;
+    }
+
+    private static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * Produces the input of a given size
+     */
+    @FunctionalInterface
+    public interface InputGenerator<T> {
+        T generate(int n, Random random);
+    }
+
+    /**
+     * Complexity classes from the best to the worst
+     */
+    public enum Complexity {
+        CONSTANT("O(1)"),
+        LOGARITHMIC("O(log n)"),
+        LINEAR("O(n)"),
+        LINEARITHMIC("O(n log n)"),
+        QUADRATIC("O(n^2)"),
+        CUBIC("O(n^3)");
+
+        private final String notation;
+
+        Complexity(String notation) {
+            this.notation = notation;
+        }
+
+        /**
+         * Returns the logarithm of the growth function at n
+         */
+        double logOf(double n) {
+            switch (this) {
+                case CONSTANT:
+                    return 0;
+                case LOGARITHMIC:
+                    return Math.log(Math.log(n));
+                case LINEAR:
+                    return Math.log(n);
+                case LINEARITHMIC:
+                    return Math.log(n) + Math.log(Math.log(n));
+                case QUADRATIC:
+                    return 2 * Math.log(n);
+                default:
+                    return 3 * Math.log(n);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return notation;
+        }
+    }
+
+    /**
+     * Measured times and the estimated complexity of the student method
+     */
+    public static class Result {
+        private final List<Integer> sizes;
+        private final List<Double> studentMillis;
+        private final List<Double> referenceMillis;
+        private final Complexity complexity;
+        private final double exponent;
+
+        Result(List<Integer> sizes, List<Double> studentMillis, List<Double> referenceMillis) {
+            this.sizes = sizes;
+            this.studentMillis = studentMillis;
+            this.referenceMillis = referenceMillis;
+
+            // Fit only the sizes above the resolution of the clock (the larger ones, if there are too few)
+            int from = 0;
+            while (from < sizes.size() - 3 && studentMillis.get(from) < NOISE_MILLIS) {
+                from++;
+            }
+            double bestError = Double.POSITIVE_INFINITY;
+            Complexity best = Complexity.CONSTANT;
+            for (Complexity c : Complexity.values()) {
+                double error = fitError(c, from);
+                if (error < bestError) {
+                    bestError = error;
+                    best = c;
+                }
+            }
+            this.complexity = best;
+            this.exponent = slope(from);
+        }
+
+        /**
+         * Sum of squared residuals of log(t) = log(a) + log(f(n)) with the best a
+         */
+        private double fitError(Complexity c, int from) {
+            int count = sizes.size() - from;
+            double offset = 0;
+            for (int i = from; i < sizes.size(); i++) {
+                offset += logMillis(i) - c.logOf(sizes.get(i));
+            }
+            offset /= count;
+            double error = 0;
+            for (int i = from; i < sizes.size(); i++) {
+                double residual = logMillis(i) - offset - c.logOf(sizes.get(i));
+                error += residual * residual;
+            }
+            return error;
+        }
+
+        /**
+         * Slope of the regression line of log(t) over log(n), i.e. the t ~ n^k exponent
+         */
+        private double slope(int from) {
+            int count = sizes.size() - from;
+            double meanX = 0;
+            double meanY = 0;
+            for (int i = from; i < sizes.size(); i++) {
+                meanX += Math.log(sizes.get(i));
+                meanY += logMillis(i);
+            }
+            meanX /= count;
+            meanY /= count;
+            double covariance = 0;
+            double variance = 0;
+            for (int i = from; i < sizes.size(); i++) {
+                double dx = Math.log(sizes.get(i)) - meanX;
+                covariance += dx * (logMillis(i) - meanY);
+                variance += dx * dx;
+            }
+            return variance == 0 ? 0 : covariance / variance;
+        }
+
+        private double logMillis(int i) {
+            return Math.log(Math.max(studentMillis.get(i), 1e-6));
+        }
+
+        /**
+         * Returns the complexity class which fits the times of the student method best
+         */
+        public Complexity getComplexity() {
+            return complexity;
+        }
+
+        /**
+         * Returns k of the best fitting power law t ~ n^k
+         */
+        public double getExponent() {
+            return exponent;
+        }
+
+        /**
+         * Returns how many times slower the student method is at the largest size
+         */
+        public double getRatio() {
+            int last = sizes.size() - 1;
+            return studentMillis.get(last) / Math.max(referenceMillis.get(last), 1e-6);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format(Locale.ROOT, "Estimated %s (t ~ n^%.2f)", complexity, exponent));
+            for (int i = 0; i < sizes.size(); i++) {
+                sb.append(System.lineSeparator()).append(String.format(Locale.ROOT, "n = %d: %.3f ms (reference %.3f ms)",
+                        sizes.get(i), studentMillis.get(i), referenceMillis.get(i)));
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,567 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Runs many randomized console inputs against a student program and a reference implementation and
+ * compares their outputs. If the outputs differ, the failing input is shrunk to a minimal
+ * counterexample which is reported as failure of the calling test (and thus within the
+ * <code>Comment :=>></code> output of the grader).
+ * <p>
+ * The programs are executed by a few {@link VplFuzzWorker} processes which are reused for all trials,
+ * so hundreds of trials only cost a handful of JVM startups:
+ * <pre>
+ *     new VplConsoleFuzzer("Schaltjahr", "SchaltjahrReference")
+ *             .seed(42)
+ *             .trials(300)
+ *             .assertEquivalent(InputGenerator.integers(-10000, 10000));
+ * </pre>
+ */
+public class VplConsoleFuzzer {
+    private final String studentClass;
+    private final String referenceClass;
+    private String[] args = new String[0];
+    private long seed = 0x5EEDL;
+    private int trials = 100;
+    private int batchSize = 25;
+    private int workers = 2;
+    private long timeoutMillis = 2000;
+    private int maxShrinkRounds = 100;
+    private boolean compareExitStatus = false;
+
+    /**
+     * Creates a fuzzer which compares the student class against the reference class
+     *
+     * @param studentClass   Class with a main method which is tested
+     * @param referenceClass Class with a main method which produces the expected output
+     */
+    public VplConsoleFuzzer(String studentClass, String referenceClass) {
+        this.studentClass = studentClass;
+        this.referenceClass = referenceClass;
+    }
+
+    /**
+     * Arguments which are handed over to the main method of both programs
+     */
+    public VplConsoleFuzzer args(String... args) {
+        this.args = args;
+        return this;
+    }
+
+    /**
+     * Seed of the random generator. The same seed produces the same inputs.
+     */
+    public VplConsoleFuzzer seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Number of random inputs which are tried
+     */
+    public VplConsoleFuzzer trials(int trials) {
+        this.trials = trials;
+        return this;
+    }
+
+    /**
+     * Number of inputs which are sent to a worker at once
+     */
+    public VplConsoleFuzzer batchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+        return this;
+    }
+
+    /**
+     * Number of worker processes per program
+     */
+    public VplConsoleFuzzer workers(int workers) {
+        this.workers = Math.max(1, workers);
+        return this;
+    }
+
+    /**
+     * Maximum time a single run of a program may take
+     */
+    public VplConsoleFuzzer timeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    /**
+     * Maximum number of shrink rounds for a failing input
+     */
+    public VplConsoleFuzzer maxShrinkRounds(int maxShrinkRounds) {
+        this.maxShrinkRounds = maxShrinkRounds;
+        return this;
+    }
+
+    /**
+     * If true, then the exit status of both programs has to be equal as well
+     */
+    public VplConsoleFuzzer compareExitStatus(boolean compareExitStatus) {
+        this.compareExitStatus = compareExitStatus;
+        return this;
+    }
+
+    /**
+     * Runs the configured number of trials and fails with a minimal counterexample if the student
+     * program behaves differently than the reference implementation.
+     *
+     * @param generator Produces the lines which are entered into the console of both programs
+     */
+    public void assertEquivalent(InputGenerator generator) throws IOException, InterruptedException {
+        Random random = new Random(seed);
+        List<List<String>> inputs = new ArrayList<>();
+        for (int i = 0; i < trials; i++) {
+            inputs.add(generator.generate(random));
+        }
+
+        ExecutorService executor = VplThreads.newExecutor("vpl-fuzz");
+        WorkerPool student = new WorkerPool(studentClass, executor);
+        WorkerPool reference = new WorkerPool(referenceClass, executor);
+        try {
+            List<List<String>> failing = findFailing(inputs, student, reference);
+            if (failing.isEmpty()) {
+                return;
+            }
+
+            int trial = inputs.indexOf(failing.get(0)) + 1;
+            List<String> counterexample = failing.get(0);
+            int steps = 0;
+            List<List<String>> candidates;
+            while (steps < maxShrinkRounds && !(candidates = shrink(counterexample)).isEmpty()) {
+                List<List<String>> stillFailing = findFailing(candidates, student, reference);
+                if (stillFailing.isEmpty()) {
+                    break;
+                }
+                counterexample = stillFailing.get(0);
+                steps++;
+            }
+
+            fail(report(trial, steps, counterexample,
+                    reference.run(Collections.singletonList(counterexample)).get(0),
+                    student.run(Collections.singletonList(counterexample)).get(0)));
+        } finally {
+            student.close();
+            reference.close();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the inputs against both programs (in parallel) and returns the inputs with different
+     * behaviour in their original order.
+     */
+    private List<List<String>> findFailing(List<List<String>> inputs, WorkerPool student, WorkerPool reference)
+            throws IOException, InterruptedException {
+        Future<List<Outcome>> expected = reference.submit(inputs);
+        Future<List<Outcome>> actual = student.submit(inputs);
+        List<Outcome> expectedOutcomes = get(expected);
+        List<Outcome> actualOutcomes = get(actual);
+
+        List<List<String>> failing = new ArrayList<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            if (!expectedOutcomes.get(i).sameAs(actualOutcomes.get(i), compareExitStatus)) {
+                failing.add(inputs.get(i));
+            }
+        }
+        return failing;
+    }
+
+    /**
+     * Produces smaller variants of the input: first without chunks of lines, then with simpler lines.
+     */
+    static List<List<String>> shrink(List<String> input) {
+        List<List<String>> candidates = new ArrayList<>();
+
+        // Remove chunks of lines (halves first)
+        for (int chunk = input.size() / 2; chunk >= 1; chunk /= 2) {
+            for (int start = 0; start + chunk <= input.size(); start += chunk) {
+                List<String> candidate = new ArrayList<>(input.subList(0, start));
+                candidate.addAll(input.subList(start + chunk, input.size()));
+                candidates.add(candidate);
+            }
+        }
+
+        // Simplify single lines
+        for (int i = 0; i < input.size(); i++) {
+            for (String simpler : shrinkLine(input.get(i))) {
+                List<String> candidate = new ArrayList<>(input);
+                candidate.set(i, simpler);
+                candidates.add(candidate);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Simpler variants of a single line. Numbers move towards 0, text gets shorter.
+     */
+    private static List<String> shrinkLine(String line) {
+        List<String> simpler = new ArrayList<>();
+        try {
+            long value = Long.parseLong(line.trim());
+            if (value != 0) {
+                simpler.add("0");
+                if (value < 0) {
+                    simpler.add(Long.toString(-value));
+                }
+                if (Math.abs(value) > 1) {
+                    simpler.add(Long.toString(value / 2));
+                    simpler.add(Long.toString(value - Long.signum(value)));
+                }
+            }
+            return simpler;
+        } catch (NumberFormatException e) {
+            // no number -> shrink the text
+        }
+
+        if (!line.isEmpty()) {
+            simpler.add("");
+            if (line.length() > 1) {
+                simpler.add(line.substring(0, line.length() / 2));
+                simpler.add(line.substring(1));
+                simpler.add(line.substring(0, line.length() - 1));
+            }
+        }
+        return simpler;
+    }
+
+    /**
+     * Builds the failure message with the counterexample and both outputs
+     */
+    private String report(int trial, int steps, List<String> input, Outcome expected, Outcome actual) {
+        String nl = System.lineSeparator();
+        StringBuilder sb = new StringBuilder();
+        sb.append("Counterexample found in trial ").append(trial).append(" of ").append(trials)
+                .append(" (seed ").append(seed).append(", shrunk in ").append(steps).append(" steps)").append(nl);
+        if (args.length > 0) {
+            sb.append("> arguments: ").append(Arrays.toString(args)).append(nl);
+        }
+        sb.append("> input:").append(nl);
+        for (String line : input) {
+            sb.append(">   ").append(line).append(nl);
+        }
+        sb.append("> expected output").append(compareExitStatus ? " (exit " + expected.status + ")" : "").append(":").append(nl);
+        for (String line : expected.output) {
+            sb.append(">   ").append(line).append(nl);
+        }
+        sb.append("> actual output").append(compareExitStatus ? " (exit " + actual.status + ")" : "").append(":").append(nl);
+        for (String line : actual.output) {
+            sb.append(">   ").append(line).append(nl);
+        }
+        for (String line : actual.error) {
+            sb.append("> ! ").append(line).append(nl);
+        }
+        return sb.toString();
+    }
+
+    private static <T> T get(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Generates the console input for a single trial
+     */
+    @FunctionalInterface
+    public interface InputGenerator {
+
+        /**
+         * Returns the lines which are entered into the console
+         */
+        List<String> generate(Random random);
+
+        /**
+         * A single line with an integer within the given bounds (inclusive)
+         */
+        static InputGenerator integers(int min, int max) {
+            return random -> Collections.singletonList(Long.toString(min + (long) (random.nextDouble() * ((long) max - min + 1))));
+        }
+
+        /**
+         * A single line which is one of the given values
+         */
+        static InputGenerator oneOf(String... values) {
+            return random -> Collections.singletonList(values[random.nextInt(values.length)]);
+        }
+
+        /**
+         * A single line of random characters from the alphabet
+         */
+        static InputGenerator strings(String alphabet, int minLength, int maxLength) {
+            return random -> {
+                int length = minLength + random.nextInt(maxLength - minLength + 1);
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < length; i++) {
+                    sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                return Collections.singletonList(sb.toString());
+            };
+        }
+
+        /**
+         * The lines of all generators one after another (e.g. number, operator, number)
+         */
+        static InputGenerator sequence(InputGenerator... generators) {
+            return random -> {
+                List<String> lines = new ArrayList<>();
+                for (InputGenerator g : generators) {
+                    lines.addAll(g.generate(random));
+                }
+                return lines;
+            };
+        }
+
+        /**
+         * Repeats the generator a random number of times
+         */
+        static InputGenerator repeat(InputGenerator generator, int min, int max) {
+            return random -> {
+                int count = min + random.nextInt(max - min + 1);
+                List<String> lines = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    lines.addAll(generator.generate(random));
+                }
+                return lines;
+            };
+        }
+    }
+
+    /**
+     * Observed behaviour of a program for one input
+     */
+    static class Outcome {
+        final List<String> output = new ArrayList<>();
+        final List<String> error = new ArrayList<>();
+        String status = "0";
+
+        boolean sameAs(Outcome other, boolean compareStatus) {
+            return output.equals(other.output) && (!compareStatus || status.equals(other.status));
+        }
+    }
+
+    /**
+     * Worker processes for one program. Inputs are split into batches which are processed in parallel
+     * by the workers; already known outcomes are taken from a cache.
+     */
+    private class WorkerPool {
+        private final String classname;
+        private final ExecutorService executor;
+        private final BlockingQueue<Worker> idle = new LinkedBlockingQueue<>();
+        private final Map<List<String>, Outcome> known = Collections.synchronizedMap(new HashMap<>());
+        private final List<Worker> all = Collections.synchronizedList(new ArrayList<>());
+
+        WorkerPool(String classname, ExecutorService executor) {
+            this.classname = classname;
+            this.executor = executor;
+        }
+
+        Future<List<Outcome>> submit(List<List<String>> inputs) {
+            return executor.submit(() -> run(inputs));
+        }
+
+        List<Outcome> run(List<List<String>> inputs) throws IOException, InterruptedException {
+            Set<List<String>> missing = new LinkedHashSet<>(inputs);
+            synchronized (known) {
+                missing.removeAll(known.keySet());
+            }
+            List<List<String>> unknown = new ArrayList<>(missing);
+
+            List<Future<?>> batches = new ArrayList<>();
+            for (int start = 0; start < unknown.size(); start += batchSize) {
+                List<List<String>> batch = unknown.subList(start, Math.min(unknown.size(), start + batchSize));
+                batches.add(executor.submit(() -> {
+                    runBatch(batch);
+                    return null;
+                }));
+            }
+            for (Future<?> batch : batches) {
+                get(batch);
+            }
+
+            List<Outcome> outcomes = new ArrayList<>();
+            for (List<String> input : inputs) {
+                outcomes.add(known.get(input));
+            }
+            return outcomes;
+        }
+
+        private void runBatch(List<List<String>> batch) throws IOException, InterruptedException {
+            Worker worker = acquire();
+            try {
+                for (List<String> input : batch) {
+                    Outcome outcome = worker.run(input);
+                    if (!worker.isUsable()) {
+                        // The program terminated the worker (System.exit) or timed out -> start a new one
+                        worker.close();
+                        all.remove(worker);
+                        worker = new Worker(classname);
+                        all.add(worker);
+                    }
+                    known.put(input, outcome);
+                }
+            } finally {
+                if (worker.isUsable() && all.contains(worker)) {
+                    idle.put(worker);
+                } else {
+                    // e.g. its replacement could not be started -> a later batch starts a new worker
+                    worker.close();
+                    all.remove(worker);
+                }
+            }
+        }
+
+        private Worker acquire() throws IOException, InterruptedException {
+            while (true) {
+                synchronized (all) {
+                    if (idle.isEmpty() && all.size() < workers) {
+                        Worker w = new Worker(classname);
+                        all.add(w);
+                        return w;
+                    }
+                }
+                // Polls, since a busy worker may be dropped instead of returned
+                Worker w = idle.poll(100, TimeUnit.MILLISECONDS);
+                if (w != null) {
+                    return w;
+                }
+            }
+        }
+
+        void close() {
+            synchronized (all) {
+                for (Worker w : all) {
+                    w.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * A single {@link VplFuzzWorker} process
+     */
+    private class Worker {
+        private final Process process;
+        private final BufferedWriter control;
+        private final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        private boolean timedOut = false;
+
+        Worker(String classname) throws IOException {
+            List<String> jvmOptions = Arrays.asList(VplExitTrap.jvmOptions());
+            String[] workerArgs = new String[args.length + 1];
+            workerArgs[0] = classname;
+            System.arraycopy(args, 0, workerArgs, 1, args.length);
+
+            ProcessBuilder pb = new ProcessBuilder(VplConsoleSimulator.buildCommandLine(jvmOptions, "VplFuzzWorker", workerArgs));
+            pb.directory(VplGradingContext.getProcessDirectory());
+            pb.redirectErrorStream(true);
+            this.process = pb.start();
+            VplGradingContext.childProcessStarted(classname, this.process);
+            this.control = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), Charset.defaultCharset()));
+
+            VplThreads.start("vpl-fuzz-pump", () -> {
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(process.getInputStream(), Charset.defaultCharset()))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        lines.add(line);
+                    }
+                } catch (IOException e) {
+                    // process is gone
+                }
+                lines.add(VplFuzzWorker.END);
+            });
+        }
+
+        /**
+         * Returns false if the worker has to be replaced: it was killed after a timeout (its output may
+         * still contain lines of the killed trial) or the program terminated it
+         */
+        boolean isUsable() {
+            return !timedOut && process.isAlive();
+        }
+
+        Outcome run(List<String> input) throws IOException, InterruptedException {
+            Outcome outcome = new Outcome();
+            try {
+                control.write(VplFuzzWorker.TRIAL + input.size());
+                control.newLine();
+                for (String line : input) {
+                    control.write(line);
+                    control.newLine();
+                }
+                control.flush();
+            } catch (IOException e) {
+                // worker is dead -> the outcome is collected below
+            }
+
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (true) {
+                String line = lines.poll(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                if (line == null) {
+                    // destroyForcibly is asynchronous, so wait till the worker is really gone
+                    timedOut = true;
+                    process.destroyForcibly().waitFor();
+                    outcome.status = "timeout";
+                    outcome.error.add("Timeout after " + timeoutMillis + " ms");
+                    return outcome;
+                }
+                if (line.equals(VplFuzzWorker.END)) {
+                    // Worker terminated by the program
+                    process.waitFor();
+                    outcome.status = Integer.toString(process.exitValue());
+                    return outcome;
+                }
+                if (line.startsWith(VplFuzzWorker.END)) {
+                    outcome.status = line.substring(VplFuzzWorker.END.length());
+                    return outcome;
+                }
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.charAt(0) == VplFuzzWorker.OUT) {
+                    outcome.output.add(line.substring(1));
+                } else if (line.charAt(0) == VplFuzzWorker.ERR) {
+                    outcome.error.add(line.substring(1));
+                }
+            }
+        }
+
+        void close() {
+            try {
+                control.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            process.destroy();
+        }
+    }
+}
@@ -1,8 +1,15 @@
 import java.io.*;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
+import java.util.function.LongConsumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -12,16 +19,29 @@ import static org.junit.Assert.fail;
 
 /**
  * Simulates console input and output
+ * <p>
+ * Every entry of the console dialog is timestamped when the line arrives (or is entered). The time
+ * from every input till the next line of output is the response latency of the program, which can be
+ * checked with {@link #assertRespondsWithin(long)} and {@link #assertResponsesWithin(double, long)}.
+ * <code>-Dvpl.latency.scale=2</code> relaxes all latency limits for slow hosts.
  *
  * @author gue
  */
 public class VplConsoleSimulator {
+    private final String classname;
     private Process process;
-    private BufferedReader inReader;
+    private LinePump inReader;
     private BufferedWriter outWriter;
-    private BufferedReader errReader;
+    private LinePump errReader;
     private Boolean immideateLogToConsole = false;
-    private List<String> consolewindow = new ArrayList<>();
+    private List<Entry> consolewindow = new ArrayList<>();
+
+    private final long startNanos = System.nanoTime();
+    private final Object responses = new Object();
+    private final List<Long> latencies = new ArrayList<>();
+    private long inputNanos = -1;
+    private long responseNanos = -1;
+    private long firstOutputNanos = -1;
 
     /**
      * Starts a JVM with the given class. The input and output are redirected, so we can use them
@@ -32,35 +52,68 @@ public class VplConsoleSimulator {
      *                  available within the main agruments of the class under test
      */
     public VplConsoleSimulator(String classname, String... args) {
+        this(buildCommandLine(new ArrayList<>(), VplGradingContext.getClasspath(), classname, args), classname);
+    }
 
-        String jvmLocation;
-        if (System.getProperty("os.name").startsWith("Win")) {
-            jvmLocation = System.getProperties().getProperty("java.home") + File.separator + "bin" + File.separator + "java.exe";
-        } else {
-            jvmLocation = System.getProperties().getProperty("java.home") + File.separator + "bin" + File.separator + "java";
-        }
-
-        String currentClasspath = System.getProperty("java.class.path").toString();
-
-
+    /**
+     * Starts the given command line (e.g. a JVM with another classpath, see {@link VplReferenceOracle})
+     *
+     * @param command   Command line of the JVM
+     * @param classname Class which is started by the command line
+     */
+    VplConsoleSimulator(String[] command, String classname) {
+        this.classname = classname;
         try {
-
-            String[] cmdline = (String[]) Stream.concat(Stream.of(jvmLocation,    // start another java vm
-                    "-cp", currentClasspath, // set the classpath to the current one
-                    classname),            // Class which should be started
-                    Stream.of(args))                        // Optional Parameters
-                    .toArray(String[]::new);
-
-            this.process = new ProcessBuilder(cmdline).start(); // Go for it !
+            this.process = new ProcessBuilder(command)
+                    .directory(VplGradingContext.getProcessDirectory())
+                    .start(); // Go for it !
+            VplGradingContext.childProcessStarted(classname, this.process);
         } catch (IOException e) {
             throw new IllegalArgumentException("The class " + classname + "could not be found. " + e.getMessage());
         }
 
         // Get the input and output streams
-        this.inReader = new BufferedReader(new InputStreamReader(process.getInputStream(), Charset.defaultCharset()));
+        this.inReader = new LinePump(process.getInputStream(), "vpl-stdout-" + classname, this::outputArrived, this::kill);
         this.outWriter = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), Charset.defaultCharset()));
-        this.errReader = new BufferedReader(new InputStreamReader(process.getErrorStream(), Charset.defaultCharset()));
+        this.errReader = new LinePump(process.getErrorStream(), "vpl-stderr-" + classname, nanos -> { }, this::kill);
+
+    }
 
+    /**
+     * Builds the command line which starts a JVM with the current classpath for the given class.
+     *
+     * @param jvmOptions Additional options for the started jvm (e.g. -Xmx16m)
+     * @param classname  Class which should be started using java
+     * @param args       Arguments for the main method of the class
+     */
+    static String[] buildCommandLine(List<String> jvmOptions, String classname, String... args) {
+        return buildCommandLine(jvmOptions, VplGradingContext.getClasspath(), classname, args);
+    }
+
+    /**
+     * Builds the command line which starts a JVM with the given classpath for the given class.
+     *
+     * @param jvmOptions Additional options for the started jvm (e.g. -Xmx16m)
+     * @param classpath  Classpath of the started jvm
+     * @param classname  Class which should be started using java
+     * @param args       Arguments for the main method of the class
+     */
+    static String[] buildCommandLine(List<String> jvmOptions, String classpath, String classname, String... args) {
+        String jvmLocation;
+        if (System.getProperty("os.name").startsWith("Win")) {
+            jvmLocation = System.getProperties().getProperty("java.home") + File.separator + "bin" + File.separator + "java.exe";
+        } else {
+            jvmLocation = System.getProperties().getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        }
+
+        return Stream.of(Stream.of(jvmLocation),           // start another java vm
+                Stream.of(VplInstructionBudget.jvmOptions()), // The operation budget of the grader (if any)
+                jvmOptions.stream(),                       // Optional options for the vm
+                Stream.of("-cp", classpath,                // set the classpath (usually the current one)
+                        classname),                        // Class which should be started
+                Stream.of(args))                           // Optional Parameters
+                .flatMap(Function.identity())
+                .toArray(String[]::new);
     }
 
     /**
@@ -70,7 +123,7 @@ public class VplConsoleSimulator {
         if (immideateLogToConsole) {
             System.out.println("> out " + s);
         }
-        consolewindow.add("> in:  " + s);
+        consolewindow.add(new Entry(System.nanoTime(), "> in:  " + s));
     }
 
     /**
@@ -79,10 +132,17 @@ public class VplConsoleSimulator {
      * @param s
      */
     private void log_programOutput(String s) {
+        log_programOutput(s, inReader.getArrival());
+    }
+
+    /**
+     * Internal logging of an output line which arrived at the given time
+     */
+    private void log_programOutput(String s, long nanos) {
         if (immideateLogToConsole) {
             System.out.println("> out " + s);
         }
-        consolewindow.add("> out: " + s);
+        consolewindow.add(new Entry(nanos, "> out: " + s));
     }
 
     /**
@@ -94,7 +154,7 @@ public class VplConsoleSimulator {
         if (immideateLogToConsole) {
             System.out.println("> ! " + s);
         }
-        consolewindow.add("> ! " + s);
+        consolewindow.add(new Entry(errReader.getArrival(), "> ! " + s));
     }
 
     /**
@@ -104,7 +164,126 @@ public class VplConsoleSimulator {
      */
     public String getFullConsoleIO() {
         //return consolewindow.stream().collect(Collectors.joining("\r\n")).toString();
-        return consolewindow.stream().collect(Collectors.joining(System.lineSeparator())).toString();
+        return consolewindow.stream().map(e -> e.text).collect(Collectors.joining(System.lineSeparator())).toString();
+    }
+
+    /**
+     * Renders the console dialog with the time of every entry (in milliseconds since the start of the
+     * program) and the response latency of the first output after every input
+     */
+    public String getTimeline() {
+        StringBuilder sb = new StringBuilder("> ***Timeline (ms since the start of the program)***");
+        long input = -1;
+        for (Entry entry : consolewindow) {
+            sb.append(System.lineSeparator()).append(String.format(Locale.ROOT, "%10.1f %s", millis(entry.nanos - startNanos), entry.text));
+            if (entry.text.startsWith("> in:")) {
+                input = entry.nanos;
+            } else if (input >= 0 && entry.text.startsWith("> out:")) {
+                sb.append(String.format(Locale.ROOT, "   (after %.1f ms)", millis(entry.nanos - input)));
+                input = -1;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the response latencies of the program so far (time from an input till the next line of
+     * output)
+     */
+    public LatencyHistogram getResponseLatencies() {
+        synchronized (responses) {
+            return new LatencyHistogram(latencies);
+        }
+    }
+
+    /**
+     * Waits till the program responds to the last input and fails (with the timeline) if the first line
+     * of output did not arrive within the given time. The output is not consumed.
+     *
+     * @param millis Maximum latency in milliseconds
+     */
+    public void assertRespondsWithin(long millis) {
+        double limit = millis * latencyScale();
+        long latency;
+        synchronized (responses) {
+            if (inputNanos < 0) {
+                throw new IllegalStateException("Nothing was entered yet");
+            }
+            long deadline = inputNanos + (long) (limit * 1e6);
+            try {
+                for (long now = System.nanoTime(); responseNanos < 0 && now < deadline; now = System.nanoTime()) {
+                    TimeUnit.NANOSECONDS.timedWait(responses, deadline - now);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            latency = responseNanos < 0 ? -1 : responseNanos - inputNanos;
+        }
+        if (latency < 0 || millis(latency) > limit) {
+            fail(String.format(Locale.ROOT, "The program did not respond within %.0f ms", limit)
+                    + (latency < 0 ? "" : String.format(Locale.ROOT, " (it needed %.1f ms)", millis(latency)))
+                    + hostHint() + System.lineSeparator() + getTimeline());
+        }
+    }
+
+    /**
+     * Fails (with the histogram and the timeline) if the given percentile of all response latencies so
+     * far is above the given time, e.g. <code>assertResponsesWithin(95, 200)</code> for 95% of the inputs
+     * answered within 200 ms
+     *
+     * @param percentile Percentile between 0 and 100
+     * @param millis     Maximum latency in milliseconds
+     */
+    public void assertResponsesWithin(double percentile, long millis) {
+        double limit = millis * latencyScale();
+        LatencyHistogram histogram = getResponseLatencies();
+        if (histogram.getCount() == 0) {
+            fail("The program did not respond to any input" + System.lineSeparator() + getTimeline());
+        }
+        double latency = histogram.getPercentileMillis(percentile);
+        if (latency > limit) {
+            fail(String.format(Locale.ROOT, "%.0f%% of the responses should take at most %.0f ms, but took up to %.1f ms",
+                    percentile, limit, latency) + hostHint() + System.lineSeparator() + histogram
+                    + System.lineSeparator() + getTimeline());
+        }
+    }
+
+    /**
+     * The startup of the JVM is independent of the submission, so it shows how fast the host is
+     */
+    private String hostHint() {
+        synchronized (responses) {
+            return firstOutputNanos < 0 ? "" : String.format(Locale.ROOT, "; the first output of the program appeared after %.1f ms",
+                    millis(firstOutputNanos - startNanos));
+        }
+    }
+
+    /**
+     * Called by the pump of the output for every line as soon as it arrives
+     */
+    private void outputArrived(long nanos) {
+        synchronized (responses) {
+            if (firstOutputNanos < 0) {
+                firstOutputNanos = nanos;
+            }
+            if (inputNanos >= 0 && responseNanos < 0) {
+                responseNanos = nanos;
+                latencies.add(nanos - inputNanos);
+                responses.notifyAll();
+            }
+        }
+    }
+
+    private static double latencyScale() {
+        try {
+            return Math.max(Double.parseDouble(System.getProperty("vpl.latency.scale", "1")), 0.0);
+        } catch (NumberFormatException e) {
+            return 1.0;
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
     }
 
     /**
@@ -127,7 +306,7 @@ public class VplConsoleSimulator {
         String line = null;
         List<String> ret = new ArrayList<>();
         while ((line = errReader.readLine()) != null) {
-            log_programOutput(line);
+            log_programOutput(line, errReader.getArrival());
             ret.add(line);
         }
         return ret;
@@ -140,7 +319,7 @@ public class VplConsoleSimulator {
      * @return
      * @throws IOException
      */
-    private String getNextNonEmptyLine(BufferedReader br) throws IOException {
+    private String getNextNonEmptyLine(LinePump br) throws IOException {
         String line = null;
         while ((line = br.readLine()) != null) {
             if (br == this.inReader) {
@@ -262,13 +441,16 @@ public class VplConsoleSimulator {
      * Fetches the full output and test the String with the condition.
      */
     public boolean expectOutput(Predicate<String> condition) throws IOException {
+        GradingEvents.Span wait = GradingEvents.expectation(classname);
         String line = this.getNextNonEmptyOutputLine();
         if (line == null) {
+            wait.end(null, false);
             String errorMessage = System.lineSeparator() + "> ***Error producing console log***" + System.lineSeparator() +
                     getFullConsoleIO() + System.lineSeparator() + "***> Last output line is empty ***";
             fail(errorMessage);
         }
         boolean result = condition.test(line);
+        wait.end(line, result);
         return result;
     }
 
@@ -299,12 +481,16 @@ public class VplConsoleSimulator {
      * Fetches the full output and expects the String to be at the end of the output.
      */
     public void expectError(Predicate<String> condition) throws IOException {
+        GradingEvents.Span wait = GradingEvents.expectation(classname);
         String line = this.getNextNonEmptyLine(this.errReader);
         if (line == null) {
+            wait.end(null, false);
             fail("Line is null");
         }
 
-        if (!condition.test(line)) {
+        boolean matched = condition.test(line);
+        wait.end(line, matched);
+        if (!matched) {
             fail("Condition not met: " + condition);
         }
     }
@@ -323,10 +509,30 @@ public class VplConsoleSimulator {
      */
     public void enter(String string) throws IOException {
         log_programInput(string.trim());
+        synchronized (responses) {
+            inputNanos = System.nanoTime();
+            responseNanos = -1;
+        }
         outWriter.write(string);
         outWriter.flush();
     }
 
+    /**
+     * Closes the input of the program, which then reads the end of the stream
+     */
+    public void closeInput() throws IOException {
+        outWriter.close();
+    }
+
+    /**
+     * Waits at most the given time for the process to exit
+     *
+     * @return false if the process is still running
+     */
+    public boolean waitFor(long millis) throws InterruptedException {
+        return process.waitFor(millis, TimeUnit.MILLISECONDS);
+    }
+
     /**
      * Waits for the process to exit and returns the exit value
      */
@@ -343,5 +549,200 @@ public class VplConsoleSimulator {
     public void kill() {
         process.destroyForcibly();
     }
+
+    /**
+     * Line of the console dialog and the time when it arrived or was entered
+     */
+    private static class Entry {
+        private final long nanos;
+        private final String text;
+
+        Entry(long nanos, String text) {
+            this.nanos = nanos;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Distribution of the response latencies of a program
+     */
+    public static class LatencyHistogram {
+        private static final long[] BUCKETS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+
+        private final long[] nanos;
+
+        LatencyHistogram(List<Long> latencies) {
+            this.nanos = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+
+        /**
+         * Returns the number of responses
+         */
+        public int getCount() {
+            return nanos.length;
+        }
+
+        /**
+         * Returns the latency which the given percentage of the responses does not exceed (nearest rank)
+         */
+        public double getPercentileMillis(double percentile) {
+            if (nanos.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * nanos.length);
+            return millis(nanos[Math.max(rank, 1) - 1]);
+        }
+
+        public double getMedianMillis() {
+            return getPercentileMillis(50);
+        }
+
+        public double getMaxMillis() {
+            return nanos.length == 0 ? 0 : millis(nanos[nanos.length - 1]);
+        }
+
+        /**
+         * Returns the latencies of all responses in ascending order
+         */
+        public long[] getNanos() {
+            return Arrays.copyOf(nanos, nanos.length);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format(Locale.ROOT, "%d responses, median %.1f ms, 95%% %.1f ms, max %.1f ms",
+                    nanos.length, getMedianMillis(), getPercentileMillis(95), getMaxMillis()));
+            int i = 0;
+            for (int b = 0; b <= BUCKETS.length && i < nanos.length; b++) {
+                int count = 0;
+                while (i < nanos.length && (b == BUCKETS.length || millis(nanos[i]) < BUCKETS[b])) {
+                    count++;
+                    i++;
+                }
+                String bucket = b == BUCKETS.length ? String.format(Locale.ROOT, ">= %d ms", BUCKETS[b - 1])
+                        : String.format(Locale.ROOT, " < %d ms", BUCKETS[b]);
+                if (count > 0) {
+                    sb.append(System.lineSeparator()).append(String.format(Locale.ROOT, "%10s | %-20s %d", bucket,
+                            new String(new char[Math.min(count, 20)]).replace('\0', '#'), count));
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Reads the lines of an output stream of the program in a thread of {@link VplThreads}, so the
+     * program never blocks on a full pipe (e.g. of the error stream which nobody reads) and waiting for
+     * a line can be interrupted (e.g. by the timeout of a test). Every line is timestamped when it
+     * arrives.
+     * <p>
+     * At most <code>-Dvpl.console.maxBuffered</code> characters (default 1M) which were not read yet
+     * are buffered. If a program writes more (e.g. an endless loop with <code>println</code>), then it is
+     * killed and reading its output fails, instead of filling the heap of the grader.
+     */
+    private static class LinePump {
+        private static final Line END = new Line(null, 0);
+        private static final int DEFAULT_MAX_BUFFERED = 1 << 20;
+
+        private final BlockingQueue<Line> lines = new LinkedBlockingQueue<>();
+        private final AtomicLong buffered = new AtomicLong();
+        private final long maxBuffered = Math.max(1024, Integer.getInteger("vpl.console.maxBuffered", DEFAULT_MAX_BUFFERED));
+        private volatile boolean overflow = false;
+        private boolean ended = false;
+        private long arrival = -1;
+
+        /**
+         * @param arrived    Is called with the time of every line as soon as it arrives
+         * @param onOverflow Is called once if the program wrote too much output
+         */
+        LinePump(InputStream stream, String name, LongConsumer arrived, Runnable onOverflow) {
+            VplThreads.start(name, () -> {
+                try (Reader reader = new InputStreamReader(stream, Charset.defaultCharset())) {
+                    char[] buffer = new char[8192];
+                    StringBuilder line = new StringBuilder();
+                    boolean cr = false;
+                    int n;
+                    while ((n = reader.read(buffer)) >= 0) {
+                        for (int i = 0; i < n; i++) {
+                            char c = buffer[i];
+                            if (c == '\n' && cr) {
+                                cr = false;
+                                continue;
+                            }
+                            cr = c == '\r';
+                            if (c == '\n' || c == '\r') {
+                                add(line.toString(), arrived);
+                                line.setLength(0);
+                            } else {
+                                line.append(c);
+                            }
+                            // Every line counts at least one character, so endless empty lines are limited as well
+                            if (buffered.get() + line.length() > maxBuffered) {
+                                overflow = true;
+                                onOverflow.run();
+                                return;
+                            }
+                        }
+                    }
+                    if (line.length() > 0) {
+                        add(line.toString(), arrived);
+                    }
+                } catch (IOException e) {
+                    // The process is gone
+                } finally {
+                    lines.add(END);
+                }
+            });
+        }
+
+        private void add(String text, LongConsumer arrived) {
+            long now = System.nanoTime();
+            buffered.addAndGet(text.length() + 1);
+            lines.add(new Line(text, now));
+            arrived.accept(now);
+        }
+
+        /**
+         * Returns the time when the line which was read last arrived
+         */
+        long getArrival() {
+            return arrival;
+        }
+
+        /**
+         * Waits for the next line, returns null at the end of the stream (or fails after an overflow)
+         */
+        String readLine() throws IOException {
+            if (!ended) {
+                try {
+                    Line line = lines.take();
+                    if (line != END) {
+                        buffered.addAndGet(-(line.text.length() + 1));
+                        arrival = line.nanos;
+                        return line.text;
+                    }
+                    ended = true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the output of the program");
+                }
+            }
+            if (overflow) {
+                throw new IOException("The program was stopped, because it wrote more than " + maxBuffered
+                        + " characters which were not read");
+            }
+            return null;
+        }
+
+        private static class Line {
+            private final String text;
+            private final long nanos;
+
+            Line(String text, long nanos) {
+                this.text = text;
+                this.nanos = nanos;
+            }
+        }
+    }
 }
  
\ No newline at end of file
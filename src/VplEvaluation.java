@@ -0,0 +1,149 @@
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Evaluates a single submission within a JVM that evaluates many of them (daemon, batch or worker
+ * mode): the submission gets its own {@link SubmissionClassLoader}, its own console (see
+ * {@link VplOutputRouter}) and a dedicated thread within its own thread group.
+ * <p>
+ * If the evaluation exceeds the timeout, its thread is interrupted and all remaining threads of the
+ * group (including those the submission started) are stopped, so they do not keep burning CPU; their
+ * output is discarded. The same happens if the caller is interrupted while it waits for the evaluation.
+ * Threads cannot be stopped on Java 20 or newer; there they keep running till the
+ * JVM ends.
+ * <p>
+ * The classes of the submission are loaded from its directory and child JVMs (e.g. of the
+ * {@link VplConsoleSimulator}) start there, but files which the tests open with relative paths are
+ * resolved against the working directory of the JVM, which all evaluations share.
+ */
+public class VplEvaluation {
+    private final Path workDir;
+    private final String[] args;
+    private final long timeoutMillis;
+
+    /**
+     * @param workDir       Directory of the submission
+     * @param args          Test classes (empty -> search the directory)
+     * @param timeoutMillis Maximum duration of the evaluation
+     */
+    public VplEvaluation(Path workDir, String[] args, long timeoutMillis) {
+        this.workDir = workDir.toAbsolutePath().normalize();
+        this.args = args;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Runs the evaluation and writes the VPL output to the given stream (which has to use the default
+     * charset).
+     *
+     * @return the result; if the evaluation could not be interrupted after the timeout, the returned
+     * result is marked as timed out and the state of the JVM should no longer be trusted
+     */
+    public GradingResult run(PrintStream out) throws InterruptedException {
+        VplOutputRouter.install();
+        GradingResult[] result = {new GradingResult(workDir)};
+        AtomicBoolean abandoned = new AtomicBoolean();
+        PrintStream console = gate(out, abandoned);
+
+        ThreadGroup group = new ThreadGroup("vpl-evaluation-" + workDir.getFileName());
+        Thread job = new Thread(group, () -> {
+            VplGradingContext.enter(workDir);
+            VplOutputRouter.bind(console);
+            try (SubmissionClassLoader loader = new SubmissionClassLoader(workDir, VplEvaluation.class.getClassLoader())) {
+                Thread.currentThread().setContextClassLoader(loader);
+                VplJUnitTester tester = new VplJUnitTester(workDir, console);
+                tester.grade(args, loader);
+                result[0] = tester.getResult();
+            } catch (Exception | LinkageError e) {
+                console.println("Comment :=>> The evaluation failed: " + e);
+                result[0].setError(e.toString());
+            } finally {
+                console.flush();
+                VplOutputRouter.unbind();
+                VplGradingContext.leave();
+            }
+        }, "vpl-evaluation-" + workDir.getFileName());
+        job.setDaemon(true);
+
+        job.start();
+        try {
+            job.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            // The caller gave up (e.g. the client of the daemon disconnected)
+            abandoned.set(true);
+            job.interrupt();
+            stop(group);
+            throw e;
+        }
+        if (job.isAlive()) {
+            job.interrupt();
+            job.join(1000);
+            boolean stuck = job.isAlive();
+            abandoned.set(true);
+            if (stuck) {
+                out.println("Comment :=>> The evaluation did not finish within " + timeoutMillis / 1000 + " seconds");
+                out.flush();
+            }
+            stop(group);
+            if (stuck) {
+                GradingResult timedOut = new GradingResult(workDir);
+                timedOut.setTimedOut(true);
+                return timedOut;
+            }
+        }
+        return result[0];
+    }
+
+    /**
+     * Stops all threads of the group (if the JVM supports it). JUnit treats the stop like a failure of
+     * the running test and continues with the next one, so the threads are stopped till they are gone.
+     */
+    @SuppressWarnings("deprecation")
+    private static void stop(ThreadGroup group) throws InterruptedException {
+        for (int round = 0; round < 20 && group.activeCount() > 0; round++) {
+            Thread[] threads = new Thread[group.activeCount() + 16];
+            int count = group.enumerate(threads, true);
+            try {
+                for (int i = 0; i < count; i++) {
+                    threads[i].stop();
+                }
+            } catch (UnsupportedOperationException e) {
+                // Java 20 or newer: the threads keep running
+                return;
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * Console of the evaluation, which discards everything once the evaluation has been abandoned
+     */
+    private static PrintStream gate(PrintStream out, AtomicBoolean abandoned) {
+        OutputStream gate = new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                if (!abandoned.get()) {
+                    out.write(b);
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (!abandoned.get()) {
+                    out.write(b, off, len);
+                }
+            }
+        };
+        try {
+            return new PrintStream(gate, false, Charset.defaultCharset().name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+import java.security.Permission;
+
+/**
+ * Turns System.exit of student code into an exception, so that a JVM which runs many programs or
+ * evaluations is not terminated by a single one of them.
+ * <p>
+ * This needs a security manager, which is not available on every JVM. {@link #install()} tells the
+ * caller whether the trap is active.
+ */
+public final class VplExitTrap {
+    private static volatile boolean installed;
+    private static volatile boolean released;
+
+    /**
+     * Private to prevent instantiation
+     */
+    private VplExitTrap() {
+
+    }
+
+    /**
+     * Installs the trap (if possible)
+     *
+     * @return true if System.exit is trapped from now on
+     */
+    @SuppressWarnings("removal")
+    public static synchronized boolean install() {
+        if (installed) {
+            return true;
+        }
+        try {
+            System.setSecurityManager(new SecurityManager() {
+                @Override
+                public void checkExit(int status) {
+                    if (!released) {
+                        throw new ExitTrappedException(status);
+                    }
+                }
+
+                @Override
+                public void checkPermission(Permission perm) {
+                    // everything else is allowed
+                }
+
+                @Override
+                public void checkPermission(Permission perm, Object context) {
+                    // everything else is allowed
+                }
+            });
+            installed = true;
+        } catch (UnsupportedOperationException | SecurityException e) {
+            // System.exit terminates the JVM
+        }
+        return installed;
+    }
+
+    /**
+     * Terminates the JVM even if the trap is installed
+     */
+    public static void exit(int status) {
+        released = true;
+        System.exit(status);
+    }
+
+    /**
+     * Options for a child JVM which should be able to install the trap
+     */
+    public static String[] jvmOptions() {
+        String version = System.getProperty("java.specification.version").replaceFirst("^1\\.", "");
+        if (Double.parseDouble(version) >= 12) {
+            return new String[]{"-Djava.security.manager=allow"};
+        }
+        return new String[0];
+    }
+
+    /**
+     * Thrown instead of terminating the JVM when a program calls System.exit
+     */
+    public static class ExitTrappedException extends SecurityException {
+        private static final long serialVersionUID = 1L;
+        private final int status;
+
+        ExitTrappedException(int status) {
+            super("System.exit(" + status + ")");
+            this.status = status;
+        }
+
+        /**
+         * Returns the status which was handed over to System.exit
+         */
+        public int getStatus() {
+            return status;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Child process of the {@link VplConsoleFuzzer}. Runs the main method of a single class many times
+ * within one JVM, so that a fuzzing run does not pay the JVM startup for every trial.
+ * <p>
+ * Every trial loads the class within a fresh classloader (so static fields start from scratch),
+ * feeds the given lines into System.in and frames everything the program writes:
+ * <pre>
+ *   TRIAL n           (parent -> worker, followed by n input lines)
+ *   |line             (worker -> parent, a line written to System.out)
+ *   !line             (worker -> parent, a line written to System.err)
+ *   =END status       (worker -> parent, the trial is finished with the given exit status)
+ * </pre>
+ *
+ * If the program calls System.exit and the exit cannot be trapped (no security manager available),
+ * the worker dies with the exit code of the program and the parent starts a new one.
+ */
+public class VplFuzzWorker {
+    static final String TRIAL = "TRIAL ";
+    static final String END = "=END ";
+    static final char OUT = '|';
+    static final char ERR = '!';
+
+    private static PrintStream protocol;
+    private static volatile FramingStream[] current = new FramingStream[0];
+
+    /**
+     * Starts the worker
+     *
+     * @param args classname followed by the arguments for its main method
+     */
+    public static void main(String[] args) throws IOException {
+        String classname = args[0];
+        String[] programArgs = new String[args.length - 1];
+        System.arraycopy(args, 1, programArgs, 0, programArgs.length);
+
+        Charset cs = Charset.defaultCharset();
+        BufferedReader control = new BufferedReader(new InputStreamReader(System.in, cs));
+        protocol = new PrintStream(System.out, true, cs.name());
+        VplExitTrap.install();
+
+        // Emit the last unterminated line if the program terminates the worker
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (FramingStream stream : current) {
+                stream.finish();
+            }
+        }));
+
+        URL[] classpath = classpathUrls();
+        String line;
+        while ((line = control.readLine()) != null) {
+            if (!line.startsWith(TRIAL)) {
+                continue;
+            }
+            int count = Integer.parseInt(line.substring(TRIAL.length()).trim());
+            StringBuilder input = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                input.append(control.readLine()).append(System.lineSeparator());
+            }
+
+            int status = runTrial(classpath, classname, programArgs, input.toString().getBytes(cs));
+            synchronized (protocol) {
+                protocol.println(END + status);
+            }
+        }
+    }
+
+    /**
+     * Runs the main method of the class once and returns the exit status like a JVM would do
+     */
+    private static int runTrial(URL[] classpath, String classname, String[] args, byte[] input) {
+        InputStream oldIn = System.in;
+        PrintStream oldOut = System.out;
+        PrintStream oldErr = System.err;
+        FramingStream out = new FramingStream(OUT, protocol);
+        FramingStream err = new FramingStream(ERR, protocol);
+        PrintStream outStream = new PrintStream(out, true);
+        PrintStream errStream = new PrintStream(err, true);
+
+        current = new FramingStream[]{out, err};
+        System.setIn(new ByteArrayInputStream(input));
+        System.setOut(outStream);
+        System.setErr(errStream);
+
+        int status = 0;
+        try (URLClassLoader loader = new URLClassLoader(classpath, ClassLoader.getSystemClassLoader().getParent())) {
+            Method main = Class.forName(classname, true, loader).getMethod("main", String[].class);
+            main.invoke(null, (Object) args.clone());
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof VplExitTrap.ExitTrappedException) {
+                status = ((VplExitTrap.ExitTrappedException) cause).getStatus();
+            } else {
+                errStream.print("Exception in thread \"main\" ");
+                cause.printStackTrace(errStream);
+                status = 1;
+            }
+        } catch (VplExitTrap.ExitTrappedException e) {
+            // System.exit within a static initializer
+            status = e.getStatus();
+        } catch (Exception | LinkageError e) {
+            errStream.println("Error: Could not run " + classname + ": " + e);
+            status = 1;
+        } finally {
+            outStream.flush();
+            errStream.flush();
+            out.finish();
+            err.finish();
+            current = new FramingStream[0];
+            System.setIn(oldIn);
+            System.setOut(oldOut);
+            System.setErr(oldErr);
+        }
+        return status;
+    }
+
+    /**
+     * Converts the classpath of this JVM into URLs for the per trial classloader
+     */
+    private static URL[] classpathUrls() throws IOException {
+        List<URL> urls = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                urls.add(new File(entry).toURI().toURL());
+            }
+        }
+        return urls.toArray(new URL[0]);
+    }
+
+    /**
+     * Collects the output of the program and writes every completed line with a prefix to the
+     * protocol stream.
+     */
+    static class FramingStream extends OutputStream {
+        private final char prefix;
+        private final PrintStream protocol;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        FramingStream(char prefix, PrintStream protocol) {
+            this.prefix = prefix;
+            this.protocol = protocol;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (b == '\n') {
+                emit();
+            } else {
+                line.write(b);
+            }
+        }
+
+        /**
+         * Emits a last line without line separator (e.g. after System.out.print)
+         */
+        synchronized void finish() {
+            if (line.size() > 0) {
+                emit();
+            }
+        }
+
+        private void emit() {
+            String text = new String(line.toByteArray(), Charset.defaultCharset());
+            if (text.endsWith("\r")) {
+                text = text.substring(0, text.length() - 1);
+            }
+            line.reset();
+            synchronized (protocol) {
+                protocol.println(prefix + text);
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+/**
+ * State of the evaluation which is currently running on this thread (and the threads it starts).
+ * <p>
+ * A normal run of the jar evaluates the current directory. A resident grader (e.g. the
+ * {@link VplGradingDaemon}) evaluates other directories, so classes like the
+ * {@link VplConsoleSimulator} have to know where the submission lives.
+ */
+public final class VplGradingContext {
+    private static final InheritableThreadLocal<Path> WORK_DIR = new InheritableThreadLocal<>();
+    private static final InheritableThreadLocal<List<ChildProcessListener>> LISTENERS = new InheritableThreadLocal<>();
+    private static final List<ChildProcessListener> DEFAULT_LISTENERS = new CopyOnWriteArrayList<>();
+    private static final InheritableThreadLocal<MemoryClasses> MEMORY_CLASSES = new InheritableThreadLocal<>();
+
+    /**
+     * Private to prevent instantiation
+     */
+    private VplGradingContext() {
+
+    }
+
+    /**
+     * Binds the evaluation of the given directory to the current thread
+     */
+    public static void enter(Path workDir) {
+        WORK_DIR.set(workDir.toAbsolutePath().normalize());
+        LISTENERS.set(new CopyOnWriteArrayList<>());
+    }
+
+    /**
+     * Releases the binding of the current thread
+     */
+    public static void leave() {
+        WORK_DIR.remove();
+        LISTENERS.remove();
+        setMemoryClasses(null);
+    }
+
+    /**
+     * Tells the current evaluation that the classes of the submission only exist in memory
+     * (see {@link VplCompiler}). They are written to a temporary directory as soon as a child JVM needs them.
+     *
+     * @param classes bytecode per class name or null to release the classes
+     */
+    public static void setMemoryClasses(Map<String, byte[]> classes) {
+        MemoryClasses old = MEMORY_CLASSES.get();
+        if (old != null) {
+            old.delete();
+        }
+        if (classes == null) {
+            MEMORY_CLASSES.remove();
+        } else {
+            MEMORY_CLASSES.set(new MemoryClasses(classes));
+        }
+    }
+
+    /**
+     * Returns the classes of the submission which only exist in memory (empty if there are none)
+     */
+    public static Map<String, byte[]> getMemoryClasses() {
+        MemoryClasses memory = MEMORY_CLASSES.get();
+        return memory == null ? Collections.emptyMap() : memory.classes;
+    }
+
+    /**
+     * Returns the directory of the submission or null if the current directory is evaluated
+     */
+    public static Path getWorkDir() {
+        return WORK_DIR.get();
+    }
+
+    /**
+     * Returns the classpath for child JVMs which have to see the classes of the submission
+     */
+    public static String getClasspath() {
+        String classpath = System.getProperty("java.class.path");
+        MemoryClasses memory = MEMORY_CLASSES.get();
+        if (memory != null) {
+            classpath = memory.directory() + File.pathSeparator + classpath;
+        }
+        Path workDir = WORK_DIR.get();
+        if (workDir == null) {
+            return classpath;
+        }
+        return workDir.toString() + File.pathSeparator + classpath;
+    }
+
+    /**
+     * Returns the directory in which child processes should be started (null = current directory)
+     */
+    public static File getProcessDirectory() {
+        Path workDir = WORK_DIR.get();
+        return workDir == null ? null : workDir.toFile();
+    }
+
+    /**
+     * Registers a listener which is informed about every child JVM the current evaluation starts
+     */
+    public static void addChildProcessListener(ChildProcessListener listener) {
+        listeners().add(listener);
+    }
+
+    /**
+     * Removes a listener of the current evaluation
+     */
+    public static void removeChildProcessListener(ChildProcessListener listener) {
+        listeners().remove(listener);
+    }
+
+    /**
+     * Informs the listeners of the current evaluation that a child JVM has been started
+     *
+     * @param classname Main class of the child JVM
+     * @param process   The started process
+     */
+    public static void childProcessStarted(String classname, Process process) {
+        GradingEvents.processStarted(classname, process);
+        for (ChildProcessListener listener : listeners()) {
+            listener.started(classname, process);
+        }
+    }
+
+    private static List<ChildProcessListener> listeners() {
+        List<ChildProcessListener> listeners = LISTENERS.get();
+        return listeners == null ? DEFAULT_LISTENERS : listeners;
+    }
+
+    /**
+     * Is informed whenever the evaluation starts a child JVM (e.g. by the {@link VplConsoleSimulator})
+     */
+    @FunctionalInterface
+    public interface ChildProcessListener {
+        void started(String classname, Process process);
+    }
+
+    /**
+     * Classes which only exist in memory and are written to disk on demand
+     */
+    private static final class MemoryClasses {
+        private final Map<String, byte[]> classes;
+        private Path directory;
+
+        MemoryClasses(Map<String, byte[]> classes) {
+            this.classes = classes;
+        }
+
+        synchronized Path directory() {
+            if (directory == null) {
+                try {
+                    Path dir = Files.createTempDirectory("vpl-classes");
+                    for (Map.Entry<String, byte[]> e : classes.entrySet()) {
+                        Path file = dir.resolve(e.getKey().replace('.', File.separatorChar) + ".class");
+                        Files.createDirectories(file.getParent());
+                        Files.write(file, e.getValue());
+                    }
+                    directory = dir;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return directory;
+        }
+
+        synchronized void delete() {
+            if (directory == null) {
+                return;
+            }
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Collections.reverseOrder()).forEach(p -> p.toFile().delete());
+            } catch (IOException e) {
+                // temporary files are cleaned up by the OS
+            }
+            directory = null;
+        }
+    }
+}
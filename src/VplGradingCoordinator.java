@@ -0,0 +1,116 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Enqueues all submissions below a root directory into a {@link GradingQueue}, watches the
+ * {@link VplGradingWorker}s and writes the consolidated report once every job is done.
+ * <pre>
+ *   java -jar vpl-junit.jar --coordinator &lt;queue&gt; &lt;root&gt; [--lease 30] [--attempts 3] [--out grades.csv|grades.json]
+ * </pre>
+ * Jobs of workers which did not send a heartbeat within the lease are handed to another worker; a job
+ * which crashed <code>attempts</code> workers is given up. Every run needs an empty queue, since the
+ * report contains every completed job of the queue.
+ */
+public class VplGradingCoordinator {
+    public static final String OPTION = "--coordinator";
+    private static final long POLL_MILLIS = 1000;
+
+    /**
+     * Starts the coordinator
+     *
+     * @param args location of the queue, root directory of the submissions and the options
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: java -jar vpl-junit.jar " + OPTION + " <queue> <root> [--lease seconds] [--attempts n] [--out grades.csv|grades.json]");
+            return;
+        }
+        GradingQueue queue = GradingQueue.open(args[0]);
+        Path root = Paths.get(args[1]);
+        long lease = 6 * VplGradingWorker.HEARTBEAT_MILLIS;
+        int attempts = 3;
+        Path report = root.resolve("grades.csv");
+        for (int i = 2; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                System.out.println("Missing value of option " + args[i]);
+                return;
+            }
+            switch (args[i]) {
+                case "--lease":
+                    lease = Long.parseLong(args[i + 1]) * 1000;
+                    break;
+                case "--attempts":
+                    attempts = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--out":
+                    report = Paths.get(args[i + 1]);
+                    break;
+                default:
+                    System.out.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        if (queue.countOpen() > 0 || !queue.completedJson().isEmpty() || !queue.failed().isEmpty()) {
+            System.out.println("The queue " + args[0] + " contains jobs of another run. Use an empty queue for every run.");
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        int count = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root, Files::isDirectory)) {
+            for (Path submission : stream) {
+                queue.enqueue(submission, new String[0]);
+                count++;
+            }
+        }
+        System.out.println("Enqueued " + count + " submissions");
+
+        supervise(queue, lease, attempts);
+        writeReport(queue, report);
+
+        List<String> failed = queue.failed();
+        System.out.println("Graded " + (count - failed.size()) + " submissions in " + (System.currentTimeMillis() - start) + " ms -> " + report);
+        for (String id : failed) {
+            System.out.println("Gave up " + id + " after " + attempts + " attempts");
+        }
+    }
+
+    /**
+     * Returns jobs of crashed workers to the queue till every job is done or failed
+     */
+    public static void supervise(GradingQueue queue, long leaseMillis, int maxAttempts) throws IOException, InterruptedException {
+        while (queue.countOpen() > 0) {
+            int requeued = queue.requeueExpired(leaseMillis, maxAttempts);
+            if (requeued > 0) {
+                System.out.println("Requeued " + requeued + " jobs of crashed workers");
+            }
+            Thread.sleep(POLL_MILLIS);
+        }
+    }
+
+    /**
+     * Writes the results of all completed jobs
+     */
+    public static void writeReport(GradingQueue queue, Path report) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+            if (report.getFileName().toString().endsWith(".json")) {
+                List<String> objects = new ArrayList<>(queue.completedJson());
+                w.write("[\n  " + String.join(",\n  ", objects) + "\n]\n");
+            } else {
+                w.write(VplBatchGrader.CSV_HEADER);
+                w.newLine();
+                for (String rows : queue.completedCsv()) {
+                    w.write(rows);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Resident grader which keeps JUnit and the grader loaded (and the JIT warm) for many evaluations.
+ * <p>
+ * Started with <code>java -jar vpl-junit.jar --daemon [port]</code> it listens on the loopback
+ * interface. A client sends the absolute directory of the submission in the first line and optionally
+ * the test classes (separated by spaces) in the second line. The daemon answers with exactly the
+ * same text a normal run of the jar would print and closes the connection:
+ * <pre>
+ *   exec 3&lt;&gt;/dev/tcp/127.0.0.1/7321
+ *   printf '%s\n\n' "$PWD" &gt;&amp;3
+ *   cat &lt;&amp;3
+ * </pre>
+ *
+ * Every evaluation runs within its own {@link SubmissionClassLoader}. Up to
+ * <code>-Dvpl.daemon.threads</code> evaluations (default: number of processors) run at the same time and
+ * a few more wait; further clients get an answer without grade at once. A client has to send its request
+ * within {@value #REQUEST_TIMEOUT} ms, and an evaluation is stopped when its client disconnects. If an
+ * evaluation takes longer than <code>-Dvpl.daemon.timeout</code> seconds (default 60) and cannot be
+ * interrupted, the daemon terminates itself, since its state can no longer be trusted.
+ */
+public class VplGradingDaemon {
+    public static final String OPTION = "--daemon";
+    public static final int DEFAULT_PORT = 7321;
+    public static final int REQUEST_TIMEOUT = 10000;
+
+    private final int port;
+    private final long timeoutMillis;
+    private final int threads;
+
+    /**
+     * Creates a daemon for the given port
+     */
+    public VplGradingDaemon(int port, long timeoutMillis, int threads) {
+        this.port = port;
+        this.timeoutMillis = timeoutMillis;
+        this.threads = threads;
+    }
+
+    /**
+     * Starts the daemon
+     *
+     * @param args optional port
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        long timeout = Long.getLong("vpl.daemon.timeout", 60L) * 1000;
+        int threads = Math.max(1, Integer.getInteger("vpl.daemon.threads", Runtime.getRuntime().availableProcessors()));
+
+        VplOutputRouter.install();
+        if (!VplExitTrap.install()) {
+            System.err.println("Warning: System.exit cannot be trapped on this JVM. A submission calling it stops the daemon.");
+        }
+        new VplGradingDaemon(port, timeout, threads).serve();
+    }
+
+    /**
+     * Accepts evaluation requests till the JVM is stopped. The requests are evaluated by a bounded pool.
+     */
+    public void serve() throws IOException {
+        ExecutorService pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4), r -> {
+                    Thread t = new Thread(r, "vpl-daemon");
+                    t.setDaemon(true);
+                    return t;
+                });
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.err.println("vpl-junit daemon listening on " + server.getLocalSocketAddress());
+            while (true) {
+                Socket socket = server.accept();
+                try {
+                    pool.execute(() -> {
+                        try (Socket s = socket) {
+                            handle(s);
+                        } catch (IOException e) {
+                            System.err.println("Request failed: " + e);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // the client falls back to a normal run, since there is no grade
+                    try (Socket s = socket) {
+                        s.getOutputStream().write("Comment :=>> The daemon is busy\n".getBytes(Charset.defaultCharset()));
+                    } catch (IOException ignored) {
+                        // the client is gone
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads a single request and writes the output of the evaluation back to the client
+     */
+    private void handle(Socket socket) throws IOException {
+        Charset cs = Charset.defaultCharset();
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), cs));
+        PrintStream out = new PrintStream(new BufferedOutputStream(socket.getOutputStream()), false, cs.name());
+
+        socket.setSoTimeout(REQUEST_TIMEOUT);
+        String dir = in.readLine();
+        String classes = in.readLine();
+        String[] args = classes == null || classes.trim().isEmpty() ? new String[0] : classes.trim().split("\\s+");
+        socket.setSoTimeout(0);
+
+        if (dir == null || !Files.isDirectory(Paths.get(dir))) {
+            out.println("Comment :=>> The directory " + dir + " cannot be evaluated");
+        } else {
+            // The client sends nothing else, so the end of its stream means that it is gone
+            AtomicBoolean running = new AtomicBoolean(true);
+            Thread handler = Thread.currentThread();
+            VplThreads.start("vpl-daemon-client", () -> {
+                try {
+                    while (in.read() >= 0) {
+                        // ignored
+                    }
+                } catch (IOException e) {
+                    // the connection is closed
+                }
+                synchronized (running) {
+                    if (running.get()) {
+                        handler.interrupt();
+                    }
+                }
+            });
+            try {
+                evaluate(Paths.get(dir), args, out);
+            } finally {
+                synchronized (running) {
+                    running.set(false);
+                }
+                // Clears the interrupt of a disconnected client, the thread evaluates the next request
+                Thread.interrupted();
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Evaluates a submission. Everything the tests print to the console is sent to the client as well.
+     */
+    public void evaluate(Path workDir, String[] args, PrintStream out) {
+        try {
+            GradingResult result = new VplEvaluation(workDir, args, timeoutMillis).run(out);
+            if (result.isTimedOut()) {
+                VplOutputRouter.console().println("Evaluation of " + workDir + " is stuck. Stopping the daemon.");
+                VplExitTrap.exit(2);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
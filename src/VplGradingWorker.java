@@ -0,0 +1,154 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes submissions from a {@link GradingQueue} and grades them with the normal pipeline.
+ * <pre>
+ *   java -jar vpl-junit.jar --worker &lt;queue&gt; [--concurrency 2] [--timeout 60] [--drain]
+ * </pre>
+ * Start as many workers (on as many hosts) as needed. Every worker grades at most
+ * <code>concurrency</code> submissions at the same time and sends heartbeats for them, so the
+ * coordinator can return the jobs of a crashed worker to the queue. With <code>--drain</code> the
+ * worker stops as soon as the queue is empty.
+ * <p>
+ * If an evaluation exceeds the timeout and cannot be interrupted, the worker takes no further jobs,
+ * finishes the others and exits with status 2 (like the {@link VplGradingDaemon}), since its state can
+ * no longer be trusted. Run it within a loop or a service which restarts it.
+ */
+public class VplGradingWorker {
+    public static final String OPTION = "--worker";
+    static final long HEARTBEAT_MILLIS = 5000;
+    private static final long IDLE_MILLIS = 500;
+
+    private final GradingQueue queue;
+    private final int concurrency;
+    private final long timeoutMillis;
+    private final boolean drain;
+    private final String workerId = ManagementFactory.getRuntimeMXBean().getName();
+    private final Map<String, GradingQueue.GradingJob> inFlight = new ConcurrentHashMap<>();
+    private volatile boolean stuck;
+
+    public VplGradingWorker(GradingQueue queue, int concurrency, long timeoutMillis, boolean drain) {
+        this.queue = queue;
+        this.concurrency = concurrency;
+        this.timeoutMillis = timeoutMillis;
+        this.drain = drain;
+    }
+
+    /**
+     * Starts the worker
+     *
+     * @param args location of the queue followed by the options
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.out.println("Usage: java -jar vpl-junit.jar " + OPTION + " <queue> [--concurrency n] [--timeout seconds] [--drain]");
+            return;
+        }
+        int concurrency = 2;
+        long timeout = 60;
+        boolean drain = false;
+        for (int i = 1; i < args.length; i++) {
+            if ((args[i].equals("--concurrency") || args[i].equals("--timeout")) && i + 1 == args.length) {
+                System.out.println("Missing value of option " + args[i]);
+                return;
+            }
+            switch (args[i]) {
+                case "--concurrency":
+                    concurrency = Integer.parseInt(args[++i]);
+                    break;
+                case "--timeout":
+                    timeout = Long.parseLong(args[++i]);
+                    break;
+                case "--drain":
+                    drain = true;
+                    break;
+                default:
+                    System.out.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        VplExitTrap.install();
+        new VplGradingWorker(GradingQueue.open(args[0]), concurrency, timeout * 1000, drain).run();
+    }
+
+    /**
+     * Grades jobs till the queue is empty (drain mode) or forever
+     */
+    public void run() throws InterruptedException {
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor();
+        heartbeat.scheduleAtFixedRate(() -> {
+            for (GradingQueue.GradingJob job : inFlight.values()) {
+                try {
+                    queue.heartbeat(job);
+                } catch (IOException e) {
+                    VplOutputRouter.console().println(workerId + ": heartbeat failed: " + e);
+                }
+            }
+        }, HEARTBEAT_MILLIS, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+
+        Thread[] slots = new Thread[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            slots[i] = new Thread(this::work, "vpl-worker-" + i);
+            slots[i].start();
+        }
+        for (Thread slot : slots) {
+            slot.join();
+        }
+        heartbeat.shutdownNow();
+        if (stuck) {
+            VplOutputRouter.console().println(workerId + ": an evaluation is stuck. Stopping the worker.");
+            VplExitTrap.exit(2);
+        }
+    }
+
+    /**
+     * Loop of a single slot
+     */
+    private void work() {
+        try {
+            while (!stuck && !Thread.currentThread().isInterrupted()) {
+                GradingQueue.GradingJob job = queue.claim(workerId);
+                if (job == null) {
+                    if (drain && queue.countOpen() == 0) {
+                        return;
+                    }
+                    Thread.sleep(IDLE_MILLIS);
+                    continue;
+                }
+                inFlight.put(job.getId(), job);
+                try {
+                    grade(job);
+                } finally {
+                    inFlight.remove(job.getId());
+                }
+            }
+        } catch (IOException e) {
+            VplOutputRouter.console().println(workerId + ": queue failed: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void grade(GradingQueue.GradingJob job) throws IOException, InterruptedException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        GradingResult result;
+        try (PrintStream out = new PrintStream(buffer, true, Charset.defaultCharset().name())) {
+            result = new VplEvaluation(job.getSubmission(), job.getArgs(), timeoutMillis).run(out);
+        }
+        if (result.isTimedOut()) {
+            stuck = true;
+        }
+        queue.complete(job, result, new String(buffer.toByteArray(), Charset.defaultCharset()));
+        VplOutputRouter.console().println(workerId + ": " + job.getId() + " -> " + PointsTable.format(result.getGrade()));
+    }
+}
@@ -0,0 +1,125 @@
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content hashes which identify bytecode and sources across evaluations.
+ * <p>
+ * Caches which are shared between evaluations (and can therefore be written by the code of a student)
+ * authenticate their entries with an HMAC. Its key is read once from the file of
+ * <code>-Dvpl.key=&lt;file&gt;</code>, which has to be outside of every submission; the property is
+ * cleared afterwards, so the tests cannot look it up.
+ */
+public final class VplHashes {
+    private static final String KEY_PROPERTY = "vpl.key";
+    private static final String HMAC = "HmacSHA256";
+
+    private static boolean keyLoaded;
+    private static SecretKeySpec key;
+
+    /**
+     * Private to prevent instantiation
+     */
+    private VplHashes() {
+
+    }
+
+    /**
+     * Returns the hex encoded SHA-256 of the data
+     */
+    public static String sha256(byte[] data) {
+        return hex(digest().digest(data));
+    }
+
+    /**
+     * Returns the hex encoded SHA-256 of the file or null if it does not exist
+     */
+    public static String sha256(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        return sha256(Files.readAllBytes(file));
+    }
+
+    /**
+     * Returns a new SHA-256 digest
+     */
+    public static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is part of every JRE", e);
+        }
+    }
+
+    /**
+     * Returns true if the grader has a secret key to authenticate the entries of shared caches
+     */
+    public static synchronized boolean hasKey() {
+        if (!keyLoaded) {
+            keyLoaded = true;
+            String location = System.getProperty(KEY_PROPERTY);
+            System.clearProperty(KEY_PROPERTY);
+            if (location != null && !location.isEmpty()) {
+                try {
+                    byte[] secret = Files.readAllBytes(Paths.get(location));
+                    if (secret.length > 0) {
+                        key = new SecretKeySpec(secret, HMAC);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Warning: The key " + location + " cannot be read: " + e);
+                }
+            }
+        }
+        return key != null;
+    }
+
+    /**
+     * Returns the hex encoded HMAC-SHA256 of the parts with the secret key of the grader. Every part is
+     * prefixed by its length, so different parts never have the same HMAC.
+     *
+     * @throws IllegalStateException if there is no key (see {@link #hasKey()})
+     */
+    public static String hmac(String... parts) {
+        if (!hasKey()) {
+            throw new IllegalStateException("No key given with -D" + KEY_PROPERTY);
+        }
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(key);
+            for (String part : parts) {
+                byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+                mac.update(new byte[]{(byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16), (byte) (bytes.length >>> 8), (byte) bytes.length});
+                mac.update(bytes);
+            }
+            return hex(mac.doFinal());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is part of every JRE", e);
+        }
+    }
+
+    /**
+     * Compares two HMACs in constant time
+     */
+    public static boolean sameHmac(String expected, String actual) {
+        return actual != null && MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), actual.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Converts the bytes into lower case hex characters
+     */
+    public static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
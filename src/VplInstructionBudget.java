@@ -0,0 +1,168 @@
+import java.io.File;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Java agent which limits the number of operations (method calls and loop iterations) of the classes
+ * of the submission, independent of the load of the host:
+ * <pre>
+ *     java -javaagent:vpl-junit.jar=100000000 -jar vpl-junit.jar
+ * </pre>
+ * Every class except the JDK, JUnit, the grader and the test classes is rewritten by the
+ * {@link InstructionCounterRewriter}. Once the budget is exceeded, every further operation throws
+ * {@link Exceeded}, which fails the running test (or terminates the program). The grader resets the
+ * count when a test starts; child JVMs (e.g. of the {@link VplConsoleSimulator}) get the agent with the
+ * same budget for their whole run. Threads of the submission share the count.
+ * <p>
+ * Tests which run at the same time (a {@link Concurrent} class or <code>-Dvpl.parallel</code>) share
+ * one budget: the count is only reset when a test starts while no other test is running, so a running
+ * test never loses its count. The operations of such tests are counted exactly, but which of them
+ * exceeds the shared budget depends on the scheduling; use sequential tests for reproducible limits.
+ */
+public final class VplInstructionBudget {
+    private static final long DEFAULT_BUDGET = 1_000_000_000L;
+    private static final String[] SHARED_PACKAGES = {"java/", "javax/", "jdk/", "sun/", "com/sun/",
+            "org/junit/", "junit/", "org/hamcrest/", "org/opentest4j/", "org/apiguardian/"};
+    private static final String RUN_WITH = "org.junit.runner.RunWith";
+
+    private static volatile boolean active;
+    private static long budget = Long.MAX_VALUE;
+    private static final AtomicLong COUNT = new AtomicLong();
+    private static final AtomicInteger RUNNING = new AtomicInteger();
+
+    /**
+     * Private to prevent instantiation
+     */
+    private VplInstructionBudget() {
+
+    }
+
+    /**
+     * Installs the agent
+     *
+     * @param args Budget (number of operations), by default {@value #DEFAULT_BUDGET}
+     */
+    public static void premain(String args, Instrumentation instrumentation) {
+        budget = args == null || args.trim().isEmpty() ? DEFAULT_BUDGET : Long.parseLong(args.trim());
+        CodeSource cs = VplInstructionBudget.class.getProtectionDomain().getCodeSource();
+        instrumentation.addTransformer(new Transformer(cs == null ? null : cs.getLocation().toString()));
+        active = true;
+    }
+
+    /**
+     * Called by the rewritten classes for every operation
+     */
+    public static void tick() {
+        if (COUNT.incrementAndGet() > budget) {
+            throw new Exceeded(budget);
+        }
+    }
+
+    /**
+     * Starts to count again
+     */
+    public static void reset() {
+        COUNT.set(0);
+    }
+
+    /**
+     * Called when a test starts: starts to count again unless other tests are still running
+     */
+    public static void testStarted() {
+        if (RUNNING.getAndIncrement() == 0) {
+            reset();
+        }
+    }
+
+    /**
+     * Called when a test has finished
+     */
+    public static void testFinished() {
+        RUNNING.updateAndGet(n -> Math.max(0, n - 1));
+    }
+
+    /**
+     * Returns the number of operations since the last reset
+     */
+    public static long getCount() {
+        return COUNT.get();
+    }
+
+    /**
+     * Returns true if the JVM was started with the agent
+     */
+    public static boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Options for a child JVM which should use the agent as well (none if the agent is not active)
+     */
+    public static String[] jvmOptions() {
+        if (!active) {
+            return new String[0];
+        }
+        try {
+            CodeSource cs = VplInstructionBudget.class.getProtectionDomain().getCodeSource();
+            File jar = new File(cs.getLocation().toURI());
+            return new String[]{"-javaagent:" + jar.getAbsolutePath() + "=" + budget};
+        } catch (URISyntaxException | RuntimeException e) {
+            return new String[0];
+        }
+    }
+
+    /**
+     * Thrown by every operation after the budget has been exceeded
+     */
+    public static class Exceeded extends Error {
+        private static final long serialVersionUID = 1L;
+
+        Exceeded(long budget) {
+            super("The program needs more than " + budget + " operations (method calls and loop iterations)");
+        }
+    }
+
+    /**
+     * Rewrites the classes of the submission
+     */
+    private static class Transformer implements ClassFileTransformer {
+        private final String graderLocation;
+        private final ClassLoader platformLoader = ClassLoader.getSystemClassLoader().getParent();
+
+        Transformer(String graderLocation) {
+            this.graderLocation = graderLocation;
+        }
+
+        @Override
+        public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                                ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+            if (loader == null || loader == platformLoader || className == null || classBeingRedefined != null) {
+                return null;
+            }
+            for (String prefix : SHARED_PACKAGES) {
+                if (className.startsWith(prefix)) {
+                    return null;
+                }
+            }
+            CodeSource cs = protectionDomain == null ? null : protectionDomain.getCodeSource();
+            if (cs != null && cs.getLocation() != null && cs.getLocation().toString().equals(graderLocation)) {
+                return null;
+            }
+            try {
+                ClassFileInfo info = ClassFileInfo.parse(classfileBuffer);
+                if (WorkspaceIndex.declaresTests(info) || info.getAnnotations().contains(RUN_WITH)) {
+                    return null;
+                }
+                return InstructionCounterRewriter.rewrite(classfileBuffer, "VplInstructionBudget", "tick");
+            } catch (Throwable t) {
+                // The class is loaded unchanged
+                return null;
+            }
+        }
+    }
+}
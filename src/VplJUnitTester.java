@@ -1,15 +1,22 @@
 import org.junit.runner.Description;
 import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runner.Runner;
 import org.junit.runner.notification.Failure;
 import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.DirectoryStream;
-import java.nio.file.Files;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -23,10 +30,39 @@ import java.util.stream.Collectors;
 public class VplJUnitTester extends RunListener {
     private static final String TEST_PATH = ".";
 
-    private final Pattern POINT_REGEX = Pattern.compile(".*_(\\d+)P.*");
+    private static final Pattern DEDUCTION_REGEX = Pattern.compile(".*-([0-9]+)P.xml");
 
-    private final Map<String, Throwable> points = new LinkedHashMap<>();
+    private final TestResultStore results = new TestResultStore();
+    private final Map<String, Long> startTimes = new ConcurrentHashMap<>();
+    private final PointsTable pointsTable = new PointsTable();
     private final Map<String, List<StyleViolation>> deductions = new LinkedHashMap<>();
+    private final Map<String, String> measurements = new HashMap<>();
+
+    private final Path workDir;
+    private final PrintStream out;
+    private final GradingResult result;
+    private List<GradingReporter> reporters = Collections.emptyList();
+    private final Object reporterLock = new Object();
+    private GradingMetrics metrics;
+
+    /**
+     * Evaluates the current directory and prints the results to the console
+     */
+    public VplJUnitTester() {
+        this(Paths.get(TEST_PATH), System.out);
+    }
+
+    /**
+     * Evaluates the given directory
+     *
+     * @param workDir Directory with the submission (classes, sources and checkstyle files)
+     * @param out     Stream which receives the VPL output
+     */
+    public VplJUnitTester(Path workDir, PrintStream out) {
+        this.workDir = workDir;
+        this.out = out;
+        this.result = new GradingResult(workDir);
+    }
 
     /**
      * Runs All JUnit Testcases with the annotation {@see VplTestcase} of all given classes.
@@ -34,199 +70,444 @@ public class VplJUnitTester extends RunListener {
      * @param args Classes to run the tests against
      */
     public static void main(String[] args) throws ClassNotFoundException, IOException, InterruptedException {
+        // Other modes of operation
+        if (args.length > 0) {
+            String[] options = Arrays.copyOfRange(args, 1, args.length);
+            switch (args[0]) {
+                case VplGradingDaemon.OPTION:
+                    VplGradingDaemon.main(options);
+                    return;
+                case VplBatchGrader.OPTION:
+                    VplBatchGrader.main(options);
+                    return;
+                case VplGradingWorker.OPTION:
+                    VplGradingWorker.main(options);
+                    return;
+                case VplGradingCoordinator.OPTION:
+                    VplGradingCoordinator.main(options);
+                    return;
+                default:
+                    break;
+            }
+        }
 
         VplJUnitTester testSuite = new VplJUnitTester();
+        if (testSuite.grade(args, ClassLoader.getSystemClassLoader()) < 0) {
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Runs the whole evaluation: discovery, JUnit tests, style checks and the summary.
+     *
+     * @param args   Classes to run the tests against (empty -> search the working directory)
+     * @param loader Classloader which loads the test classes
+     * @return the grade or -1 if there was nothing to test
+     */
+    public double grade(String[] args, ClassLoader loader) throws ClassNotFoundException, IOException, InterruptedException {
+        this.reporters = GradingReporter.open(workDir);
+        this.metrics = GradingMetrics.isEnabled() ? new GradingMetrics() : null;
+        Closeable recording = GradingEvents.startRecording(workDir);
+        if (this.metrics != null) {
+            VplGradingContext.addChildProcessListener(this.metrics);
+        }
+        try {
+            return gradeWorkspace(args, loader);
+        } finally {
+            if (this.metrics != null) {
+                VplGradingContext.removeChildProcessListener(this.metrics);
+                this.metrics.printSummary(out);
+                try {
+                    this.metrics.write(workDir);
+                } catch (IOException e) {
+                    System.err.println("Cannot write the metrics: " + e);
+                }
+            }
+            synchronized (this.reporterLock) {
+                for (GradingReporter reporter : this.reporters) {
+                    try {
+                        reporter.gradingFinished(result);
+                        reporter.close();
+                    } catch (IOException e) {
+                        System.err.println("Cannot write the report: " + e);
+                    }
+                }
+                this.reporters = Collections.emptyList();
+            }
+            if (recording != null) {
+                try {
+                    recording.close();
+                } catch (IOException e) {
+                    System.err.println("Cannot write the recording: " + e);
+                }
+            }
+            try {
+                this.results.close();
+            } catch (IOException e) {
+                System.err.println("Cannot delete the test results: " + e);
+            }
+        }
+    }
+
+    /**
+     * Scans (and compiles) the workspace and evaluates it
+     */
+    @SuppressWarnings("try")
+    private double gradeWorkspace(String[] args, ClassLoader loader) throws ClassNotFoundException, IOException, InterruptedException {
+        WorkspaceIndex workspace;
+        try (GradingMetrics.Phase phase = phase("discovery", null)) {
+            workspace = WorkspaceIndex.scan(workDir);
+        }
+        if (!VplCompiler.isEnabled()) {
+            if (workspace.getJars().isEmpty() || loader instanceof SubmissionClassLoader) {
+                return evaluate(args, loader, workspace);
+            }
+            // The jars of the submission are not on the classpath of the JVM
+            try (SubmissionClassLoader jarLoader = new SubmissionClassLoader(workDir, loader)) {
+                return evaluate(args, jarLoader, workspace);
+            }
+        }
+
+        // STEP 0: Compile the sources into memory
+        Map<String, byte[]> compiled;
+        try (GradingMetrics.Phase phase = phase("compile", null)) {
+            compiled = new VplCompiler(workDir, out).compile(workspace.getSourceFiles());
+        }
+        if (compiled == null) {
+            out.println("Not compiled");
+            return -1;
+        }
+        workspace.setMemoryClasses(compiled);
+        ClassLoader parent = loader instanceof SubmissionClassLoader ? loader.getParent() : loader;
+        VplGradingContext.setMemoryClasses(compiled);
+        try (SubmissionClassLoader memoryLoader = new SubmissionClassLoader(workDir, compiled, parent)) {
+            return evaluate(args, memoryLoader, workspace);
+        } finally {
+            VplGradingContext.setMemoryClasses(null);
+        }
+    }
+
+    /**
+     * STEP 1 - 5 of the evaluation
+     *
+     * @param workspace Files of the submission
+     */
+    @SuppressWarnings("try")
+    private double evaluate(String[] args, ClassLoader loader, WorkspaceIndex workspace) throws ClassNotFoundException, IOException, InterruptedException {
         List<String> classesToRun = new ArrayList<>();
 
         // STEP 1: Check for files that should be tested.
 
         // No args -> Check all Classes in the current directory
         if (args.length == 0) {
-            // Look for classes in the current directory
-            classesToRun.addAll(findTestClasses());
+            // Look for test classes in the workspace
+            classesToRun.addAll(workspace.getTestClasses());
 
             // Sanity check
             if (classesToRun.isEmpty()) {
-                System.out.println("There are no classes in the directory " + Paths.get(TEST_PATH).toAbsolutePath() + " which could be tested !");
-                System.out.println(" Option A: Hand over the classes which should be tested as arguments to the jar");
-                System.out.println(" Option B: Ensure that your test classes names are ended with  'Tests'  (eg. SimpleTests)");
-                System.out.println(" Or have a look into the documentation: https://github.com/bytebang/vpl-junit");
-                System.exit(-1);
+                out.println("There are no classes in the directory " + workDir.toAbsolutePath() + " which could be tested !");
+                out.println(" Option A: Hand over the classes which should be tested as arguments to the jar");
+                out.println(" Option B: Ensure that your test classes contain methods annotated with @Test");
+                out.println(" Or have a look into the documentation: https://github.com/bytebang/vpl-junit");
+                return -1;
             }
         } else {
             classesToRun.addAll(Arrays.asList(args));
         }
 
         // STEP 2: Run tests for all classes in the arguments.
-        System.out.println("Running JUnit tests");
-        JUnitCore core = new JUnitCore();
-        core.addListener(testSuite);
-
-        for (String classname : classesToRun) {
-            System.out.println("\t" + classname);
-            core.run(Class.forName(classname));
-        }
-
-
-        // STEP 3: Run style checks against the source files.
-        System.out.println("Running checkstyle");
-        List<String> styleChecks = findStyleChecks();
-        List<File> sourceFiles = findSourceFiles();
-        if (!styleChecks.isEmpty() && !sourceFiles.isEmpty()) {
-            if (Objects.requireNonNull(CheckstyleRunner.getCheckstyleExecutable()).exists()) {
-                for (String check : styleChecks) {
-                    System.out.println("\tCheck " + (new File(check)).getName() + " against " + sourceFiles.toString());
-                    List<StyleViolation> violations = CheckstyleRunner.run(check, sourceFiles);
-                    testSuite.deductions.put(check, violations);
+        out.println("Running JUnit tests");
+        try (GradingMetrics.Phase phase = phase("junit", null)) {
+            if (JUnitPlatformRunner.isEnabled()) {
+                for (String classname : classesToRun) {
+                    out.println("\t" + classname);
+                    warnUnsupportedOnPlatform(classname, loader);
                 }
+                if (!JUnitPlatformRunner.run(classesToRun, loader, this)) {
+                    out.println("Comment :=>> Cannot run the tests because the JUnit Platform was not found.");
+                }
+            } else if (ForkedTestRunner.isEnabled()) {
+                new ForkedTestRunner(out, this, loader, workspace.getJars()).run(classesToRun);
             } else {
-                System.out.println("Comment :=>> Cannot check for style violations because checkstyle was not found.");
+                runJUnit4(classesToRun, loader);
             }
         }
 
-        // STEP 4: Summary for JUnit.
-        int totalPoints = 0;
-        for (String testName : testSuite.points.keySet()) {
-            Throwable t = testSuite.points.get(testName);
-            int points = testSuite.extractPointsFromTestName(testName);
 
-            // Testcase without points
-            if (points <= 0) {
-                continue;
-            }
+        // STEP 3: Run style checks against the source files (nothing to load without checkstyle files).
+        out.println("Running checkstyle");
+        if (!workspace.getStyleChecks().isEmpty()) {
+            checkStyle(workspace);
+        }
 
-            // No Exception -> Test has succeeded
-            if (null == t) {
-                totalPoints += points;
-                System.out.println("Comment :=>>\uD83D\uDE04 " + testName + " SUCCESS -> You get " + points + " points!");
-            } else {
-                String message = t.toString();
-                String[] lines = message.split(System.lineSeparator());
-                System.out.println("Comment :=>>\uD83D\uDE2D " + testName + " FAILED!!!");
-                System.out.println("<|--");
-                for (String line : lines) {
-                    System.out.println(">" + line);
+        // STEP 4 + 5: Summary for JUnit and checkstyle
+        double grade;
+        try (GradingMetrics.Phase phase = phase("summary", null)) {
+            grade = summarize();
+        }
+        out.println("\nGrade :=>> " + PointsTable.format(grade));
+        result.setGrade(grade);
+        return grade;
+    }
+
+    /**
+     * Prints the results of the tests and of the style checks
+     *
+     * @return the grade
+     */
+    private double summarize() throws IOException {
+        // STEP 4: Summary for JUnit (a single pass over the stored results).
+        double totalPoints = 0;
+        Map<String, Double> penalties = new LinkedHashMap<>();
+        try (TestResultStore.Cursor cursor = this.results.read()) {
+            for (TestResultStore.Record test = cursor.next(); test != null; test = cursor.next()) {
+                String testName = test.getName();
+                double points = test.getPoints();
+                GradingResult.TestResult testResult = new GradingResult.TestResult(testName, points, test.isPassed(), test.getMessage(), test.getMillis());
+                result.addTest(testResult);
+
+                // Testcase without points (a penalty only counts if the test fails)
+                if (points == 0 || (points < 0 && test.isPassed())) {
+                    continue;
+                }
+
+                // No Exception -> Test has succeeded
+                if (test.isPassed()) {
+                    totalPoints += points;
+                    String measured = test.getMeasured();
+                    out.println("Comment :=>>\uD83D\uDE04 " + testName + " SUCCESS -> You get " + PointsTable.format(points) + " points!"
+                            + (measured == null ? "" : " (" + measured + ")"));
+                } else {
+                    String[] lines = test.getMessage().split(System.lineSeparator());
+                    if (points < 0) {
+                        penalties.merge(testName.substring(0, testName.lastIndexOf('.')), -points, Double::sum);
+                        out.println("Comment :=>>\uD83D\uDE2D " + testName + " FAILED!!! -> " + PointsTable.format(points) + " points");
+                    } else {
+                        out.println("Comment :=>>\uD83D\uDE2D " + testName + " FAILED!!!");
+                    }
+                    out.println("<|--");
+                    for (String line : lines) {
+                        out.println(">" + line);
+                    }
+                    out.println("--|>");
                 }
-                System.out.println("--|>");
             }
         }
+        for (Map.Entry<String, Double> penalty : penalties.entrySet()) {
+            totalPoints -= Math.min(penalty.getValue(), this.pointsTable.getMaxDeduction(penalty.getKey()));
+        }
 
         // STEP 5: Summary for checkstyle
-        for (String check : testSuite.deductions.keySet()) {
-            Integer max_deduction = testSuite.getDeductionsForCheckName(check);
-            List<StyleViolation> violations = testSuite.deductions.get(check)
+        for (String check : this.deductions.keySet()) {
+            Integer max_deduction = getDeductionsForCheckName(check);
+            List<StyleViolation> violations = this.deductions.get(check)
                     .stream()
-                    .filter(sv -> sv.getSeverity().equalsIgnoreCase("WARN"))
+                    .filter(VplJUnitTester::isViolation)
                     .collect(Collectors.toList());
 
             int drain = Math.min(max_deduction, violations.size());
             String checkName = (new File(check)).getName();
+            GradingResult.StyleResult styleResult = new GradingResult.StyleResult(checkName, violations.size(), drain);
+            result.addStyleCheck(styleResult);
+            for (GradingReporter reporter : this.reporters) {
+                reporter.styleChecked(styleResult);
+            }
             if (drain == 0) {
-                System.out.println("Comment :=>> " + checkName + " ... no violations");
+                out.println("Comment :=>> " + checkName + " ... no violations");
 
-                Map<String, List<StyleViolation>> otherMessages = testSuite.deductions.get(check)
-                        .stream()
-                        .filter(sv -> !sv.getSeverity().equalsIgnoreCase("WARN"))
-                        .collect(Collectors.groupingBy(StyleViolation::getSeverity));
+                Map<String, List<StyleViolation>> otherMessages = groupStyleMessages(this.deductions.get(check), false, StyleViolation::getSeverity);
 
                 if (!otherMessages.isEmpty()) {
-                    System.out.println("<|--");
+                    out.println("<|--");
                     for (String severity : otherMessages.keySet()) {
                         List<StyleViolation> sv = otherMessages.get(severity);
-                        System.out.println("Messages of type '" + severity + "' (not counted as violations)");
+                        out.println("Messages of type '" + severity + "' (not counted as violations)");
                         for (StyleViolation v : sv) {
-                            System.out.println("        o " + v.getFile().getName() + ":" + v.getLine() + " -> " + v.getMessage());
+                            out.println("        o " + v.getFile().getName() + ":" + v.getLine() + " -> " + v.getMessage());
                         }
                     }
-                    System.out.println("--|>");
+                    out.println("--|>");
                 }
                 continue;
             }
 
-            System.out.println("Comment :=>> " + checkName + " ... -" + drain + " points because of " + violations.size() + " "
+            out.println("Comment :=>> " + checkName + " ... -" + drain + " points because of " + violations.size() + " "
                     + (violations.size() == 1 ? "violation" : "violations"));
 
             // Reduce the points
             totalPoints = totalPoints - drain;
 
             // Inform the user
-            Map<String, List<StyleViolation>> violationsPerType = violations.stream()
-                    .collect(Collectors.groupingBy(StyleViolation::getType));
+            Map<String, List<StyleViolation>> violationsPerType = groupStyleMessages(violations, true, StyleViolation::getType);
 
             // Give the user a hint of what went wrong
-            System.out.println("<|--");
+            out.println("<|--");
             for (String violationType : violationsPerType.keySet()) {
                 List<StyleViolation> sv = violationsPerType.get(violationType);
-                System.out.println(" *** " + violationType + " (" + sv.size() + " " + (violations.size() == 1 ? "violation" : "violations") + ") ***");
+                out.println(" *** " + violationType + " (" + sv.size() + " " + (violations.size() == 1 ? "violation" : "violations") + ") ***");
 
                 for (StyleViolation v : sv) {
-                    System.out.println("        o " + v.getFile().getName() + ":" + v.getLine() + " -> " + v.getMessage());
+                    out.println("        o " + v.getFile().getName() + ":" + v.getLine() + " -> " + v.getMessage());
                 }
             }
-            System.out.println("--|>");
+            out.println("--|>");
 
         }
-        System.out.println("\nGrade :=>> " + Math.max(totalPoints, 0));
+        return Math.max(totalPoints, 0);
     }
 
     /**
-     * Searches checkstyle_files.
+     * Runs the test classes with JUnit 4 (replaying cached results if the {@link TestResultCache} is enabled)
      */
-    private static List<String> findStyleChecks() {
-        List<String> foundChecks = new ArrayList<>();
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get("."), "checkstyle*.xml")) {
-            for (Path entry : stream) {
-                foundChecks.add(entry.toAbsolutePath().normalize().toString());
+    private void runJUnit4(List<String> classesToRun, ClassLoader loader) throws ClassNotFoundException, IOException {
+        RunNotifier notifier = new RunNotifier();
+        notifier.addListener(this);
+        if (this.metrics != null) {
+            notifier.addListener(this.metrics);
+        }
+        RunListener events = GradingEvents.testListener();
+        if (events != null) {
+            notifier.addListener(events);
+        }
+        TestResultCache cache = TestResultCache.open(workDir);
+        VplGradingContext.ChildProcessListener cacheListener = cache == null ? null : cache::childProcessStarted;
+        if (cache != null) {
+            notifier.addListener(cache);
+            VplGradingContext.addChildProcessListener(cacheListener);
+        }
+
+        Function<Class<?>, Request> requests = testClass -> BudgetRunner.request(testClass, this::recordMeasurement);
+        for (String classname : classesToRun) {
+            out.println("\t" + classname);
+            if (cache == null) {
+                run(requests.apply(Class.forName(classname, true, loader)), notifier);
+                continue;
+            }
+
+            // Replay unchanged tests, run the others
+            Request request = cache.prepare(classname, loader, this::recordResult, this.pointsTable, requests);
+            if (request != null) {
+                run(request, notifier);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
-        return foundChecks;
+        if (cache != null) {
+            VplGradingContext.removeChildProcessListener(cacheListener);
+            cache.save();
+        }
     }
 
     /**
-     * Searches checkstyle_files.
+     * The {@link BudgetRunner} is a JUnit 4 runner, so budgets are not measured and {@link Concurrent}
+     * is ignored on the JUnit Platform: tell the teacher instead of silently awarding the points
      */
-    private static List<File> findSourceFiles() {
-        List<File> foundSources = new ArrayList<>();
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get("."), "*.java")) {
-            for (Path entry : stream) {
-                // Ignore everything that looks like a JUnit-test
-                if (!entry.getFileName().toString().matches(".*[Tt]est[s]?.java")) {
-                    foundSources.add(entry.toFile());
+    private void warnUnsupportedOnPlatform(String classname, ClassLoader loader) {
+        Class<?> testClass;
+        try {
+            testClass = Class.forName(classname, false, loader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            // reported by the platform
+            return;
+        }
+        for (Class<?> c = testClass; c != null; c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+                if (method.isAnnotationPresent(Budget.class)) {
+                    out.println("Comment :=>> The @Budget of " + classname + "." + method.getName()
+                            + " is not measured on the JUnit Platform (use JUnit 4)");
                 }
             }
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
         }
-        return foundSources;
+        if (testClass.isAnnotationPresent(Concurrent.class)) {
+            out.println("Comment :=>> The tests of " + classname + " do not run concurrently on the JUnit Platform (use -Dvpl.parallel)");
+        }
     }
 
     /**
-     * Searches Classes which look like test classes in the directory
+     * Runs the request like {@link JUnitCore#run(Request)}, but without its {@link Result}, which would keep
+     * every failure (and everything it references) till the end of the evaluation
      */
-    public static List<String> findTestClasses() {
-        List<String> foundClasses = new ArrayList<>();
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(TEST_PATH), "*.class")) {
-            for (Path entry : stream) {
-                String classFilename = entry.getFileName().toString();
-                if (classFilename.matches(".*[Tt]est[s]?.class")) {
-                    foundClasses.add(classFilename.substring(0, classFilename.lastIndexOf(".class")));
-                }
+    static void run(Request request, RunNotifier notifier) {
+        Runner runner = request.getRunner();
+        notifier.fireTestRunStarted(runner.getDescription());
+        runner.run(notifier);
+        notifier.fireTestRunFinished(new Result());
+    }
+
+    /**
+     * Runs every checkstyle configuration of the workspace against the sources of the submission
+     */
+    @SuppressWarnings("try")
+    private void checkStyle(WorkspaceIndex workspace) throws IOException, InterruptedException {
+        List<File> sourceFiles = new ArrayList<>();
+        for (Path source : workspace.getSourceFilesWithoutTests()) {
+            sourceFiles.add(source.toFile());
+        }
+        if (sourceFiles.isEmpty()) {
+            return;
+        }
+        if (CheckstyleRunner.getCheckstyleExecutable() == null) {
+            out.println("Comment :=>> Cannot check for style violations because checkstyle was not found.");
+            return;
+        }
+        for (Path path : workspace.getStyleChecks()) {
+            String check = path.toString();
+            out.println("\tCheck " + (new File(check)).getName() + " against " + sourceFiles.toString());
+            try (GradingMetrics.Phase phase = phase("checkstyle", (new File(check)).getName())) {
+                this.deductions.put(check, CheckstyleRunner.run(check, sourceFiles));
             }
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
         }
-        return foundClasses;
     }
 
     /**
-     * Gives minus points for the check
+     * Starts to measure a phase if the metrics are enabled
+     *
+     * @return the phase or null
+     */
+    private GradingMetrics.Phase phase(String name, String label) {
+        return this.metrics == null ? null : this.metrics.phase(name, label);
+    }
+
+    /**
+     * Returns the machine readable result of the last call to {@link #grade(String[], ClassLoader)}
+     */
+    public GradingResult getResult() {
+        return result;
+    }
+
+    /**
+     * Searches test classes in the current directory
+     */
+    public static List<String> findTestClasses() throws IOException {
+        return findTestClasses(Paths.get(TEST_PATH));
+    }
+
+    /**
+     * Searches test classes in the given directory (including its subdirectories and jars)
      */
-    private Integer getDeductionsForCheckName(String check) {
-        Pattern p = Pattern.compile(".*-([0-9]+)P.xml");
+    public static List<String> findTestClasses(Path dir) throws IOException {
+        return WorkspaceIndex.scan(dir).getTestClasses();
+    }
+
+    /**
+     * Groups the messages of a style check for the summary
+     *
+     * @param violations true for the messages which cost points (warnings), false for the others
+     * @param key        e.g. the type or the severity of the message
+     */
+    static Map<String, List<StyleViolation>> groupStyleMessages(List<StyleViolation> messages, boolean violations, Function<StyleViolation, String> key) {
+        return messages.stream()
+                .filter(sv -> isViolation(sv) == violations)
+                .collect(Collectors.groupingBy(key));
+    }
+
+    private static boolean isViolation(StyleViolation sv) {
+        return sv.getSeverity().equalsIgnoreCase("WARN");
+    }
 
-        Matcher m = p.matcher(check);
+    /**
+     * Gives minus points for the check
+     */
+    static Integer getDeductionsForCheckName(String check) {
+        Matcher m = DEDUCTION_REGEX.matcher(check);
 
         if (m.matches()) {
             String points = m.group(1);
@@ -241,12 +522,24 @@ public class VplJUnitTester extends RunListener {
      * If the function contains no hint for points then -1 is returned.
      */
     public int extractPointsFromTestName(String functionName) {
-        Matcher m = POINT_REGEX.matcher(functionName);
-        if (m.matches()) {
-            String points = m.group(1);
-            return Integer.parseInt(points);
-        }
-        return -1;
+        return PointsTable.pointsFromName(functionName);
+    }
+
+    /**
+     * Reads the points of all tests of the class (or suite) before they run
+     */
+    @Override
+    public void testRunStarted(Description description) {
+        this.pointsTable.register(description);
+    }
+
+    /**
+     * Every test gets the whole operation budget (if the {@link VplInstructionBudget} agent is active)
+     */
+    @Override
+    public void testStarted(Description description) {
+        VplInstructionBudget.testStarted();
+        recordStart(description.getTestClass().getName() + "." + description.getMethodName());
     }
 
     /**
@@ -254,8 +547,9 @@ public class VplJUnitTester extends RunListener {
      */
     @Override
     public void testFinished(Description description) {
+        VplInstructionBudget.testFinished();
         String methodName = description.getTestClass().getName() + "." + description.getMethodName();
-        this.points.putIfAbsent(methodName, null);
+        recordResult(methodName, null);
     }
 
     /**
@@ -264,6 +558,79 @@ public class VplJUnitTester extends RunListener {
     @Override
     public void testFailure(Failure failure) {
         String methodName = failure.getDescription().getTestClass().getName() + "." + failure.getDescription().getMethodName();
-        this.points.putIfAbsent(methodName, failure.getException());
+        recordResult(methodName, failure.getException());
+    }
+
+    /**
+     * Records the start of a test, so its duration is known when its outcome is recorded
+     *
+     * @param testName Class name and method name of the test
+     */
+    void recordStart(String testName) {
+        this.startTimes.put(testName, System.nanoTime());
+    }
+
+    /**
+     * Records the outcome of a test (independent of the engine which ran it). Tests may finish
+     * concurrently. The first failure of a test is kept; only its text is stored.
+     *
+     * @param testName Class name and method name of the test
+     * @param failure  The failure or null if the test passed
+     */
+    void recordResult(String testName, Throwable failure) {
+        Long start = this.startTimes.remove(testName);
+        recordResult(testName, failure, start == null ? -1 : System.nanoTime() - start);
+    }
+
+    /**
+     * Records the outcome of a test whose duration was measured elsewhere (e.g. in a worker JVM)
+     *
+     * @param nanos Duration of the test or -1 if it is not known
+     */
+    void recordResult(String testName, Throwable failure, long nanos) {
+        String measured;
+        synchronized (this.measurements) {
+            measured = this.measurements.remove(testName);
+        }
+        TestResultStore.Record record;
+        synchronized (this.results) {
+            record = this.results.add(testName, this.pointsTable.getPoints(testName), failure, nanos, measured);
+        }
+        if (record != null) {
+            report(record);
+        }
+    }
+
+    /**
+     * Passes the result of a test to the reporters as soon as the test has finished
+     */
+    private void report(TestResultStore.Record test) {
+        GradingResult.TestResult testResult = new GradingResult.TestResult(test.getName(), test.getPoints(), test.isPassed(), test.getMessage(), test.getMillis());
+        synchronized (this.reporterLock) {
+            for (GradingReporter reporter : this.reporters) {
+                try {
+                    reporter.testFinished(testResult);
+                } catch (IOException e) {
+                    System.err.println("Cannot write the report: " + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the measured values of a test with a {@link Budget}, which are shown in its comment
+     * (before the outcome of the test is recorded)
+     */
+    void recordMeasurement(String testName, String measured) {
+        synchronized (this.measurements) {
+            this.measurements.put(testName, measured);
+        }
+    }
+
+    /**
+     * Returns the table which receives the points of the tests
+     */
+    PointsTable getPointsTable() {
+        return pointsTable;
     }
 }
@@ -0,0 +1,80 @@
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Replaces System.out and System.err with a stream which forwards everything to the stream bound to
+ * the current thread. This allows several evaluations to run concurrently within one JVM while the
+ * console output of their tests still ends up in the output of the right evaluation.
+ * <p>
+ * Threads started by an evaluation inherit its stream.
+ */
+public final class VplOutputRouter extends OutputStream {
+    private static final InheritableThreadLocal<PrintStream> TARGET = new InheritableThreadLocal<>();
+    private static PrintStream originalOut;
+    private static PrintStream originalErr;
+
+    private final boolean error;
+
+    private VplOutputRouter(boolean error) {
+        this.error = error;
+    }
+
+    /**
+     * Installs the router for System.out and System.err (only once)
+     */
+    public static synchronized void install() {
+        if (originalOut != null) {
+            return;
+        }
+        originalOut = System.out;
+        originalErr = System.err;
+        System.setOut(new PrintStream(new VplOutputRouter(false), true));
+        System.setErr(new PrintStream(new VplOutputRouter(true), true));
+    }
+
+    /**
+     * Sends the console output of the current thread (and threads started by it) to the given stream
+     */
+    public static void bind(PrintStream out) {
+        TARGET.set(out);
+    }
+
+    /**
+     * Sends the console output of the current thread to the original console again
+     */
+    public static void unbind() {
+        TARGET.remove();
+    }
+
+    /**
+     * Returns the console of the JVM (unaffected by any binding)
+     */
+    public static PrintStream console() {
+        return originalErr != null ? originalErr : new PrintStream(new FileOutputStream(FileDescriptor.err), true);
+    }
+
+    private PrintStream target() {
+        PrintStream target = TARGET.get();
+        if (target != null) {
+            return target;
+        }
+        return error ? originalErr : originalOut;
+    }
+
+    @Override
+    public void write(int b) {
+        target().write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        target().write(b, off, len);
+    }
+
+    @Override
+    public void flush() {
+        target().flush();
+    }
+}
@@ -0,0 +1,371 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Produces the expected output of a console program with the reference solution of the teacher instead
+ * of hard coded lines, and compares the output of the submission against it:
+ * <pre>
+ *     private static final VplReferenceOracle ORACLE = new VplReferenceOracle("CowSayReference", "reference.jar");
+ *
+ *     &#64;Test
+ *     public void testLooksLikeCow_80P() throws Exception {
+ *         ORACLE.assertSameOutput("CowSay", new String[]{"HTL Leoben"}, Collections.emptyList());
+ *     }
+ * </pre>
+ * Both programs are started with the {@link VplConsoleSimulator}, get the same arguments and input
+ * lines (followed by the end of the input) and have to write the same lines to stdout.
+ * <p>
+ * The reference solution runs on its own classpath (a jar or directory, relative to the submission), so
+ * classes of the student with the same names as its classes cannot change its output. Without a
+ * classpath it runs on the classpath of the submission and must not use any class of the submission
+ * except its own nested classes.
+ * <p>
+ * The output of the reference solution is memoized within the JVM and, with
+ * <code>-Dvpl.oracle.cache=&lt;absolute dir&gt;</code>, on disk, keyed by the hash of the bytecode of the
+ * reference solution (including the classes it depends on), its arguments and its input. So the
+ * reference solution runs once per input for all submissions and a changed reference solution is run
+ * again. The first line of every file is an HMAC of the output with the key of the grader
+ * (<code>-Dvpl.key</code>, see {@link VplHashes#hmac(String...)}); files which fail the check are
+ * ignored, so a submission cannot plant the expected output. Without a key the directory is not used.
+ */
+public class VplReferenceOracle {
+    private static final int MEMO_SIZE = 1000;
+    private static final Map<String, List<String>> MEMO = Collections.synchronizedMap(new LinkedHashMap<String, List<String>>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+            return size() > MEMO_SIZE;
+        }
+    });
+    private static final String CLASS_SUFFIX = ".class";
+    private static final AtomicBoolean NO_KEY_REPORTED = new AtomicBoolean();
+
+    private final String referenceClass;
+    private final Path classpath;
+    private long timeoutMillis = 5000;
+    private Path cacheDirectory;
+    private String referenceHash;
+
+    /**
+     * Creates an oracle which runs the given class on the classpath of the submission. The class must
+     * not use other classes of the submission, since a student could replace them.
+     *
+     * @param referenceClass Class with a main method which produces the expected output
+     */
+    public VplReferenceOracle(String referenceClass) {
+        this(referenceClass, null);
+    }
+
+    /**
+     * Creates an oracle which runs the given class on its own classpath
+     *
+     * @param referenceClass Class with a main method which produces the expected output
+     * @param classpath      Jar or directory with the compiled reference solution (relative to the
+     *                       submission), null for the classpath of the submission
+     */
+    public VplReferenceOracle(String referenceClass, String classpath) {
+        this.referenceClass = referenceClass;
+        this.classpath = classpath == null ? null : workDir().resolve(classpath).toAbsolutePath().normalize();
+        String location = System.getProperty("vpl.oracle.cache");
+        if (location != null && !location.isEmpty()) {
+            this.cacheDirectory = Paths.get(location);
+        }
+    }
+
+    /**
+     * Maximum time a single run of a program may take
+     */
+    public VplReferenceOracle timeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    /**
+     * Absolute directory which keeps the outputs of the reference solution across evaluations (null:
+     * only within the JVM). Overrides <code>-Dvpl.oracle.cache</code>.
+     */
+    public VplReferenceOracle cacheDirectory(Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+        return this;
+    }
+
+    /**
+     * Returns the output of the reference solution for the given arguments and input
+     */
+    public List<String> expectedOutput(String[] args, List<String> input) throws IOException, InterruptedException {
+        String key = keyOf(args, input);
+        List<String> expected = MEMO.get(key);
+        if (expected != null) {
+            return expected;
+        }
+        if (cacheDirectory != null && !cacheDirectory.isAbsolute()) {
+            // A relative directory would be a different one for every submission
+            throw new IllegalStateException("The cache of the reference solution has to be an absolute path: " + cacheDirectory);
+        }
+        Path file = cacheDirectory == null || !hasKey() ? null : cacheDirectory.resolve(key + ".txt");
+        if (file != null && Files.isRegularFile(file)) {
+            expected = read(file, key);
+        }
+        if (expected == null) {
+            List<String> output = run(referenceClass, args, input);
+            if (output == null) {
+                throw new IllegalStateException("The reference solution " + referenceClass + " did not finish within "
+                        + timeoutMillis + " ms");
+            }
+            expected = Collections.unmodifiableList(output);
+            if (file != null) {
+                store(file, key, expected);
+            }
+        }
+        MEMO.put(key, expected);
+        return expected;
+    }
+
+    /**
+     * Runs the submission with the given input and fails if its output differs from the output of the
+     * reference solution
+     *
+     * @param studentClass Class with a main method which is tested
+     */
+    public void assertSameOutput(String studentClass, List<String> input) throws IOException, InterruptedException {
+        assertSameOutput(studentClass, new String[0], input);
+    }
+
+    /**
+     * Runs the submission with the given arguments and input and fails if its output differs from the
+     * output of the reference solution
+     *
+     * @param studentClass Class with a main method which is tested
+     */
+    public void assertSameOutput(String studentClass, String[] args, List<String> input) throws IOException, InterruptedException {
+        List<String> expected = expectedOutput(args, input);
+        List<String> actual = run(studentClass, args, input);
+        if (actual == null) {
+            fail("The program did not finish within " + timeoutMillis + " ms" + System.lineSeparator() + report(args, input, expected, null));
+        }
+        if (!actual.equals(expected)) {
+            fail("The output differs from the expected output" + System.lineSeparator() + report(args, input, expected, actual));
+        }
+    }
+
+    /**
+     * Runs a program with the given input
+     *
+     * @return the output or null if it did not finish in time
+     */
+    private List<String> run(String classname, String[] args, List<String> input) throws IOException, InterruptedException {
+        VplConsoleSimulator con = classpath == null || !classname.equals(referenceClass) ? new VplConsoleSimulator(classname, args)
+                : new VplConsoleSimulator(VplConsoleSimulator.buildCommandLine(new ArrayList<>(), classpath.toString(), classname, args), classname);
+        try {
+            try {
+                for (String line : input) {
+                    con.enterLine(line);
+                }
+                con.closeInput();
+            } catch (IOException e) {
+                // The program exited before it read all lines
+            }
+            if (!con.waitFor(timeoutMillis)) {
+                return null;
+            }
+            return con.getOutput();
+        } finally {
+            con.kill();
+        }
+    }
+
+    /**
+     * Builds the failure message with the input and both outputs
+     */
+    private static String report(String[] args, List<String> input, List<String> expected, List<String> actual) {
+        String nl = System.lineSeparator();
+        StringBuilder sb = new StringBuilder();
+        if (args.length > 0) {
+            sb.append("> arguments: ").append(Arrays.toString(args)).append(nl);
+        }
+        sb.append("> input:").append(nl);
+        for (String line : input) {
+            sb.append(">   ").append(line).append(nl);
+        }
+        sb.append("> expected output:").append(nl);
+        for (String line : expected) {
+            sb.append(">   ").append(line).append(nl);
+        }
+        if (actual != null) {
+            sb.append("> actual output:").append(nl);
+            for (String line : actual) {
+                sb.append(">   ").append(line).append(nl);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Hash of the reference solution, its arguments and its input
+     */
+    private String keyOf(String[] args, List<String> input) throws IOException {
+        MessageDigest digest = VplHashes.digest();
+        digest.update(referenceHash().getBytes(StandardCharsets.UTF_8));
+        for (String arg : args) {
+            digest.update((byte) 1);
+            digest.update(arg.getBytes(StandardCharsets.UTF_8));
+        }
+        for (String line : input) {
+            digest.update((byte) 2);
+            digest.update(line.getBytes(StandardCharsets.UTF_8));
+        }
+        return VplHashes.hex(digest.digest());
+    }
+
+    /**
+     * Hash of the bytecode of the reference solution and of all classes it depends on (computed once)
+     */
+    private synchronized String referenceHash() throws IOException {
+        if (referenceHash != null) {
+            return referenceHash;
+        }
+        MessageDigest digest = VplHashes.digest();
+        if (classpath != null && Files.isRegularFile(classpath)) {
+            digest.update(referenceClass.getBytes(StandardCharsets.UTF_8));
+            digest.update(Files.readAllBytes(classpath));
+            referenceHash = VplHashes.hex(digest.digest());
+            return referenceHash;
+        }
+
+        Path dir = classpath == null ? workDir() : classpath;
+        Map<String, byte[]> memoryClasses = classpath == null ? VplGradingContext.getMemoryClasses() : Collections.emptyMap();
+        DependencyGraph graph = DependencyGraph.scan(dir, memoryClasses);
+        Set<String> classes = graph.contains(referenceClass) ? graph.dependenciesOf(referenceClass)
+                : Collections.singleton(referenceClass);
+        if (classpath == null) {
+            List<String> shared = new ArrayList<>();
+            for (String classname : classes) {
+                if (!classname.equals(referenceClass) && !classname.startsWith(referenceClass + "$")) {
+                    shared.add(classname);
+                }
+            }
+            if (!shared.isEmpty()) {
+                throw new IllegalStateException("The reference solution " + referenceClass + " uses the classes " + shared
+                        + " of the submission, which a student could replace. Give it its own classpath, e.g. new VplReferenceOracle(\""
+                        + referenceClass + "\", \"reference.jar\")");
+            }
+        }
+
+        for (String classname : classes) {
+            byte[] bytecode = bytecodeOf(classname, dir, memoryClasses);
+            if (bytecode == null) {
+                throw new IllegalArgumentException("The reference solution " + classname + " was not found");
+            }
+            digest.update(classname.getBytes(StandardCharsets.UTF_8));
+            digest.update(bytecode);
+        }
+        referenceHash = VplHashes.hex(digest.digest());
+        return referenceHash;
+    }
+
+    private static Path workDir() {
+        return VplGradingContext.getWorkDir() == null ? Paths.get(".") : VplGradingContext.getWorkDir();
+    }
+
+    /**
+     * Returns the bytecode of a class of the submission or of the classpath (null if there is none)
+     */
+    private static byte[] bytecodeOf(String classname, Path workDir, Map<String, byte[]> memoryClasses) throws IOException {
+        byte[] bytecode = memoryClasses.get(classname);
+        if (bytecode != null) {
+            return bytecode;
+        }
+        String resource = classname.replace('.', '/') + CLASS_SUFFIX;
+        Path file = workDir.resolve(resource);
+        if (Files.isRegularFile(file)) {
+            return Files.readAllBytes(file);
+        }
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        try (InputStream in = loader == null ? null : loader.getResourceAsStream(resource)) {
+            if (in == null) {
+                return null;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, n);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    private static boolean hasKey() {
+        if (VplHashes.hasKey()) {
+            return true;
+        }
+        if (!NO_KEY_REPORTED.getAndSet(true)) {
+            System.err.println("Warning: The cache of the reference solution is not used, since its files cannot be authenticated without -Dvpl.key");
+        }
+        return false;
+    }
+
+    /**
+     * Reads a stored output
+     *
+     * @return the output or null if the file was not written by a grader with the same key
+     */
+    private static List<String> read(Path file, String key) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            return null;
+        }
+        List<String> output = lines.subList(1, lines.size());
+        if (!VplHashes.sameHmac(macOf(key, output), lines.get(0))) {
+            return null;
+        }
+        return Collections.unmodifiableList(new ArrayList<>(output));
+    }
+
+    private static String macOf(String key, List<String> output) {
+        List<String> parts = new ArrayList<>(output.size() + 1);
+        parts.add(key);
+        parts.addAll(output);
+        return VplHashes.hmac(parts.toArray(new String[0]));
+    }
+
+    /**
+     * Writes the output atomically, so concurrent evaluations never read a partial file
+     */
+    private static void store(Path file, String key, List<String> output) {
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), "oracle", ".tmp");
+            List<String> lines = new ArrayList<>(output.size() + 1);
+            lines.add(macOf(key, output));
+            lines.addAll(output);
+            Files.write(tmp, lines, StandardCharsets.UTF_8);
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // The directory is read only -> run the reference solution again next time
+        }
+    }
+}
@@ -0,0 +1,204 @@
+import org.junit.runner.Description;
+import org.junit.runner.Request;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Child process of the {@link ForkedTestRunner}. Runs one test class after another within its own JVM
+ * and reports the results to the parent. Before any class of the submission is loaded, the worker reads
+ * the port and the nonce of the parent from stdin, connects to the parent on the loopback interface and
+ * sends the nonce. All messages are exchanged over this connection, so the tests cannot forge them by
+ * writing to stdout (which the parent discards):
+ * <pre>
+ *   RUN class n       (parent -> worker, followed by n names of tests which must not run again)
+ *   TEST test         (worker -> parent, a test of the class; the parent determines its points)
+ *   START test        (worker -> parent, the test has started)
+ *   FAIL test\tmessage (worker -> parent, the test has failed; line breaks are escaped)
+ *   MEASURED test\tv  (worker -> parent, the measured values of a test with a budget)
+ *   FINISH test       (worker -> parent, the test has finished)
+ *   |line             (worker -> parent, a line written to System.out)
+ *   !line             (worker -> parent, a line written to System.err)
+ *   DONE              (worker -> parent, the class is finished)
+ * </pre>
+ */
+public class VplTestWorker {
+    static final String RUN = "RUN ";
+    static final String TEST = "TEST ";
+    static final String START = "START ";
+    static final String FAIL = "FAIL ";
+    static final String MEASURED = "MEASURED ";
+    static final String FINISH = "FINISH ";
+    static final String DONE = "DONE";
+
+    private static PrintStream protocol;
+
+    /**
+     * Starts the worker
+     *
+     * @param args Jars of the submission which contain classes as well
+     */
+    public static void main(String[] args) throws IOException {
+        Charset cs = Charset.defaultCharset();
+        String[] handshake = new BufferedReader(new InputStreamReader(System.in, cs)).readLine().split(" ");
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(handshake[0]));
+        BufferedReader control = new BufferedReader(new InputStreamReader(socket.getInputStream(), cs));
+        protocol = new PrintStream(socket.getOutputStream(), true, cs.name());
+        protocol.println(handshake[1]);
+
+        URL[] jars = new URL[args.length];
+        for (int i = 0; i < args.length; i++) {
+            jars[i] = Paths.get(args[i]).toUri().toURL();
+        }
+        ClassLoader loader = new URLClassLoader(jars, VplTestWorker.class.getClassLoader());
+        Thread.currentThread().setContextClassLoader(loader);
+
+        VplExitTrap.install();
+
+        VplFuzzWorker.FramingStream out = new VplFuzzWorker.FramingStream(VplFuzzWorker.OUT, protocol);
+        VplFuzzWorker.FramingStream err = new VplFuzzWorker.FramingStream(VplFuzzWorker.ERR, protocol);
+        System.setOut(new PrintStream(out, true));
+        System.setErr(new PrintStream(err, true));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            out.finish();
+            err.finish();
+        }));
+
+        RunNotifier notifier = new RunNotifier();
+        notifier.addListener(new Reporter());
+        String line;
+        while ((line = control.readLine()) != null) {
+            if (!line.startsWith(RUN)) {
+                continue;
+            }
+            String[] parts = line.substring(RUN.length()).split(" ");
+            Set<String> skip = new HashSet<>();
+            for (int i = Integer.parseInt(parts[1]); i > 0; i--) {
+                skip.add(control.readLine());
+            }
+
+            try {
+                Request request = BudgetRunner.request(Class.forName(parts[0], false, loader),
+                        (test, measured) -> send(MEASURED + test + "\t" + measured));
+                VplJUnitTester.run(skip.isEmpty() ? request : request.filterWith(new Skip(skip)), notifier);
+            } catch (ClassNotFoundException | LinkageError e) {
+                System.err.println("Cannot run " + parts[0] + ": " + e);
+            }
+            System.out.flush();
+            System.err.flush();
+            out.finish();
+            err.finish();
+            send(DONE);
+        }
+    }
+
+    private static void send(String message) {
+        synchronized (protocol) {
+            protocol.println(message);
+        }
+    }
+
+    /**
+     * Escapes line breaks, so that a message fits into one line of the protocol
+     */
+    static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    static String unescape(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                sb.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String nameOf(Description description) {
+        return description.getTestClass().getName() + "." + description.getMethodName();
+    }
+
+    /**
+     * Sends the events of JUnit to the parent
+     */
+    private static class Reporter extends RunListener {
+        @Override
+        public void testRunStarted(Description description) {
+            if (description.isTest()) {
+                send(TEST + nameOf(description));
+                return;
+            }
+            for (Description child : description.getChildren()) {
+                testRunStarted(child);
+            }
+        }
+
+        @Override
+        public void testStarted(Description description) {
+            System.out.flush();
+            VplInstructionBudget.testStarted();
+            send(START + nameOf(description));
+        }
+
+        @Override
+        public void testFailure(Failure failure) {
+            System.out.flush();
+            send(FAIL + nameOf(failure.getDescription()) + "\t" + escape(failure.getException().toString()));
+        }
+
+        @Override
+        public void testFinished(Description description) {
+            VplInstructionBudget.testFinished();
+            System.out.flush();
+            send(FINISH + nameOf(description));
+        }
+    }
+
+    /**
+     * Excludes the tests which already have a result
+     */
+    private static class Skip extends Filter {
+        private final Set<String> tests;
+
+        Skip(Set<String> tests) {
+            this.tests = tests;
+        }
+
+        @Override
+        public boolean shouldRun(Description description) {
+            if (description.isTest()) {
+                return !tests.contains(nameOf(description));
+            }
+            for (Description child : description.getChildren()) {
+                if (shouldRun(child)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String describe() {
+            return "tests without result";
+        }
+    }
+}
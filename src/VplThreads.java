@@ -0,0 +1,48 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Threads of the grader which wait for child processes (stream pumps, exit waiters) or run concurrent
+ * tests. On Java 8 to 20 all of them are daemon platform threads; the multi-release jar contains a
+ * Java 21 variant of this class (<code>src-java21</code>) which runs the concurrent tests in virtual
+ * threads. The threads which wait for child processes are platform threads on every version, because
+ * reading a pipe or waiting for a process blocks in native code and would pin the carrier of a virtual
+ * thread.
+ */
+public final class VplThreads {
+
+    /**
+     * Private to prevent instantiation
+     */
+    private VplThreads() {
+
+    }
+
+    /**
+     * Returns true if the executors of this class use virtual threads
+     */
+    public static boolean isVirtual() {
+        return false;
+    }
+
+    /**
+     * Starts a daemon platform thread with the given task, which may block on a child process
+     */
+    public static Thread start(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Returns an executor which runs every task in a new (or idle) daemon thread
+     */
+    public static ExecutorService newExecutor(String name) {
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,379 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Everything the grader needs to know about the files of a submission: test classes, sources, style
+ * checks and jars. The workspace (including all subdirectories) is walked once per evaluation.
+ * <p>
+ * Test classes are recognized by their bytecode: a concrete top level class is a test if it (or one of
+ * its super classes) has a non-static method annotated with a JUnit test annotation, or if it is
+ * annotated with <code>@RunWith</code>. Classes within the jars of the submission directory are
+ * considered as well. The result of reading a class file or a jar is stored within
+ * {@value #INDEX_FILE} and reused as long as its modification time and size do not change.
+ */
+public class WorkspaceIndex {
+    public static final String INDEX_FILE = ".vpl-workspace.idx";
+
+    private static final Set<String> TEST_ANNOTATIONS = new HashSet<>(Arrays.asList(
+            "org.junit.Test",
+            "org.junit.jupiter.api.Test",
+            "org.junit.jupiter.api.RepeatedTest",
+            "org.junit.jupiter.api.TestFactory",
+            "org.junit.jupiter.api.TestTemplate",
+            "org.junit.jupiter.params.ParameterizedTest"));
+    private static final String RUN_WITH = "org.junit.runner.RunWith";
+
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String JAR_SUFFIX = ".jar";
+
+    /**
+     * Flags of a class within the index
+     */
+    private static final char HAS_TESTS = 't';
+    private static final char RUN_WITH_FLAG = 'r';
+    private static final char ABSTRACT = 'a';
+
+    private final Path workDir;
+    private final Properties index = new Properties();
+    private final Properties previous = new Properties();
+    private final Map<String, ClassSummary> classes = new TreeMap<>();
+    private final List<Path> sources = new ArrayList<>();
+    private final List<Path> styleChecks = new ArrayList<>();
+    private final List<Path> jars = new ArrayList<>();
+
+    private WorkspaceIndex(Path workDir) {
+        this.workDir = workDir;
+    }
+
+    /**
+     * Walks the workspace of the submission
+     */
+    public static WorkspaceIndex scan(Path workDir) throws IOException {
+        WorkspaceIndex workspace = new WorkspaceIndex(workDir);
+        Path indexFile = workDir.resolve(INDEX_FILE);
+        if (Files.isRegularFile(indexFile)) {
+            try (Reader r = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+                workspace.previous.load(r);
+            } catch (IOException | IllegalArgumentException e) {
+                workspace.previous.clear();
+            }
+        }
+
+        workspace.walk();
+        if (!workspace.index.equals(workspace.previous)) {
+            workspace.save(indexFile);
+        }
+        return workspace;
+    }
+
+    /**
+     * Returns the jars within the submission directory (without the jar of the grader)
+     */
+    public static List<Path> findJars(Path workDir) throws IOException {
+        List<Path> found = new ArrayList<>();
+        Path grader = graderLocation();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(workDir, "*" + JAR_SUFFIX)) {
+            for (Path entry : stream) {
+                if (grader == null || !Files.isSameFile(entry, grader)) {
+                    found.add(entry);
+                }
+            }
+        }
+        found.sort(null);
+        return found;
+    }
+
+    /**
+     * Replaces the class files of the workspace by classes which only exist in memory (e.g. compiled
+     * by the {@link VplCompiler}). Classes within jars are kept.
+     */
+    public void setMemoryClasses(Map<String, byte[]> memoryClasses) throws IOException {
+        classes.values().removeIf(c -> !c.inJar);
+        for (Map.Entry<String, byte[]> c : memoryClasses.entrySet()) {
+            classes.put(c.getKey(), ClassSummary.of(ClassFileInfo.parse(c.getValue()), false));
+        }
+    }
+
+    /**
+     * Returns the names of all test classes (sorted)
+     */
+    public List<String> getTestClasses() {
+        List<String> tests = new ArrayList<>();
+        for (String name : classes.keySet()) {
+            if (isTestClass(name)) {
+                tests.add(name);
+            }
+        }
+        return tests;
+    }
+
+    /**
+     * Returns all java sources of the workspace (sorted)
+     */
+    public List<Path> getSourceFiles() {
+        return Collections.unmodifiableList(sources);
+    }
+
+    /**
+     * Returns the sources which do not belong to test classes. If there is no bytecode for a source, it
+     * is recognized as test by its name (e.g. <code>FooTests.java</code>).
+     */
+    public List<Path> getSourceFilesWithoutTests() {
+        List<Path> result = new ArrayList<>();
+        for (Path source : sources) {
+            String relative = relative(source);
+            String classname = relative.substring(0, relative.length() - ".java".length()).replace('/', '.');
+            boolean test = classes.containsKey(classname)
+                    ? isTestClass(classname)
+                    : source.getFileName().toString().matches(".*[Tt]est[s]?.java");
+            if (!test) {
+                result.add(source);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the checkstyle files (<code>checkstyle*.xml</code>) of the submission directory
+     */
+    public List<Path> getStyleChecks() {
+        return Collections.unmodifiableList(styleChecks);
+    }
+
+    /**
+     * Returns the jars of the submission directory (without the jar of the grader)
+     */
+    public List<Path> getJars() {
+        return Collections.unmodifiableList(jars);
+    }
+
+    /**
+     * Returns true if the class itself declares a test method
+     */
+    static boolean declaresTests(ClassFileInfo info) {
+        for (ClassFileInfo.MethodInfo method : info.getMethods()) {
+            if ((method.getAccess() & ClassFileInfo.ACC_STATIC) == 0
+                    && !Collections.disjoint(method.getAnnotations(), TEST_ANNOTATIONS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isTestClass(String name) {
+        ClassSummary c = classes.get(name);
+        if (c == null || c.isAbstract || name.indexOf('$') >= 0) {
+            return false;
+        }
+        if (c.runWith) {
+            return true;
+        }
+        // Test methods may be inherited (the super class has to be part of the submission)
+        Set<String> visited = new HashSet<>();
+        while (c != null && visited.add(c.name)) {
+            if (c.hasTests) {
+                return true;
+            }
+            c = c.superName == null ? null : classes.get(c.superName);
+        }
+        return false;
+    }
+
+    /**
+     * Visits all files of the workspace once. Hidden directories (e.g. <code>.git</code>) are skipped.
+     */
+    private void walk() throws IOException {
+        Path grader = graderLocation();
+        Files.walkFileTree(workDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (!dir.equals(workDir) && dir.getFileName().toString().startsWith(".")) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String name = file.getFileName().toString();
+                boolean topLevel = workDir.equals(file.getParent());
+                if (name.endsWith(".java")) {
+                    sources.add(file);
+                } else if (topLevel && name.startsWith("checkstyle") && name.endsWith(".xml")) {
+                    styleChecks.add(file.toAbsolutePath().normalize());
+                } else if (name.endsWith(CLASS_SUFFIX)) {
+                    indexClassFile(file, attrs);
+                } else if (topLevel && name.endsWith(JAR_SUFFIX) && (grader == null || !Files.isSameFile(file, grader))) {
+                    jars.add(file);
+                    indexJar(file, attrs);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        sources.sort(null);
+        styleChecks.sort(null);
+        jars.sort(null);
+    }
+
+    private void indexClassFile(Path file, BasicFileAttributes attrs) {
+        String key = relative(file);
+        String stamp = attrs.lastModifiedTime().toMillis() + "|" + attrs.size();
+        String entry = previous.getProperty(key);
+        if (entry == null || !entry.startsWith(stamp + "|")) {
+            try {
+                entry = stamp + "|" + ClassSummary.of(ClassFileInfo.parse(Files.readAllBytes(file)), false);
+            } catch (IOException e) {
+                return;
+            }
+        }
+        index.setProperty(key, entry);
+        ClassSummary c = ClassSummary.parse(entry.substring(stamp.length() + 1), false);
+        // Only classes at the location of their package can be loaded (e.g. not bin/Foo.class)
+        if (key.equals(c.name.replace('.', '/') + CLASS_SUFFIX)) {
+            classes.putIfAbsent(c.name, c);
+        }
+    }
+
+    private void indexJar(Path file, BasicFileAttributes attrs) {
+        String key = relative(file);
+        String stamp = attrs.lastModifiedTime().toMillis() + "|" + attrs.size();
+        String entry = previous.getProperty(key);
+        if (entry == null || !entry.startsWith(stamp + "|")) {
+            StringBuilder sb = new StringBuilder(stamp);
+            try (JarFile jar = new JarFile(file.toFile())) {
+                for (JarEntry e : Collections.list(jar.entries())) {
+                    if (!e.getName().endsWith(CLASS_SUFFIX) || e.getName().startsWith("META-INF/")) {
+                        continue;
+                    }
+                    try (InputStream in = jar.getInputStream(e)) {
+                        sb.append('|').append(ClassSummary.of(ClassFileInfo.parse(readAll(in)), true));
+                    } catch (IOException ex) {
+                        // not a valid class file
+                    }
+                }
+            } catch (IOException e) {
+                return;
+            }
+            entry = sb.toString();
+        }
+        index.setProperty(key, entry);
+        String[] summaries = entry.substring(stamp.length()).split("\\|");
+        for (String summary : summaries) {
+            if (!summary.isEmpty()) {
+                ClassSummary c = ClassSummary.parse(summary, true);
+                classes.putIfAbsent(c.name, c);
+            }
+        }
+    }
+
+    private void save(Path indexFile) {
+        try {
+            Path tmp = indexFile.resolveSibling(INDEX_FILE + ".tmp");
+            try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                index.store(w, "vpl-junit workspace index");
+            }
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // The directory is read only -> scan again next time
+        }
+    }
+
+    private String relative(Path file) {
+        return workDir.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the jar of the grader (null if the grader does not run from a jar)
+     */
+    private static Path graderLocation() {
+        try {
+            CodeSource cs = WorkspaceIndex.class.getProtectionDomain().getCodeSource();
+            Path location = cs == null ? null : Paths.get(cs.getLocation().toURI());
+            return location != null && Files.isRegularFile(location) ? location : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * What the index keeps of a class: <code>name,super,flags</code>
+     */
+    private static final class ClassSummary {
+        private String name;
+        private String superName;
+        private boolean hasTests;
+        private boolean runWith;
+        private boolean isAbstract;
+        private boolean inJar;
+
+        static ClassSummary of(ClassFileInfo info, boolean inJar) {
+            ClassSummary c = new ClassSummary();
+            c.name = info.getName();
+            c.superName = info.getSuperName();
+            c.inJar = inJar;
+            c.isAbstract = (info.getAccess() & (ClassFileInfo.ACC_ABSTRACT | ClassFileInfo.ACC_INTERFACE)) != 0;
+            c.runWith = info.getAnnotations().contains(RUN_WITH);
+            c.hasTests = declaresTests(info);
+            return c;
+        }
+
+        static ClassSummary parse(String text, boolean inJar) {
+            String[] parts = text.split(",", -1);
+            ClassSummary c = new ClassSummary();
+            c.name = parts[0];
+            c.superName = parts[1].isEmpty() ? null : parts[1];
+            c.hasTests = parts[2].indexOf(HAS_TESTS) >= 0;
+            c.runWith = parts[2].indexOf(RUN_WITH_FLAG) >= 0;
+            c.isAbstract = parts[2].indexOf(ABSTRACT) >= 0;
+            c.inJar = inJar;
+            return c;
+        }
+
+        @Override
+        public String toString() {
+            return name + "," + (superName == null ? "" : superName) + ","
+                    + (hasTests ? String.valueOf(HAS_TESTS) : "")
+                    + (runWith ? String.valueOf(RUN_WITH_FLAG) : "")
+                    + (isAbstract ? String.valueOf(ABSTRACT) : "");
+        }
+    }
+}
@@ -0,0 +1,189 @@
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Regression tests of the {@link InstructionCounterRewriter}: rewritten classes count their method calls
+ * and loop iterations, and the classes of the grader still pass the verifier after they were rewritten
+ */
+public class InstructionCounterRewriterTest {
+    private static final String COUNTER = "InstructionCounterRewriterTest$Counter";
+    private static final String CLASS_SUFFIX = ".class";
+
+    /**
+     * Counter method of the rewritten classes
+     */
+    public static class Counter {
+        static final AtomicLong COUNT = new AtomicLong();
+
+        public static void tick() {
+            COUNT.incrementAndGet();
+        }
+    }
+
+    /**
+     * Rewritten and run by the tests
+     */
+    public static class Loops {
+        public static int sum(int n) {
+            int sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += square(i);
+            }
+            return sum;
+        }
+
+        private static int square(int i) {
+            return i * i;
+        }
+    }
+
+    @Test
+    public void countsMethodCallsAndLoopIterations() throws Exception {
+        String name = Loops.class.getName();
+        Map<String, byte[]> classes = new HashMap<>();
+        classes.put(name, InstructionCounterRewriter.rewrite(read(name), COUNTER, "tick"));
+        Method sum = Class.forName(name, true, new RewrittenClassLoader(classes)).getMethod("sum", int.class);
+
+        Counter.COUNT.set(0);
+        assertEquals(285, sum.invoke(null, 10));
+        // sum, 10 calls of square and 10 loop iterations
+        assertEquals(21, Counter.COUNT.get());
+    }
+
+    @Test
+    public void rewrittenGraderPassesTheVerifier() throws Exception {
+        // The classes of the grader are compiled for Java 8 (class version 52), so the verifier checks the
+        // stack map frames of the rewritten methods instead of inferring the types itself
+        Map<String, byte[]> classes = new HashMap<>();
+        int rewritten = 0;
+        for (Map.Entry<String, byte[]> entry : readClasses(InstructionCounterRewriter.class).entrySet()) {
+            byte[] bytecode = entry.getValue();
+            assertTrue(entry.getKey() + " has the class version " + classVersion(bytecode), classVersion(bytecode) >= 52);
+            byte[] result = InstructionCounterRewriter.rewrite(bytecode, COUNTER, "tick");
+            if (result != null) {
+                rewritten++;
+            }
+            classes.put(entry.getKey(), result == null ? bytecode : result);
+        }
+        assertTrue("Only " + rewritten + " of " + classes.size() + " classes were rewritten", rewritten > classes.size() * 9 / 10);
+
+        // Linking a class (e.g. to list its methods) runs the verifier on classes of a custom classloader,
+        // without running their static initializers
+        RewrittenClassLoader loader = new RewrittenClassLoader(classes);
+        List<String> rejected = new ArrayList<>();
+        for (String name : classes.keySet()) {
+            try {
+                Class.forName(name, false, loader).getDeclaredMethods();
+            } catch (VerifyError | ClassFormatError e) {
+                rejected.add(name + ": " + e);
+            } catch (LinkageError | ClassNotFoundException e) {
+                // e.g. an optional dependency (like the JUnit Platform)
+            }
+        }
+        assertEquals("Rejected by the verifier: " + rejected, 0, rejected.size());
+    }
+
+    /**
+     * Reads all classes of the directory or jar which contains the given class (without subdirectories
+     * like the one of the tests)
+     */
+    private static Map<String, byte[]> readClasses(Class<?> member) throws Exception {
+        Path location = Paths.get(member.getProtectionDomain().getCodeSource().getLocation().toURI());
+        Map<String, byte[]> classes = new HashMap<>();
+        if (Files.isDirectory(location)) {
+            try (Stream<Path> files = Files.list(location)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    String fileName = file.getFileName().toString();
+                    if (fileName.endsWith(CLASS_SUFFIX)) {
+                        classes.put(fileName.substring(0, fileName.length() - CLASS_SUFFIX.length()), Files.readAllBytes(file));
+                    }
+                }
+            }
+            return classes;
+        }
+        try (JarFile jar = new JarFile(location.toFile())) {
+            for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements(); ) {
+                String path = entries.nextElement().getName();
+                if (path.endsWith(CLASS_SUFFIX) && path.indexOf('/') < 0) {
+                    try (InputStream in = jar.getInputStream(jar.getEntry(path))) {
+                        classes.put(path.substring(0, path.length() - CLASS_SUFFIX.length()), readAll(in));
+                    }
+                }
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Returns the major version of a class file
+     */
+    private static int classVersion(byte[] bytecode) {
+        return ((bytecode[6] & 0xff) << 8) | (bytecode[7] & 0xff);
+    }
+
+    private static byte[] read(String classname) throws IOException {
+        try (InputStream in = InstructionCounterRewriterTest.class.getClassLoader()
+                .getResourceAsStream(classname.replace('.', '/') + CLASS_SUFFIX)) {
+            return readAll(in);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Defines the given classes itself instead of asking its parent first
+     */
+    private static class RewrittenClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classes;
+
+        RewrittenClassLoader(Map<String, byte[]> classes) {
+            super(InstructionCounterRewriterTest.class.getClassLoader());
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            byte[] bytecode = classes.get(name);
+            if (bytecode == null) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+                if (c == null) {
+                    c = defineClass(name, bytecode, 0, bytecode.length);
+                }
+                if (resolve) {
+                    resolveClass(c);
+                }
+                return c;
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of the operation count of the {@link VplInstructionBudget} (without the agent, so the budget
+ * is never exceeded)
+ */
+public class VplInstructionBudgetTest {
+
+    @Test
+    public void countsTheOperationsOfAllThreads() throws InterruptedException {
+        VplInstructionBudget.reset();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    VplInstructionBudget.tick();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400_000, VplInstructionBudget.getCount());
+    }
+
+    @Test
+    public void concurrentTestsShareTheCount() {
+        VplInstructionBudget.testStarted();
+        VplInstructionBudget.tick();
+        VplInstructionBudget.testStarted();
+        VplInstructionBudget.tick();
+        assertEquals("the second test must not reset the first one", 2, VplInstructionBudget.getCount());
+        VplInstructionBudget.testFinished();
+        VplInstructionBudget.testFinished();
+
+        VplInstructionBudget.testStarted();
+        assertEquals(0, VplInstructionBudget.getCount());
+        VplInstructionBudget.testFinished();
+    }
+}